@@ -0,0 +1,39 @@
+package trasm;
+
+/**
+ * Исходные тексты для бенчмарков
+ */
+final class BenchmarkPrograms {
+
+    /**
+     * Строчки всех типов и форм, которые понимает транслятор
+     */
+    static final String[] SAMPLE_LINES = {
+        "Data1 segment",
+        "\tdbVar1 db 10010011b",
+        "\tdwVar2 dw 0ABCh",
+        "\tddVar3 dd 10101010",
+        "\tSTR4 db 'Hello!'",
+        "Data1 ends",
+        "assume ds:Data1, cs:Code, es:Data2",
+        "Code segment",
+        "\tbegin:",
+        "\t\tCli",
+        "\t\tInc STR4[bx]",
+        "\t\tDec al",
+        "\t\tAdd cs:dbVar1[si], 00010001b",
+        "\t\tCmp bx, dwVar2[eax]",
+        "\t\tXor tmp[ebp], cl",
+        "\t\tMov ah, 128",
+        "\t\tOr esi, eax",
+        "\t\tjb labelJB",
+        "\tlabelUP: jmp labelDW",
+        "",
+        "\t\tmov 5, ax ; ошибка",
+        "Code ends",
+        "end begin"
+    };
+
+    private BenchmarkPrograms() {
+    }
+}
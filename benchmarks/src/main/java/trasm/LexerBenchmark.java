@@ -0,0 +1,46 @@
+package trasm;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Лексический анализ строчки (LexicalAnalyzer.getLexemeInfo) и полный разбор
+ * строчки (лексемы и классификация, ParsedLine). Результат - строчек в
+ * секунду.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LexerBenchmark {
+
+    private final String[] lines = BenchmarkPrograms.SAMPLE_LINES;
+
+    @Benchmark
+    @OperationsPerInvocation(23)
+    public void getLexemeInfo(Blackhole bh) {
+        for (String line : lines) {
+            bh.consume(LexicalAnalyzer.getLexemeInfo(line));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(23)
+    public void parseLine(Blackhole bh) {
+        for (String line : lines) {
+            bh.consume(new ParsedLine(line));
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package trasm;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import trasm.LineInfo.LineType;
+
+/**
+ * Трансляция разобранной строчки (конструктор LineInfo) для каждого типа
+ * строчки. За один вызов контекст сбрасывается, транслируется короткое
+ * вступление (сегменты, переменная, метка) и LINES строчек заданного типа.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LineInfoBenchmark {
+
+    private static final int LINES = 1000;
+
+    private static final String[] PREAMBLE = {
+        "data1 segment",
+        "v dw 5",
+        "data1 ends",
+        "code segment",
+        "assume cs:code, ds:data1",
+        "l0:"
+    };
+
+    private static final String[] INSTRUCTIONS = {
+        "cli",
+        "inc v[bx]",
+        "dec ax",
+        "add v[si], 5",
+        "cmp bx, v[eax]",
+        "xor v[bp], cl",
+        "mov ah, 12",
+        "or esi, eax",
+        "push v",
+        "rep movsb",
+        "shl v[bx], 3",
+        "movzx eax, v[di]",
+        "in al, dx"
+    };
+
+    @Param({"BEGIN_SEGMENT", "END_SEGMENT", "DATA_DECLARATION", "LABEL", "ASSUME",
+        "INSTRUCTIONS", "JUMP", "END", "MACRO", "INCLUDE", "ERROR_LINE", "EMPTY"})
+    public String lineType;
+
+    private final Translation translation = new Translation();
+    private ParsedLine[] preamble;
+    private ParsedLine[] lines;
+
+    private static String getLine(LineType type, int i) {
+        switch (type) {
+            case BEGIN_SEGMENT:
+                return "s" + i + " segment";
+            case END_SEGMENT:
+                return "code ends";
+            case DATA_DECLARATION:
+                return "v" + i + " dw " + i;
+            case LABEL:
+                return "l" + (i + 1) + ":";
+            case ASSUME:
+                return "assume ds:data1";
+            case INSTRUCTIONS:
+                return INSTRUCTIONS[i % INSTRUCTIONS.length];
+            case JUMP:
+                return i % 2 == 0 ? "jmp l0" : "jb l0";
+            case END:
+                return "end l0";
+            case MACRO:
+                return "m" + i + " macro p1, p2";
+            case INCLUDE:
+                return "include 'defs" + i + ".inc'";
+            case ERROR_LINE:
+                return "mov 5, ax";
+            default:
+                return "";
+        }
+    }
+
+    @Setup
+    public void setup() {
+        preamble = new ParsedLine[PREAMBLE.length];
+        for (int i = 0; i < PREAMBLE.length; i++) {
+            preamble[i] = new ParsedLine(PREAMBLE[i]);
+        }
+
+        LineType type = LineType.valueOf(lineType);
+        lines = new ParsedLine[LINES];
+        for (int i = 0; i < LINES; i++) {
+            lines[i] = new ParsedLine(getLine(type, i));
+            if (lines[i].type != type) {
+                throw new IllegalStateException(lines[i].value + ": " + lines[i].type);
+            }
+        }
+    }
+
+    private void translate(ParsedLine parsed, Blackhole bh) {
+        LineInfo line = new LineInfo(parsed, translation);
+        SegTable segTable = translation.segTable;
+        segTable.setCurrentAddress(segTable.getCurrentAddress() + line.sizeInBytes);
+        bh.consume(line);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void construct(Blackhole bh) {
+        translation.reset();
+        for (ParsedLine parsed : preamble) {
+            translate(parsed, bh);
+        }
+        for (ParsedLine parsed : lines) {
+            translate(parsed, bh);
+        }
+    }
+}
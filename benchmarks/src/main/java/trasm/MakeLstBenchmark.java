@@ -0,0 +1,104 @@
+package trasm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Полная трансляция файла (Translator.makeLST) с записью листинга. Программы
+ * строит ProgramGenerator (корректные, переходы поровну вперед и назад).
+ * Операция - одна строчка исходного файла, поэтому результат - строчек в
+ * секунду, а gc.alloc.rate.norm профилировщика GC - байт на строчку.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class MakeLstBenchmark {
+
+    private static final int SMALL = 100;
+    private static final int MEDIUM = 10000;
+    private static final int LARGE = 1000000;
+    /**
+     * Зерно генератора: программы одинаковы во всех запусках
+     */
+    private static final long SEED = 1;
+
+    private final Translation translation = new Translation();
+    private final PrintStream out = new PrintStream(OutputStream.nullOutputStream());
+    private Path dir;
+    private String small, medium, large;
+
+    private String writeProgram(String name, int lineCount) throws IOException {
+        Path file = dir.resolve(name + ".asm");
+        new ProgramGenerator(lineCount, SEED).write(file);
+        try (Stream<String> lines = Files.lines(file)) {
+            if (lines.count() != lineCount) {
+                throw new IllegalStateException(name + " has a wrong size");
+            }
+        }
+        return file.toString();
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("trasm-bench");
+        small = writeProgram("small", SMALL);
+        medium = writeProgram("medium", MEDIUM);
+        large = writeProgram("large", LARGE);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    private int makeLST(String asmFilePath) throws IOException {
+        return Translator.makeLST(asmFilePath, asmFilePath.replace(".asm", ".lst"), "", translation, out);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SMALL)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    public int small() throws IOException {
+        return makeLST(small);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MEDIUM)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    public int medium() throws IOException {
+        return makeLST(medium);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LARGE)
+    @Warmup(iterations = 2, time = 10)
+    @Measurement(iterations = 3, time = 10)
+    public int large() throws IOException {
+        return makeLST(large);
+    }
+}
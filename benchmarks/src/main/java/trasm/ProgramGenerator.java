@@ -0,0 +1,445 @@
+package trasm;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Генератор исходных текстов заданного размера для нагрузочных тестов и
+ * бенчмарков. Программа состоит из сегментов данных с переменными всех типов
+ * и сегментов кода с командами (CLI, INC, DEC, ADD, CMP, XOR, MOV, OR, JB,
+ * JMP), метками и ASSUME. Все команды корректны, кроме заданной доли
+ * строчек с ошибками (каждая дает ровно одну ошибку). При одинаковых
+ * параметрах и зерне файл получается одинаковым байт в байт.
+ *
+ * Запуск: java -cp benchmarks-jmh.jar trasm.ProgramGenerator file.asm
+ * [-lines N] [-segments N] [-symbols N] [-forward R] [-errors R] [-seed N]
+ */
+public class ProgramGenerator {
+
+    /**
+     * Максимальное количество строчек кода в сегменте: код сегмента должен
+     * уместиться в 64 Кбайт (самая длинная команда - 10 байт)
+     */
+    static final int MAX_CODE_LINES = 6000;
+    /**
+     * Максимальное количество переменных в сегменте данных (до 8 байт на
+     * переменную)
+     */
+    static final int MAX_DATA_LINES = 8000;
+    /**
+     * Максимальное количество переменных и меток (имя - буква и до 7 цифр)
+     */
+    static final int MAX_NAMES = 10000000;
+    /**
+     * Каждая какая строчка кода - метка
+     */
+    private static final int LABEL_INTERVAL = 8;
+    /**
+     * Доля переходов среди команд
+     */
+    private static final double JUMP_RATE = 0.125;
+    /**
+     * Доля дальних переходов (на любую метку сегмента, а не на одну из
+     * ближайших)
+     */
+    private static final double FAR_JUMP_RATE = 0.0625;
+    /**
+     * Ближайшие метки, на которые переходят обычные переходы
+     */
+    private static final int NEAR_LABELS = 4;
+
+    private static final String[] DATA_REGS = {"ds", "es", "fs", "gs"};
+    private static final String[] ADDR_REGS = {"bx", "si", "di", "bp", "eax", "ebx", "ecx", "edx", "esi", "edi", "ebp", "esp"};
+    private static final String[] REGS_8 = {"al", "cl", "dl", "bl", "ah", "ch", "dh", "bh"};
+    private static final String[] REGS_16 = {"ax", "cx", "dx", "bx", "sp", "bp", "si", "di"};
+    private static final String[] REGS_32 = {"eax", "ecx", "edx", "ebx", "esp", "ebp", "esi", "edi"};
+
+    private final int lineCount;
+    private final int segmentCount;
+    private final int symbolCount;
+    private final double forwardRatio;
+    private final double errorRate;
+    private final long seed;
+
+    /*
+     * Результат последней генерации
+     */
+    private int dataSegmentCount;
+    private int codeSegmentCount;
+    private int labelCount;
+    private int errorCount;
+
+    private Random random;
+
+    /**
+     * Создает генератор
+     *
+     * @param lineCount Количество строчек программы
+     * @param segmentCount Минимальное количество сегментов (половина - данных,
+     * половина - кода); увеличивается, если сегменты не умещаются в 64 Кбайт
+     * @param symbolCount Количество переменных
+     * @param forwardRatio Доля переходов вперед (от 0 до 1)
+     * @param errorRate Доля строчек кода с ошибками (от 0 до 1)
+     * @param seed Зерно генератора случайных чисел
+     */
+    public ProgramGenerator(int lineCount, int segmentCount, int symbolCount, double forwardRatio, double errorRate, long seed) {
+        if (segmentCount < 2 || symbolCount < 1 || symbolCount > MAX_NAMES
+                || forwardRatio < 0 || forwardRatio > 1 || errorRate < 0 || errorRate > 1) {
+            throw new IllegalArgumentException("segments >= 2, 1 <= symbols <= " + MAX_NAMES + ", 0 <= forward, errors <= 1");
+        }
+        this.lineCount = lineCount;
+        this.segmentCount = segmentCount;
+        this.symbolCount = symbolCount;
+        this.forwardRatio = forwardRatio;
+        this.errorRate = errorRate;
+        this.seed = seed;
+    }
+
+    /**
+     * Создает генератор корректной программы с переходами поровну вперед и
+     * назад и переменными на каждую десятую строчку
+     *
+     * @param lineCount Количество строчек программы
+     * @param seed Зерно генератора случайных чисел
+     */
+    public ProgramGenerator(int lineCount, long seed) {
+        this(lineCount, 2, Math.max(1, lineCount / 10), 0.5, 0, seed);
+    }
+
+    /**
+     * Записывает программу
+     *
+     * @param file Куда записывать
+     * @return Количество строчек с ошибками
+     * @throws IOException
+     */
+    public int write(Path file) throws IOException {
+        random = new Random(seed);
+        labelCount = 0;
+        errorCount = 0;
+
+        dataSegmentCount = Math.min(symbolCount, Math.max(segmentCount / 2, ceilDiv(symbolCount, MAX_DATA_LINES)));
+        // сегмент данных - 2 строчки заголовка, сегмент кода - 3, и END
+        int codeLines = lineCount - symbolCount - 2 * dataSegmentCount - 1;
+        codeSegmentCount = Math.max(segmentCount - segmentCount / 2, ceilDiv(codeLines, MAX_CODE_LINES));
+        int bodyLines = codeLines - 3 * codeSegmentCount;
+        if (bodyLines < 2 * codeSegmentCount || ceilDiv(bodyLines, LABEL_INTERVAL) > MAX_NAMES) {
+            throw new IllegalArgumentException("lines: " + lineCount + " for symbols: " + symbolCount
+                    + ", segments: " + (dataSegmentCount + codeSegmentCount));
+        }
+
+        StringBuilder line = new StringBuilder(64);
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int seg = 0; seg < dataSegmentCount; seg++) {
+                writeDataSegment(out, line, seg);
+            }
+            for (int seg = 0; seg < codeSegmentCount; seg++) {
+                int size = bodyLines / codeSegmentCount + (seg < bodyLines % codeSegmentCount ? 1 : 0);
+                writeCodeSegment(out, line, seg, size);
+            }
+            out.write("end l0\n");
+        }
+        return errorCount;
+    }
+
+    private static int ceilDiv(int a, int b) {
+        return (a + b - 1) / b;
+    }
+
+    private static void println(BufferedWriter out, StringBuilder line) throws IOException {
+        out.append(line).append('\n');
+        line.setLength(0);
+    }
+
+    /**
+     * Записывает сегмент данных: переменные seg, seg + D, seg + 2D и т.д.
+     * (D - количество сегментов данных), тип переменной - по номеру
+     */
+    private void writeDataSegment(BufferedWriter out, StringBuilder line, int seg) throws IOException {
+        out.write("dseg" + seg + " segment\n");
+        for (int var = seg; var < symbolCount; var += dataSegmentCount) {
+            line.append('\t').append('v').append(var);
+            switch (var % 4) {
+                case 0:
+                    appendConst(line.append(" db "), random.nextInt(0x100));
+                    break;
+                case 1:
+                    appendConst(line.append(" dw "), random.nextInt(0x10000));
+                    break;
+                case 2:
+                    appendConst(line.append(" dd "), random.nextInt(Integer.MAX_VALUE));
+                    break;
+                default:
+                    line.append(" db '");
+                    for (int i = random.nextInt(8); i >= 0; i--) {
+                        line.append((char) ('a' + random.nextInt(26)));
+                    }
+                    line.append('\'');
+            }
+            println(out, line);
+        }
+        out.write("dseg" + seg + " ends\n");
+    }
+
+    /**
+     * Размер переменной в байтах
+     */
+    private static int getVarSize(int var) {
+        return var % 4 == 1 ? 2 : var % 4 == 2 ? 4 : 1;
+    }
+
+    /**
+     * Записывает сегмент кода. Метки стоят на каждой LABEL_INTERVAL строчке
+     * начиная с первой, переходы - только на метки своего сегмента.
+     */
+    private void writeCodeSegment(BufferedWriter out, StringBuilder line, int seg, int size) throws IOException {
+        // сегменты данных, доступные через DS, ES, FS, GS
+        int[] assumed = new int[Math.min(DATA_REGS.length, dataSegmentCount)];
+        out.write("cseg" + seg + " segment\n");
+        line.append("assume cs:cseg").append(seg);
+        for (int reg = 0; reg < assumed.length; reg++) {
+            assumed[reg] = (seg * DATA_REGS.length + reg) % dataSegmentCount;
+            line.append(", ").append(DATA_REGS[reg]).append(":dseg").append(assumed[reg]);
+        }
+        println(out, line);
+
+        int firstLabel = labelCount;
+        int segLabels = ceilDiv(size, LABEL_INTERVAL);
+        labelCount += segLabels;
+        for (int pos = 0; pos < size; pos++) {
+            int label = pos / LABEL_INTERVAL;
+            if (pos % LABEL_INTERVAL == 0) {
+                line.append('l').append(firstLabel + label).append(':');
+            } else if (random.nextDouble() < errorRate) {
+                appendError(line.append("\t\t"));
+                errorCount++;
+            } else if (random.nextDouble() < JUMP_RATE) {
+                line.append(random.nextBoolean() ? "\t\tjmp l" : "\t\tjb l").append(firstLabel + getTarget(label, segLabels));
+            } else {
+                appendInstruction(line.append("\t\t"), assumed);
+            }
+            println(out, line);
+        }
+        out.write("cseg" + seg + " ends\n");
+    }
+
+    /**
+     * Выбирает метку перехода в сегменте
+     *
+     * @param label Последняя метка перед переходом
+     * @param segLabels Количество меток сегмента
+     * @return Номер метки в сегменте
+     */
+    private int getTarget(int label, int segLabels) {
+        boolean isFar = random.nextDouble() < FAR_JUMP_RATE;
+        boolean isForward = label + 1 < segLabels && random.nextDouble() < forwardRatio;
+        if (isForward) {
+            int range = isFar ? segLabels - label - 1 : Math.min(NEAR_LABELS, segLabels - label - 1);
+            return label + 1 + random.nextInt(range);
+        }
+        int range = isFar ? label + 1 : Math.min(NEAR_LABELS, label + 1);
+        return label - random.nextInt(range);
+    }
+
+    /**
+     * Добавляет корректную команду (кроме перехода)
+     *
+     * @param line Куда добавлять
+     * @param assumed Доступные сегменты данных по регистрам
+     */
+    private void appendInstruction(StringBuilder line, int[] assumed) {
+        int reg = random.nextInt(assumed.length);
+        int var = assumed[reg] + random.nextInt(ceilDiv(symbolCount - assumed[reg], dataSegmentCount)) * dataSegmentCount;
+        int varSize = getVarSize(var);
+        int regSize = 1 << random.nextInt(3);
+
+        switch (random.nextInt(8)) {
+            case 0:
+                line.append("cli");
+                break;
+            case 1:
+                appendAddress(line.append("inc "), reg, var);
+                break;
+            case 2:
+                line.append("dec ").append(getReg(regSize));
+                break;
+            case 3:
+                appendAddress(line.append("add "), reg, var).append(", ");
+                appendConst(line, random.nextInt(varSize == 4 ? 0x10000 : 1 << (8 * varSize)));
+                break;
+            case 4:
+                appendAddress(line.append("cmp ").append(getReg(varSize)).append(", "), reg, var);
+                break;
+            case 5:
+                appendAddress(line.append("xor "), reg, var).append(", ").append(getReg(varSize));
+                break;
+            case 6:
+                line.append("mov ").append(getReg(regSize)).append(", ");
+                appendConst(line, random.nextInt(regSize == 4 ? Integer.MAX_VALUE : 1 << (8 * regSize)));
+                break;
+            default:
+                line.append("or ").append(getReg(regSize)).append(", ").append(getReg(regSize));
+        }
+    }
+
+    /**
+     * Добавляет операнд в памяти; иногда с явной заменой сегмента тем же
+     * регистром, что и в ASSUME
+     */
+    private StringBuilder appendAddress(StringBuilder line, int reg, int var) {
+        if (random.nextInt(4) == 0) {
+            line.append(DATA_REGS[reg]).append(':');
+        }
+        return line.append('v').append(var).append('[').append(ADDR_REGS[random.nextInt(ADDR_REGS.length)]).append(']');
+    }
+
+    private String getReg(int size) {
+        String[] regs = size == 1 ? REGS_8 : size == 2 ? REGS_16 : REGS_32;
+        return regs[random.nextInt(regs.length)];
+    }
+
+    /**
+     * Добавляет константу в десятичном, шестнадцатеричном или двоичном виде
+     */
+    private void appendConst(StringBuilder line, int value) {
+        switch (random.nextInt(3)) {
+            case 0:
+                line.append(value);
+                break;
+            case 1:
+                line.append('0').append(Integer.toHexString(value).toUpperCase()).append('h');
+                break;
+            default:
+                line.append(Integer.toBinaryString(value)).append('b');
+        }
+    }
+
+    /**
+     * Добавляет строчку, которая дает одну ошибку
+     */
+    private void appendError(StringBuilder line) {
+        switch (random.nextInt(5)) {
+            case 0: // константа больше регистра
+                line.append("mov ").append(getReg(1)).append(", 1234h");
+                break;
+            case 1: // регистры разного размера
+                line.append("or ").append(getReg(1)).append(", ").append(getReg(2));
+                break;
+            case 2: // необъявленная переменная
+                line.append("inc u").append(errorCount).append("[bx]");
+                break;
+            case 3: // необъявленная метка
+                line.append("jmp u").append(errorCount);
+                break;
+            default: // недопустимая форма
+                line.append("mov 5, ax");
+        }
+    }
+
+    /**
+     * Количество сегментов данных последней программы
+     *
+     * @return Количество сегментов
+     */
+    public int getDataSegmentCount() {
+        return dataSegmentCount;
+    }
+
+    /**
+     * Количество сегментов кода последней программы
+     *
+     * @return Количество сегментов
+     */
+    public int getCodeSegmentCount() {
+        return codeSegmentCount;
+    }
+
+    /**
+     * Количество меток последней программы
+     *
+     * @return Количество меток
+     */
+    public int getLabelCount() {
+        return labelCount;
+    }
+
+    /**
+     * Количество строчек с ошибками последней программы
+     *
+     * @return Количество строчек
+     */
+    public int getErrorCount() {
+        return errorCount;
+    }
+
+    private static void showHelp() {
+        System.out.println("Генератор програм для навантажувального тестування");
+        System.out.println("java -cp benchmarks-jmh.jar trasm.ProgramGenerator файл.asm [параметри]");
+        System.out.println("-lines N     кількість рядків (100000)");
+        System.out.println("-segments N  мінімальна кількість сегментів (2)");
+        System.out.println("-symbols N   кількість змінних (рядків / 10)");
+        System.out.println("-forward R   частка переходів уперед, 0..1 (0.5)");
+        System.out.println("-errors R    частка рядків коду з помилками, 0..1 (0)");
+        System.out.println("-seed N      зерно генератора (1)");
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0 || args.length % 2 == 0) {
+            showHelp();
+            return;
+        }
+
+        int lines = 100000;
+        int segments = 2;
+        int symbols = -1;
+        double forward = 0.5;
+        double errors = 0;
+        long seed = 1;
+        try {
+            for (int i = 1; i < args.length; i += 2) {
+                switch (args[i]) {
+                    case "-lines":
+                        lines = Integer.parseInt(args[i + 1]);
+                        break;
+                    case "-segments":
+                        segments = Integer.parseInt(args[i + 1]);
+                        break;
+                    case "-symbols":
+                        symbols = Integer.parseInt(args[i + 1]);
+                        break;
+                    case "-forward":
+                        forward = Double.parseDouble(args[i + 1]);
+                        break;
+                    case "-errors":
+                        errors = Double.parseDouble(args[i + 1]);
+                        break;
+                    case "-seed":
+                        seed = Long.parseLong(args[i + 1]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException(args[i]);
+                }
+            }
+            ProgramGenerator generator = new ProgramGenerator(lines, segments,
+                    symbols < 0 ? Math.max(1, lines / 10) : symbols, forward, errors, seed);
+            long start = System.nanoTime();
+            generator.write(Paths.get(args[0]));
+            System.out.println("Файл: " + args[0] + ", рядків: " + lines
+                    + ", сегментів даних: " + generator.getDataSegmentCount()
+                    + ", сегментів коду: " + generator.getCodeSegmentCount()
+                    + ", міток: " + generator.getLabelCount()
+                    + ", рядків з помилками: " + generator.getErrorCount()
+                    + ", час: " + (System.nanoTime() - start) / 1000000 + " мс");
+        } catch (IllegalArgumentException ex) {
+            System.out.println("Помилкові параметри: " + ex.getMessage());
+            showHelp();
+        } catch (IOException ex) {
+            System.out.println("Помилка виводу: " + ex.getMessage());
+        }
+    }
+}
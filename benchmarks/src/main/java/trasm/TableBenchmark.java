@@ -0,0 +1,74 @@
+package trasm;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import trasm.IdTable.IdInfo;
+import trasm.IdTable.IdType;
+import trasm.SegTable.SegInfo;
+
+/**
+ * Поиск в таблицах идентификаторов и сегментов при разном количестве
+ * элементов. Имена ищутся в случайном порядке и в разном регистре, часть
+ * имен отсутствует в таблице.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TableBenchmark {
+
+    private static final int LOOKUPS = 4096;
+
+    @Param({"16", "1024", "65536"})
+    public int symbolCount;
+
+    private final Translation translation = new Translation();
+    private final String[] idNames = new String[LOOKUPS];
+    private final String[] segNames = new String[LOOKUPS];
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        SegTable segTable = translation.segTable;
+        for (int i = 0; i < symbolCount; i++) {
+            segTable.add(new SegInfo("seg" + i));
+        }
+        segTable.setCurrentSegment("seg0");
+        for (int i = 0; i < symbolCount; i++) {
+            translation.idTable.add(new IdInfo("id" + i, IdType.DW, segTable));
+        }
+
+        Random random = new Random(1);
+        for (int i = 0; i < LOOKUPS; i++) {
+            int index = random.nextInt(symbolCount + symbolCount / 8 + 1);
+            String id = "id" + index;
+            String seg = "seg" + index;
+            idNames[i] = i % 2 == 0 ? id : id.toUpperCase(Locale.ROOT);
+            segNames[i] = i % 2 == 0 ? seg : seg.toUpperCase(Locale.ROOT);
+        }
+    }
+
+    @Benchmark
+    public Object idLookup() {
+        return translation.idTable.get(idNames[next++ & (LOOKUPS - 1)]);
+    }
+
+    @Benchmark
+    public Object segLookup() {
+        return translation.segTable.get(segNames[next++ & (LOOKUPS - 1)]);
+    }
+}
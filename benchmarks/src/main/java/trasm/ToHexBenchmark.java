@@ -0,0 +1,56 @@
+package trasm;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Печать чисел в hex виде: IOLib.toHex (новая строка) и IOLib.appendHex (в
+ * общий буфер, как при печати листинга)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ToHexBenchmark {
+
+    private static final int VALUES = 1024;
+
+    @Param({"2", "4", "8"})
+    public int width;
+
+    private final long[] values = new long[VALUES];
+    private final StringBuilder row = new StringBuilder(64);
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        for (int i = 0; i < VALUES; i++) {
+            values[i] = random.nextInt();
+        }
+    }
+
+    @Benchmark
+    public String toHex() {
+        return IOLib.toHex(values[next++ & (VALUES - 1)], width);
+    }
+
+    @Benchmark
+    public int appendHex() {
+        row.setLength(0);
+        return IOLib.appendHex(row, values[next++ & (VALUES - 1)], width).length();
+    }
+}
@@ -1,6 +1,8 @@
 package trasm;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
 
 /**
  * Интерфейс элемента таблицы сегментов/идентификаторов
@@ -9,6 +11,14 @@ interface TableItem {
 
     String getName();
 
+    /**
+     * Добавляет строчку таблицы для печати
+     *
+     * @param out Куда добавлять
+     * @return out
+     */
+    StringBuilder appendTo(StringBuilder out);
+
     @Override
     String toString();
 }
@@ -22,6 +32,25 @@ abstract class AbstractTable {
      * Список для хранения элементов таблицы
      */
     protected final ArrayList<TableItem> list = new ArrayList<>();
+    /**
+     * Индекс элементов по имени без учета регистра. Список сохраняет порядок
+     * объявления для печати, индекс - для поиска.
+     */
+    private final HashMap<String, TableItem> index = new HashMap<>();
+    /**
+     * Таблица только читается (после первого прохода, см. freeze)
+     */
+    private boolean isFrozen = false;
+
+    /**
+     * Ключ индекса для имени (имена сравниваются без учета регистра)
+     *
+     * @param name Имя элемента
+     * @return Ключ
+     */
+    private static String getKey(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
 
     /**
      * Проверяет или элемент с заданным именем существует
@@ -30,13 +59,7 @@ abstract class AbstractTable {
      * @return Ответ на главный вопрос
      */
     boolean isExist(String name) {
-        for (TableItem tableItem : list) {
-            if (name.equalsIgnoreCase(tableItem.getName())) {
-                return true;
-            }
-        }
-
-        return false;
+        return index.containsKey(getKey(name));
     }
 
     /**
@@ -45,7 +68,10 @@ abstract class AbstractTable {
      * @param item Новый элемент
      */
     void add(TableItem item) {
-        if (!isExist(item.getName())) {
+        if (isFrozen) {
+            throw new IllegalStateException("Table is read-only");
+        }
+        if (index.putIfAbsent(getKey(item.getName()), item) == null) {
             list.add(item);
         }
     }
@@ -58,12 +84,32 @@ abstract class AbstractTable {
      * @return Элемент с заданым именем
      */
     TableItem get(String name) {
-        for (TableItem tableItem : list) {
-            if (name.equalsIgnoreCase(tableItem.getName())) {
-                return tableItem;
-            }
-        }
+        return index.get(getKey(name));
+    }
 
-        return null;
+    /**
+     * Количество элементов таблицы
+     *
+     * @return Количество элементов
+     */
+    int size() {
+        return list.size();
+    }
+
+    /**
+     * Удаляет все элементы таблицы
+     */
+    void reset() {
+        list.clear();
+        index.clear();
+        isFrozen = false;
+    }
+
+    /**
+     * Запрещает изменение таблицы. После этого таблицу можно читать из
+     * нескольких потоков.
+     */
+    void freeze() {
+        isFrozen = true;
     }
 }
@@ -0,0 +1,210 @@
+package trasm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Пакетная трансляция многих файлов в одном процессе. Файлы транслируются
+ * параллельно пулом потоков по количеству ядер, у каждого потока свой
+ * контекст трансляции. Листинг и ошибки каждого файла остаются отдельными:
+ * сообщения файла собираются в буфер и печатаются одним блоком в порядке
+ * входных файлов, в конце печатается общая сводка.
+ */
+class Batch {
+
+    /**
+     * Результат трансляции одного файла
+     */
+    private static class FileResult {
+
+        /**
+         * Сообщения транслятора для этого файла
+         */
+        final String messages;
+        /**
+         * Количество ошибок (-1 - файл не удалось транслировать)
+         */
+        final int errorCount;
+
+        FileResult(String messages, int errorCount) {
+            this.messages = messages;
+            this.errorCount = errorCount;
+        }
+    }
+
+    /**
+     * Находит исходные файлы. Аргумент может быть файлом, каталогом (все
+     * файлы *.asm в нем и подкаталогах) или шаблоном вида "lab/*.asm".
+     *
+     * @param patterns Файлы, каталоги и шаблоны
+     * @return Пути к файлам без повторов, в порядке аргументов
+     * @throws IOException
+     */
+    static List<String> findSources(String[] patterns) throws IOException {
+        LinkedHashSet<String> sources = new LinkedHashSet<>();
+        PathMatcher asmMatcher = FileSystems.getDefault().getPathMatcher("glob:*.{asm,ASM}");
+
+        for (String pattern : patterns) {
+            int globStart = indexOfGlob(pattern);
+            if (globStart < 0) {
+                Path path = Paths.get(pattern);
+                if (Files.isDirectory(path)) {
+                    sources.addAll(walk(path, p -> asmMatcher.matches(p.getFileName())));
+                } else {
+                    sources.add(path.normalize().toString());
+                }
+                continue;
+            }
+
+            // каталог до первого символа шаблона - откуда начинается поиск
+            int baseEnd = Math.max(pattern.lastIndexOf('/', globStart), pattern.lastIndexOf('\\', globStart));
+            Path base = Paths.get(baseEnd < 0 ? "" : pattern.substring(0, baseEnd + 1));
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+            if (Files.isDirectory(base.toAbsolutePath())) {
+                sources.addAll(walk(base, matcher::matches));
+            }
+        }
+
+        return new ArrayList<>(sources);
+    }
+
+    private static int indexOfGlob(String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            if ("*?[{".indexOf(pattern.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static List<String> walk(Path base, Predicate<Path> filter) throws IOException {
+        try (Stream<Path> paths = Files.walk(base)) {
+            return paths.filter(p -> Files.isRegularFile(p) && filter.test(p))
+                    .map(p -> p.normalize().toString())
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Путь к файлу листинга рядом с исходным файлом
+     *
+     * @param asmFilePath Путь к исходному файлу
+     * @return Путь к файлу листинга
+     */
+    private static String getLstPath(String asmFilePath) {
+        return Translator.replaceExtension(asmFilePath, ".lst");
+    }
+
+    /**
+     * Транслирует один файл, сообщения собираются в буфер
+     *
+     * @param asmFilePath Путь к исходному файлу
+     * @param options Опции генерации
+     * @param translation Контекст трансляции потока
+     * @param cache Кэш трансляции (null - без кэша)
+     * @return Результат
+     * @throws IOException
+     */
+    private static FileResult translate(String asmFilePath, String options, Translation translation,
+            TranslationCache cache) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        int errorCount;
+        try (PrintStream out = new PrintStream(buffer, false, "UTF-8")) {
+            try {
+                String lstFilePath = getLstPath(asmFilePath);
+                errorCount = cache == null
+                        ? Translator.makeLST(asmFilePath, lstFilePath, options, translation, out)
+                        : cache.makeLST(asmFilePath, lstFilePath, options, translation, out);
+            } catch (FileNotFoundException ex) {
+                out.println("Вхідний файл: " + asmFilePath + "\nФайл не знайдено.");
+                errorCount = -1;
+            } catch (IOException ex) {
+                out.println("Вхідний файл: " + asmFilePath + "\nПомилка виводу.");
+                errorCount = -1;
+            }
+        }
+        return new FileResult(buffer.toString("UTF-8"), errorCount);
+    }
+
+    /**
+     * Транслирует файлы параллельно и печатает сводку
+     *
+     * @param options Опции генерации (общие для всех файлов)
+     * @param patterns Файлы, каталоги и шаблоны
+     * @param cache Кэш трансляции (null - без кэша)
+     * @throws IOException
+     */
+    static void run(String options, String[] patterns, TranslationCache cache) throws IOException {
+        List<String> sources = findSources(patterns);
+        if (sources.isEmpty()) {
+            System.out.println("Файлів для трансляції не знайдено.");
+            return;
+        }
+
+        long start = System.nanoTime();
+        int threadCount = Math.min(Runtime.getRuntime().availableProcessors(), sources.size());
+        ExecutorService pool = Executors.newFixedThreadPool(threadCount);
+        ThreadLocal<Translation> translations = ThreadLocal.withInitial(Translation::new);
+
+        List<Future<FileResult>> futures = new ArrayList<>();
+        for (String source : sources) {
+            futures.add(pool.submit(() -> translate(source, options, translations.get(), cache)));
+        }
+        pool.shutdown();
+
+        int correctCount = 0;
+        int withErrorsCount = 0;
+        int failedCount = 0;
+        long errorCount = 0;
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                FileResult result;
+                try {
+                    result = futures.get(i).get();
+                } catch (ExecutionException ex) {
+                    result = new FileResult("Вхідний файл: " + sources.get(i)
+                            + "\nВнутрішня помилка: " + ex.getCause() + "\n", -1);
+                }
+                System.out.println(result.messages);
+                if (result.errorCount < 0) {
+                    failedCount++;
+                } else if (result.errorCount == 0) {
+                    correctCount++;
+                } else {
+                    withErrorsCount++;
+                    errorCount += result.errorCount;
+                }
+            }
+        } catch (InterruptedException ex) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        long time = (System.nanoTime() - start) / 1000000;
+        System.out.println("Пакетна трансляція: файлів " + sources.size()
+                + ", без помилок " + correctCount
+                + ", з помилками " + withErrorsCount
+                + ", не оброблено " + failedCount);
+        System.out.println("Помилок усього: " + errorCount);
+        System.out.println("Потоків: " + threadCount + ", час: " + time + " мс");
+    }
+}
@@ -0,0 +1,391 @@
+package trasm;
+
+import java.util.Arrays;
+
+/**
+ * Растущий буфер машинного кода сегмента. Байты записываются по смещению в
+ * сегменте, для каждого байта хранится отметка о начале поля (префикс,
+ * префикс замены сегмента или обычное поле), по которым код превращается в
+ * текст только при печати листинга.
+ *
+ * Буфер также хранит элементы переменного размера - переходы и команды со
+ * ссылкой вперёд. Размер такого элемента уточняется после первого прохода,
+ * что сдвигает всё, что идёт после него. Изменения размеров хранятся в
+ * дереве Фенвика, поэтому адрес любой строчки или метки - это адрес первого
+ * прохода плюс сумма изменений элементов перед ней.
+ */
+class CodeBuffer {
+
+    /**
+     * Продолжение поля
+     */
+    static final byte CONTINUATION = 0;
+    /**
+     * Начало обычного поля (код операции, ModR/M, смещение, непосредственный
+     * операнд, данные)
+     */
+    static final byte FIELD = 1;
+    /**
+     * Префикс размера операнда или адреса (печатается как "66|")
+     */
+    static final byte PREFIX = 2;
+    /**
+     * Префикс замены сегмента (печатается как "26:")
+     */
+    static final byte SEG_PREFIX = 3;
+
+    /**
+     * Байты кода
+     */
+    private byte[] data;
+    /**
+     * Отметки полей, параллельно data
+     */
+    private byte[] marks;
+    /**
+     * Курсор записи другого буфера (см. cursor)
+     */
+    private final boolean isCursor;
+    /**
+     * Текущая позиция записи
+     */
+    private int position = 0;
+    /**
+     * Размер записанного кода (максимальная позиция)
+     */
+    private int size = 0;
+    /**
+     * Количество элементов переменного размера
+     */
+    private int itemCount = 0;
+    /**
+     * Адреса элементов в первом проходе
+     */
+    private int[] itemAddress = new int[16];
+    /**
+     * Размеры элементов в первом проходе
+     */
+    private int[] itemSize = new int[16];
+    /**
+     * Изменения размеров элементов
+     */
+    private int[] itemGrowth = new int[16];
+    /**
+     * Дерево Фенвика по itemGrowth (индексы с 1)
+     */
+    private int[] growthTree = new int[17];
+    /**
+     * Сумма всех изменений
+     */
+    private int totalGrowth = 0;
+    /**
+     * Менялся ли размер хотя бы одного элемента
+     */
+    private boolean isResized = false;
+
+    CodeBuffer() {
+        data = new byte[256];
+        marks = new byte[256];
+        isCursor = false;
+    }
+
+    private CodeBuffer(CodeBuffer source) {
+        data = source.data;
+        marks = source.marks;
+        size = source.size;
+        isCursor = true;
+    }
+
+    /**
+     * Возвращает курсор записи - буфер с теми же байтами, но со своей
+     * позицией записи. После applyGrowth код записывается только на свои
+     * места, поэтому несколько курсоров могут одновременно писать в разные
+     * части кода.
+     *
+     * @return Курсор
+     */
+    CodeBuffer cursor() {
+        return new CodeBuffer(this);
+    }
+
+    /**
+     * Задает позицию записи
+     *
+     * @param offset Смещение в сегменте
+     */
+    void seek(int offset) {
+        position = offset;
+    }
+
+    /**
+     * Возвращает текущую позицию записи
+     *
+     * @return Смещение в сегменте
+     */
+    int getPosition() {
+        return position;
+    }
+
+    /**
+     * Возвращает размер записанного кода
+     *
+     * @return Размер в байтах
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Очищает буфер для повторного использования
+     */
+    void reset() {
+        Arrays.fill(data, 0, size, (byte) 0);
+        Arrays.fill(marks, 0, size, CONTINUATION);
+        position = 0;
+        size = 0;
+        Arrays.fill(itemGrowth, 0, itemCount, 0);
+        Arrays.fill(growthTree, 0);
+        itemCount = 0;
+        totalGrowth = 0;
+        isResized = false;
+    }
+
+    /**
+     * Возвращает байт кода
+     *
+     * @param offset Смещение в сегменте
+     * @return Байт
+     */
+    byte get(int offset) {
+        return data[offset];
+    }
+
+    /**
+     * Возвращает массив байтов кода (размер массива может превышать size())
+     *
+     * @return Байты кода
+     */
+    byte[] getData() {
+        return data;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > data.length) {
+            if (isCursor) {
+                throw new IllegalStateException("Cursor cannot grow the buffer");
+            }
+            int newLength = Math.max(capacity, data.length * 2);
+            data = Arrays.copyOf(data, newLength);
+            marks = Arrays.copyOf(marks, newLength);
+        }
+    }
+
+    /**
+     * Записывает поле в little-endian порядке
+     *
+     * @param value Значение (лишние старшие байты отбрасываются)
+     * @param width Размер поля в байтах
+     * @param mark Вид поля
+     */
+    private void put(long value, int width, byte mark) {
+        if (width == 0) {
+            return;
+        }
+        ensureCapacity(position + width);
+        marks[position] = mark;
+        for (int i = 0; i < width; i++) {
+            data[position] = (byte) value;
+            if (i > 0) {
+                marks[position] = CONTINUATION;
+            }
+            value >>= 8;
+            position++;
+        }
+        size = Math.max(size, position);
+    }
+
+    /**
+     * Записывает однобайтовое поле
+     *
+     * @param value Значение
+     */
+    void putByte(int value) {
+        put(value, 1, FIELD);
+    }
+
+    /**
+     * Записывает поле заданного размера
+     *
+     * @param value Значение
+     * @param width Размер поля в байтах
+     */
+    void putField(long value, int width) {
+        put(value, width, FIELD);
+    }
+
+    /**
+     * Записывает префикс размера операнда, размера адреса, повторения или
+     * блокировки шины
+     *
+     * @param value Префикс (0x66, 0x67, 0xF0, 0xF2 или 0xF3)
+     */
+    void putPrefix(int value) {
+        put(value, 1, PREFIX);
+    }
+
+    /**
+     * Записывает префикс замены сегмента
+     *
+     * @param value Префикс
+     */
+    void putSegPrefix(int value) {
+        put(value, 1, SEG_PREFIX);
+    }
+
+    /**
+     * Печатает код в виде полей, например "66| 26: FE 87 0000". Многобайтовые
+     * поля печатаются как число.
+     *
+     * @param out Куда печатать
+     * @param offset Начало кода
+     * @param length Длина кода в байтах
+     * @return out
+     */
+    StringBuilder appendHex(StringBuilder out, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            int fieldEnd = i + 1;
+            while (fieldEnd < end && marks[fieldEnd] == CONTINUATION) {
+                fieldEnd++;
+            }
+
+            long value = 0;
+            for (int j = fieldEnd - 1; j >= i; j--) {
+                value = (value << 8) | (data[j] & 0xFF);
+            }
+
+            if (i != offset) {
+                out.append(' ');
+            }
+            IOLib.appendHex(out, value, (fieldEnd - i) * 2);
+            if (marks[i] == PREFIX) {
+                out.append('|');
+            } else if (marks[i] == SEG_PREFIX) {
+                out.append(':');
+            }
+            i = fieldEnd;
+        }
+        return out;
+    }
+
+    /**
+     * Регистрирует элемент переменного размера (в порядке адресов)
+     *
+     * @param address Адрес элемента в первом проходе
+     * @param length Размер элемента в первом проходе
+     * @return Номер элемента
+     */
+    int addItem(int address, int length) {
+        if (itemCount == itemAddress.length) {
+            int newLength = itemCount * 2;
+            itemAddress = Arrays.copyOf(itemAddress, newLength);
+            itemSize = Arrays.copyOf(itemSize, newLength);
+            itemGrowth = Arrays.copyOf(itemGrowth, newLength);
+            growthTree = new int[newLength + 1];
+            for (int i = 0; i < itemCount; i++) {
+                addToTree(i, itemGrowth[i]);
+            }
+        }
+        itemAddress[itemCount] = address;
+        itemSize[itemCount] = length;
+        return itemCount++;
+    }
+
+    /**
+     * Возвращает количество зарегистрированных элементов
+     *
+     * @return Количество элементов
+     */
+    int getItemCount() {
+        return itemCount;
+    }
+
+    private void addToTree(int index, int delta) {
+        for (int i = index + 1; i < growthTree.length; i += i & -i) {
+            growthTree[i] += delta;
+        }
+    }
+
+    /**
+     * Меняет размер элемента
+     *
+     * @param index Номер элемента
+     * @param delta На сколько байт (отрицательное - уменьшение)
+     */
+    void growItem(int index, int delta) {
+        if (delta == 0) {
+            return;
+        }
+        isResized = true;
+        itemGrowth[index] += delta;
+        totalGrowth += delta;
+        addToTree(index, delta);
+    }
+
+    /**
+     * Возвращает сдвиг адреса после заданного количества элементов
+     *
+     * @param itemsBefore Количество элементов перед адресом
+     * @return Сумма изменений размеров этих элементов
+     */
+    int getShift(int itemsBefore) {
+        if (itemsBefore == itemCount) {
+            return totalGrowth;
+        }
+        int shift = 0;
+        for (int i = itemsBefore; i > 0; i -= i & -i) {
+            shift += growthTree[i];
+        }
+        return shift;
+    }
+
+    /**
+     * Перемещает код под новые размеры элементов. Вызывается один раз после
+     * выравнивания, дальше код записывается по окончательным адресам.
+     */
+    void applyGrowth() {
+        if (!isResized) {
+            return;
+        }
+        int maxShift = 0;
+        int shift = 0;
+        for (int k = 0; k < itemCount; k++) {
+            shift += itemGrowth[k];
+            maxShift = Math.max(maxShift, shift);
+        }
+        byte[] newData = new byte[Math.max(data.length, size + maxShift)];
+        byte[] newMarks = new byte[newData.length];
+
+        // код после элемента k - 1 вместе с элементом k сдвигается на сумму
+        // изменений элементов 0..k-1; старые байты измененного элемента
+        // перекрываются следующим блоком или записываются заново
+        int from = 0;
+        shift = 0;
+        for (int k = 0; k <= itemCount; k++) {
+            int end = k < itemCount ? Math.min(itemAddress[k] + itemSize[k], size) : size;
+            if (from < end) {
+                System.arraycopy(data, from, newData, from + shift, end - from);
+                System.arraycopy(marks, from, newMarks, from + shift, end - from);
+                from = end;
+            }
+            if (k < itemCount) {
+                shift += itemGrowth[k];
+            }
+        }
+        data = newData;
+        marks = newMarks;
+        size += totalGrowth;
+        isResized = false;
+    }
+}
@@ -0,0 +1,317 @@
+package trasm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Фоновый процесс транслятора. Слушает порт на локальном адресе
+ * (127.0.0.1) и транслирует присланные файлы в пуле потоков по количеству
+ * ядер, поэтому запуск JVM и прогрев JIT происходят один раз. Порт и
+ * случайный ключ записываются в файл в каталоге ~/.trasm (каталог и файл
+ * доступны только владельцу); клиент без ключа не обслуживается, файлу порта
+ * другого владельца или с другими правами клиент не доверяет.
+ *
+ * Клиент (обычный запуск транслятора для одного файла) пересылает запрос,
+ * если файл порта есть и процесс отвечает, иначе транслирует сам. Ответ
+ * начинается с MAGIC и версии протокола - подтверждения, которое процесс
+ * отправляет сразу после чтения запроса: клиент ждет его недолго и не
+ * доверяет собеседнику, который отвечает что-то другое.
+ */
+class Daemon {
+
+    private static final int MAGIC = 0x5452534D; // "TRSM"
+    /**
+     * Версия протокола (клиент и процесс должны совпадать)
+     */
+    private static final int PROTOCOL_VERSION = 2;
+    /**
+     * Время ожидания запроса от подключившегося клиента, мс (молчащее
+     * подключение не занимает поток пула)
+     */
+    private static final int REQUEST_TIMEOUT = 1000;
+    /**
+     * Время ожидания подключения клиента к процессу, мс
+     */
+    private static final int CONNECT_TIMEOUT = 200;
+    /**
+     * Время ожидания подтверждения запроса (MAGIC и версия в начале ответа),
+     * мс
+     */
+    private static final int REPLY_TIMEOUT = 2000;
+    /**
+     * Время ожидания результата после подтверждения, мс
+     */
+    private static final int TRANSLATION_TIMEOUT = 10 * 60 * 1000;
+    /**
+     * Максимальный размер сообщений в ответе, байт (листинг на экран при
+     * опции -c входит в сообщения)
+     */
+    private static final int MAX_MESSAGES_SIZE = 256 << 20;
+
+    /*
+     * Состояние ответа (неотрицательное значение - количество ошибок)
+     */
+    private static final int FILE_NOT_FOUND = -1;
+    private static final int IO_ERROR = -2;
+    private static final int BAD_REQUEST = -3;
+    /**
+     * Внутренняя ошибка транслятора (текст - в сообщениях)
+     */
+    private static final int INTERNAL_ERROR = -4;
+
+    private static final Set<PosixFilePermission> OWNER_ONLY_DIR = PosixFilePermissions.fromString("rwx------");
+    private static final Set<PosixFilePermission> OWNER_ONLY_FILE = PosixFilePermissions.fromString("rw-------");
+
+    /**
+     * Файл с портом и ключом процесса текущего пользователя
+     *
+     * @return Путь к файлу
+     */
+    private static Path getPortFile() {
+        return Paths.get(System.getProperty("user.home"), ".trasm", "daemon.port");
+    }
+
+    /**
+     * Можно ли доверять файлу порта: обычный файл (не ссылка) текущего
+     * пользователя с правами 0600. В системах без прав POSIX проверяется
+     * только, что это обычный файл.
+     *
+     * @param portFile Файл порта
+     * @return Ответ
+     */
+    private static boolean isTrusted(Path portFile) {
+        try {
+            PosixFileAttributes attributes = Files.readAttributes(portFile, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            return attributes.isRegularFile()
+                    && attributes.owner().getName().equals(System.getProperty("user.name"))
+                    && attributes.permissions().equals(OWNER_ONLY_FILE);
+        } catch (UnsupportedOperationException ex) {
+            return Files.isRegularFile(portFile, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Запускает процесс (до прерывания программы)
+     *
+     * @param port Порт (0 - любой свободный)
+     * @throws IOException
+     */
+    static void run(int port) throws IOException {
+        run(port, getPortFile());
+    }
+
+    /**
+     * Запускает процесс с заданным файлом порта
+     *
+     * @param port Порт (0 - любой свободный)
+     * @param portFile Файл порта
+     * @throws IOException
+     */
+    static void run(int port, Path portFile) throws IOException {
+        byte[] keyBytes = new byte[16];
+        new SecureRandom().nextBytes(keyBytes);
+        StringBuilder key = new StringBuilder();
+        for (byte b : keyBytes) {
+            IOLib.appendHex(key, b, 2);
+        }
+
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threadCount);
+        ThreadLocal<Translation> translations = ThreadLocal.withInitial(Translation::new);
+
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            try {
+                Files.createDirectories(portFile.getParent(), PosixFilePermissions.asFileAttribute(OWNER_ONLY_DIR));
+            } catch (UnsupportedOperationException ex) {
+                Files.createDirectories(portFile.getParent());
+            }
+            Files.deleteIfExists(portFile);
+            try {
+                Files.createFile(portFile, PosixFilePermissions.asFileAttribute(OWNER_ONLY_FILE));
+            } catch (UnsupportedOperationException ex) {
+                Files.createFile(portFile);
+            }
+            Files.write(portFile, (server.getLocalPort() + " " + key).getBytes(StandardCharsets.US_ASCII));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    Files.deleteIfExists(portFile);
+                } catch (IOException ex) {
+                    // файл порта останется, клиент не сможет подключиться и транслирует сам
+                }
+            }));
+
+            System.out.println("Транслятор працює у фоні: 127.0.0.1:" + server.getLocalPort()
+                    + ", потоків: " + threadCount + " (Ctrl+C - вихід)");
+            byte[] expectedKey = key.toString().getBytes(StandardCharsets.US_ASCII);
+            while (true) {
+                Socket socket = server.accept();
+                pool.execute(() -> serve(socket, expectedKey, translations.get()));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Обслуживает один запрос
+     *
+     * @param socket Подключение клиента
+     * @param key Ключ процесса (hex в ASCII)
+     * @param translation Контекст трансляции потока
+     */
+    private static void serve(Socket socket, byte[] key, Translation translation) {
+        try (Socket client = socket;
+                DataInputStream in = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(client.getOutputStream()))) {
+            client.setSoTimeout(REQUEST_TIMEOUT);
+            // ключ сравнивается за время, не зависящее от совпавшего начала
+            boolean isValid = in.readInt() == MAGIC && in.readInt() == PROTOCOL_VERSION
+                    && MessageDigest.isEqual(in.readUTF().getBytes(StandardCharsets.UTF_8), key);
+            out.writeInt(MAGIC);
+            out.writeInt(PROTOCOL_VERSION);
+            if (!isValid) {
+                out.writeInt(BAD_REQUEST);
+                out.writeInt(0);
+                return;
+            }
+            String asmFilePath = in.readUTF();
+            String lstFilePath = in.readUTF();
+            String options = in.readUTF();
+            out.flush();
+            client.setSoTimeout(0);
+
+            long start = System.nanoTime();
+            ByteArrayOutputStream messages = new ByteArrayOutputStream();
+            int status;
+            try (PrintStream buffer = new PrintStream(messages, false, "UTF-8")) {
+                try {
+                    status = Translator.makeLST(asmFilePath, lstFilePath, options, translation, buffer);
+                } catch (FileNotFoundException ex) {
+                    status = FILE_NOT_FOUND;
+                } catch (IOException ex) {
+                    status = IO_ERROR;
+                } catch (RuntimeException ex) {
+                    // как в пакетном режиме: сообщение вместо обрыва подключения
+                    buffer.println("Внутрішня помилка: " + ex);
+                    status = INTERNAL_ERROR;
+                }
+            }
+
+            out.writeInt(status);
+            out.writeInt(messages.size());
+            messages.writeTo(out);
+            System.out.println(asmFilePath + ": " + (System.nanoTime() - start) / 1000000 + " мс");
+        } catch (IOException ex) {
+            // клиент отключился или не прислал запрос вовремя
+        }
+    }
+
+    /**
+     * Пересылает трансляцию процессу, если он запущен
+     *
+     * @param asmFilePath Пусть к исходному файлу
+     * @param lstFilePath Пусть для файла листинга
+     * @param options Опции генерации
+     * @return false, если процесс не запущен или не отвечает (нужно
+     * транслировать самому)
+     */
+    static boolean forward(String asmFilePath, String lstFilePath, String options) {
+        return forward(getPortFile(), asmFilePath, lstFilePath, options);
+    }
+
+    /**
+     * Пересылает трансляцию процессу, записанному в заданном файле порта
+     *
+     * @param portFile Файл порта
+     * @param asmFilePath Пусть к исходному файлу
+     * @param lstFilePath Пусть для файла листинга
+     * @param options Опции генерации
+     * @return false, если процесс не запущен или не отвечает
+     */
+    static boolean forward(Path portFile, String asmFilePath, String lstFilePath, String options) {
+        if (!Files.isReadable(portFile) || !isTrusted(portFile)) {
+            return false;
+        }
+
+        String[] portAndKey;
+        try {
+            portAndKey = new String(Files.readAllBytes(portFile), StandardCharsets.US_ASCII).trim().split(" ");
+        } catch (IOException ex) {
+            return false;
+        }
+        if (portAndKey.length != 2 || !portAndKey[0].matches("^\\d{1,5}$")) {
+            return false;
+        }
+
+        // пути передаются абсолютными: у процесса другой текущий каталог
+        Path cwd = Paths.get("").toAbsolutePath();
+        String asmPath = cwd.resolve(Translator.getAsmPath(asmFilePath)).toString();
+        String lstPath = cwd.resolve(Translator.getLstPath(lstFilePath)).toString();
+
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(portAndKey[0])), CONNECT_TIMEOUT);
+            socket.setSoTimeout(REPLY_TIMEOUT);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(MAGIC);
+            out.writeInt(PROTOCOL_VERSION);
+            out.writeUTF(portAndKey[1]);
+            out.writeUTF(asmPath);
+            out.writeUTF(lstPath);
+            out.writeUTF(options);
+            out.flush();
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            if (in.readInt() != MAGIC || in.readInt() != PROTOCOL_VERSION) {
+                return false;
+            }
+            socket.setSoTimeout(TRANSLATION_TIMEOUT);
+            int status = in.readInt();
+            int length = in.readInt();
+            if (length < 0 || length > MAX_MESSAGES_SIZE) {
+                return false;
+            }
+            byte[] messages = new byte[length];
+            in.readFully(messages);
+            if (status == BAD_REQUEST) {
+                return false;
+            }
+
+            System.out.print(new String(messages, StandardCharsets.UTF_8));
+            System.out.flush();
+            if (status == FILE_NOT_FOUND) {
+                System.out.println("Файл не знайдено.");
+            } else if (status == IO_ERROR) {
+                System.out.println("Помилка виводу.");
+            }
+            return true;
+        } catch (IOException | IllegalArgumentException ex) {
+            // нет ответа, чужой собеседник или порт вне диапазона
+            return false;
+        }
+    }
+}
@@ -1,27 +1,60 @@
 package trasm;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 
 /**
- * Список ошибок при создании листинга.
+ * Список ошибок при создании листинга. Ошибка в развернутой строчке макроса
+ * или во включаемом файле записывается как номер строчки вызова (INCLUDE) со
+ * строчкой макроса или файла: "12(name:4)", "3(defs.inc:10)". Ошибки
+ * второго прохода добавляются после ошибок первого, при печати список
+ * упорядочивается по номерам строк.
  */
 //p.s. Очень быдлокод...
 class ErrorList {
 
+    /**
+     * Ошибка: номер строки и его запись для печати
+     */
+    private static class Entry {
+
+        final int line;
+        final String text;
+
+        Entry(int line, String text) {
+            this.line = line;
+            this.text = text;
+        }
+    }
+
     /**
      * Список с номерами строк
      */
-    private static final ArrayList<Integer> errorLineList = new ArrayList<>();
+    private final ArrayList<Entry> errorLineList = new ArrayList<>();
+    /**
+     * Текущий номер строки
+     */
+    int currentLine = 1;
     /**
-     * Глобальная переменная хранящая текущий номер строки
+     * Строчка макроса или включаемого файла для текущей строчки
+     * ("имя:номер"), null - строчка исходного файла
      */
-    static int currentLine = 1;
+    String sourceLine = null;
+
+    /**
+     * Очищает список и возвращается к первой строке
+     */
+    void reset() {
+        errorLineList.clear();
+        currentLine = 1;
+        sourceLine = null;
+    }
 
     /**
      * Добавить ошибку. (номер строки = currentLine)
      */
-    static void AddError() {
-        errorLineList.add(currentLine);
+    void AddError() {
+        AddError(currentLine, sourceLine);
     }
 
     /**
@@ -29,8 +62,28 @@ class ErrorList {
      *
      * @param line Номер строки
      */
-    static void AddError(int line) {
-        errorLineList.add(line);
+    void AddError(int line) {
+        AddError(line, null);
+    }
+
+    /**
+     * Добавить ошибку в строчке макроса или включаемого файла
+     *
+     * @param line Номер строки вызова
+     * @param sourceLine Строчка макроса или файла ("имя:номер"), null -
+     * строчка исходного файла
+     */
+    void AddError(int line, String sourceLine) {
+        errorLineList.add(new Entry(line, sourceLine == null ? String.valueOf(line) : line + "(" + sourceLine + ")"));
+    }
+
+    /**
+     * Количество ошибок
+     *
+     * @return Количество ошибок
+     */
+    int getCount() {
+        return errorLineList.size();
     }
 
     /**
@@ -38,14 +91,17 @@ class ErrorList {
      *
      * @return Строка для печати
      */
-    static String getStringToPrint() {
+    String getStringToPrint() {
         StringBuilder outStr;
         outStr = new StringBuilder("Помилки: ");
 
         outStr = outStr.append(errorLineList.size()).append((errorLineList.isEmpty()) ? "\n" : "\nРядки з помилками: ");
 
-        for (Integer errorLine : errorLineList) {
-            outStr = outStr.append(errorLine).append(" ");
+        // сортировка устойчивая: ошибки одной строки остаются в порядке добавления
+        ArrayList<Entry> sorted = new ArrayList<>(errorLineList);
+        sorted.sort(Comparator.comparingInt(error -> error.line));
+        for (Entry errorLine : sorted) {
+            outStr = outStr.append(errorLine.text).append(" ");
         }
 
         return outStr.toString();
@@ -1,13 +1,14 @@
 package trasm;
 
-import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.Scanner;
 
 /**
  * Класс для работы с вводом и выводом данных
@@ -15,48 +16,18 @@ import java.util.Scanner;
 class IOLib {
 
     /**
-     * Считывает текстовый файл в массив строк
+     * Заголовок файлов листинга
      *
-     * @param filePath Путь к текстовому файлу
-     * @return Массив строк содержащий в себе каждую строку из входного файла
-     * @throws FileNotFoundException
-     * @throws IOException
-     */
-    static public String[] readAllLines(String filePath) throws FileNotFoundException, IOException {
-        ArrayList<String> outList = new ArrayList<>();
-
-        try (Scanner scanner = new Scanner(new File(filePath))) {
-            while (scanner.hasNextLine()) {
-                outList.add(scanner.nextLine());
-            }
-        }
-
-        return outList.toArray(new String[outList.size()]);
-    }
-
-    /**
-     * Записывает массив строк в поток
-     *
-     * @param lines Массив строк для записи
-     * @param writer Райтер
-     * @throws FileNotFoundException
-     * @throws IOException
+     * @return Заголовок с датой генерации
      */
-    static public void writeAllLines(String[] lines, PrintStream writer) throws FileNotFoundException, IOException {
+    static String getListingHeader() {
 
         String about = "Курсова робота студента КПІ ФПМ групи КВ-23 Чугаєвського Максима Варіант 1\n";
         SimpleDateFormat sdfDate = new SimpleDateFormat("dd/mm/yyyy HH:mm:ss");
         Date now = new Date();
         about += "Згенеровано: " + sdfDate.format(now);
 
-        writer.println(about);
-
-        for (String line : lines) {
-            writer.println(line);
-        }
-        if (!writer.equals(System.out)) {
-            writer.close();
-        }
+        return about;
     }
 
     /**
@@ -67,13 +38,59 @@ class IOLib {
      * @return Число в hex формате
      */
     static String toHex(long i, int lenght) {
-        StringBuilder outStr = new StringBuilder(Long.toHexString(i).toUpperCase());
+        return appendHex(new StringBuilder(lenght), i, lenght).toString();
+    }
+
+    /**
+     * Добавляет число в hex виде с заданной шириной (младшие цифры числа,
+     * слева дополняется нулями)
+     *
+     * @param out Куда добавлять
+     * @param value Число
+     * @param width Количество цифр
+     * @return out
+     */
+    static StringBuilder appendHex(StringBuilder out, long value, int width) {
+        for (int shift = (width - 1) * 4; shift >= 0; shift -= 4) {
+            out.append(shift < 64 ? (char) HEX_DIGITS[(int) (value >>> shift) & 0xF] : '0');
+        }
+        return out;
+    }
 
-        for (int j = outStr.length(); j < lenght; j++) {
-            outStr.insert(0, "0");
+    /**
+     * Добавляет число в десятичном виде, выровненное вправо по ширине
+     * (как "%3d")
+     *
+     * @param out Куда добавлять
+     * @param value Число
+     * @param width Ширина поля
+     * @return out
+     */
+    static StringBuilder appendDecimal(StringBuilder out, int value, int width) {
+        int length = value < 0 ? 2 : 1;
+        for (long rest = Math.abs((long) value) / 10; rest > 0; rest /= 10) {
+            length++;
+        }
+        for (int i = length; i < width; i++) {
+            out.append(' ');
         }
+        return out.append(value);
+    }
 
-        return outStr.length() != lenght ? outStr.substring(outStr.length() - lenght, outStr.length()) : outStr.toString();
+    /**
+     * Дополняет пробелами текст, добавленный начиная с позиции start, до
+     * заданной ширины (как "%-8s")
+     *
+     * @param out Куда добавлять
+     * @param start Начало поля
+     * @param width Ширина поля
+     * @return out
+     */
+    static StringBuilder padRight(StringBuilder out, int start, int width) {
+        for (int i = out.length() - start; i < width; i++) {
+            out.append(' ');
+        }
+        return out;
     }
 
     /**
@@ -86,4 +103,144 @@ class IOLib {
     static String toHex(String value, int lenght) {
         return toHex(LexicalAnalyzer.getConstValue(value), lenght);
     }
+
+    /**
+     * Размер буфера для записи двоичных файлов
+     */
+    private static final int CHANNEL_BUFFER_SIZE = 64 * 1024;
+    /**
+     * Шестнадцатеричные цифры (ASCII)
+     */
+    private static final byte[] HEX_DIGITS = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Открывает файл для записи (существующий файл перезаписывается)
+     *
+     * @param filePath Путь к файлу
+     * @return Канал для записи
+     * @throws IOException
+     */
+    private static FileChannel openForWrite(String filePath) throws IOException {
+        return FileChannel.open(Paths.get(filePath), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Записывает буфер в канал полностью
+     *
+     * @param channel Канал
+     * @param buffer Буфер, подготовленный для чтения
+     * @throws IOException
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Записывает образ сегмента в двоичный файл (.COM/.BIN). Байты, которые не
+     * были записаны в буфер кода, заполняются нулями.
+     *
+     * @param code Буфер кода сегмента
+     * @param size Размер сегмента
+     * @param filePath Путь к файлу
+     * @throws IOException
+     */
+    static void writeBinary(CodeBuffer code, int size, String filePath) throws IOException {
+        try (FileChannel channel = openForWrite(filePath)) {
+            int written = Math.min(size, code.size());
+            writeFully(channel, ByteBuffer.wrap(code.getData(), 0, written));
+
+            if (written < size) {
+                ByteBuffer zeros = ByteBuffer.allocate(Math.min(size - written, CHANNEL_BUFFER_SIZE));
+                while (written < size) {
+                    zeros.clear().limit(Math.min(size - written, zeros.capacity()));
+                    written += zeros.remaining();
+                    writeFully(channel, zeros);
+                }
+            }
+        }
+    }
+
+    /**
+     * Добавляет байт в запись Intel HEX
+     *
+     * @param buffer Буфер записи
+     * @param value Байт
+     * @param checksum Контрольная сумма
+     * @return Новая контрольная сумма
+     */
+    private static int putHexByte(ByteBuffer buffer, int value, int checksum) {
+        buffer.put(HEX_DIGITS[(value >> 4) & 0xF]).put(HEX_DIGITS[value & 0xF]);
+        return checksum + value;
+    }
+
+    /**
+     * Добавляет запись Intel HEX
+     *
+     * @param buffer Буфер
+     * @param type Тип записи
+     * @param address Адрес (младшие 16 бит)
+     * @param data Данные
+     * @param offset Начало данных
+     * @param length Длина данных
+     */
+    private static void putHexRecord(ByteBuffer buffer, int type, int address, byte[] data, int offset, int length) {
+        buffer.put((byte) ':');
+        int checksum = putHexByte(buffer, length, 0);
+        checksum = putHexByte(buffer, (address >> 8) & 0xFF, checksum);
+        checksum = putHexByte(buffer, address & 0xFF, checksum);
+        checksum = putHexByte(buffer, type, checksum);
+        for (int i = offset; i < offset + length; i++) {
+            checksum = putHexByte(buffer, data[i] & 0xFF, checksum);
+        }
+        putHexByte(buffer, -checksum & 0xFF, 0);
+        buffer.put((byte) '\r').put((byte) '\n');
+    }
+
+    /**
+     * Записывает образ сегмента в формате Intel HEX (по 16 байт в записи,
+     * для сегментов больше 64К - с записями расширенного линейного адреса).
+     *
+     * @param code Буфер кода сегмента
+     * @param size Размер сегмента
+     * @param filePath Путь к файлу
+     * @throws IOException
+     */
+    static void writeIntelHex(CodeBuffer code, int size, String filePath) throws IOException {
+        final int recordSize = 16;
+        final int maxRecordLength = 1 + 2 * (5 + recordSize) + 2;
+
+        byte[] image = code.getData();
+        if (image.length < size) {
+            image = Arrays.copyOf(image, size);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(CHANNEL_BUFFER_SIZE);
+        byte[] upper = new byte[2];
+        try (FileChannel channel = openForWrite(filePath)) {
+            for (int address = 0; address < size; address += recordSize) {
+                if (buffer.remaining() < 2 * maxRecordLength) {
+                    buffer.flip();
+                    writeFully(channel, buffer);
+                    buffer.clear();
+                }
+                if (address > 0xFFFF && (address & 0xFFFF) == 0) {
+                    upper[0] = (byte) (address >>> 24);
+                    upper[1] = (byte) (address >>> 16);
+                    putHexRecord(buffer, 0x04, 0, upper, 0, 2);
+                }
+                putHexRecord(buffer, 0x00, address, image, address, Math.min(recordSize, size - address));
+            }
+            if (buffer.remaining() < maxRecordLength) {
+                buffer.flip();
+                writeFully(channel, buffer);
+                buffer.clear();
+            }
+            putHexRecord(buffer, 0x01, 0, upper, 0, 0);
+            buffer.flip();
+            writeFully(channel, buffer);
+        }
+    }
 }
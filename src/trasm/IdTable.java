@@ -37,27 +37,36 @@ class IdTable extends AbstractTable {
      */
     void add(TableItem item) {
         if (isExist(item.getName())) {
-            ErrorList.AddError();
+            translation.errors.AddError();
         } else {
             super.add(item);
+            if (translation.stats != null) {
+                translation.stats.symbolInserts++;
+            }
         }
     }
 
-    private static IdTable instance = null;
-
-    private IdTable() {
-    }
-
     /**
-     * Возвращает единственный экземпляр таблицы идентификаторов
+     * Возвращает элемент с заданным именем (поиск учитывается в статистике)
      *
-     * @return Таблица идентификаторов
+     * @param name Имя элемента
+     * @return Элемент с заданым именем или null
      */
-    static IdTable getInstance() {
-        if (instance == null) {
-            instance = new IdTable();
+    @Override
+    TableItem get(String name) {
+        if (translation.stats != null) {
+            translation.stats.symbolLookups.increment();
         }
-        return instance;
+        return super.get(name);
+    }
+
+    /**
+     * Трансляция, которой принадлежит таблица
+     */
+    private final Translation translation;
+
+    IdTable(Translation translation) {
+        this.translation = translation;
     }
 
     /**
@@ -69,18 +78,46 @@ class IdTable extends AbstractTable {
         private final String segment;
         private final int address;
         private final IdType type;
+        /**
+         * Буфер сегмента и количество элементов переменного размера перед
+         * идентификатором (для сдвига адреса после выравнивания)
+         */
+        private final CodeBuffer code;
+        private final int itemsBefore;
 
         /**
-         * Конструктор элемента таблицы идентификаторов
+         * Конструктор элемента таблицы идентификаторов по текущему
+         * состоянию таблицы сегментов
          *
          * @param name Имя нового элемента
          * @param type Тип нового элемента
+         * @param segTable Таблица сегментов
          */
-        public IdInfo(String name, IdType type) {
+        public IdInfo(String name, IdType type, SegTable segTable) {
+            this(name, type, segTable.getCurrentSegment(), segTable.getCurrentAddress(),
+                    segTable.getCode(), segTable.getCode().getItemCount());
+        }
+
+        private IdInfo(String name, IdType type, String segment, int address, CodeBuffer code, int itemsBefore) {
             this.name = name;
-            this.segment = SegTable.getInstance().getCurrentSegment();
-            this.address = SegTable.getInstance().getCurrentAddress();
+            this.segment = segment;
+            this.address = address;
             this.type = type;
+            this.code = code;
+            this.itemsBefore = itemsBefore;
+        }
+
+        /**
+         * Предполагаемый элемент для ссылки вперёд в первом проходе (в
+         * таблицу не добавляется, сегмент неизвестен, смещение 0)
+         *
+         * @param name Имя элемента
+         * @param type Предполагаемый тип
+         * @param code Буфер кода строчки со ссылкой
+         * @return Элемент
+         */
+        static IdInfo forward(String name, IdType type, CodeBuffer code) {
+            return new IdInfo(name, type, null, 0, code, 0);
         }
 
         /**
@@ -98,7 +135,17 @@ class IdTable extends AbstractTable {
          * @return Смещение элемента
          */
         public int getAddress() {
-            return address;
+            return address + code.getShift(itemsBefore);
+        }
+
+        /**
+         * Известен ли окончательный адрес уже в первом проходе (перед
+         * элементом нет элементов переменного размера)
+         *
+         * @return Ответ
+         */
+        public boolean isFixed() {
+            return itemsBefore == 0;
         }
 
         /**
@@ -127,7 +174,17 @@ class IdTable extends AbstractTable {
          */
         @Override
         public String toString() {
-            return String.format("%1$-8s %2$-8s %3$s:%4$s\n", name, type.toString(), segment, IOLib.toHex(address, 4));
+            return appendTo(new StringBuilder()).toString();
+        }
+
+        @Override
+        public StringBuilder appendTo(StringBuilder out) {
+            int start = out.length();
+            IOLib.padRight(out.append(name), start, 8).append(' ');
+            start = out.length();
+            IOLib.padRight(out.append(type.toString()), start, 8).append(' ');
+            out.append(segment).append(':');
+            return IOLib.appendHex(out, getAddress(), 4).append('\n');
         }
 
     }
@@ -144,7 +201,7 @@ class IdTable extends AbstractTable {
         outStr = new StringBuilder("Ім'я     Тип      Адреса\n");
 
         for (TableItem tableItem : list) {
-            outStr = outStr.append(tableItem.toString());
+            tableItem.appendTo(outStr);
         }
 
         return outStr.toString();
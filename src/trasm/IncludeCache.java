@@ -0,0 +1,109 @@
+package trasm;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Кэш разобранных включаемых файлов (INCLUDE), общий для всех трансляций
+ * процесса (пакетный режим, фоновый процесс). Ключ - абсолютный путь, запись
+ * используется, пока у файла те же время изменения и размер, поэтому файл,
+ * включаемый многими исходными файлами, читается и разбирается один раз.
+ * Разобранные строчки не изменяются и используются из разных потоков.
+ */
+class IncludeCache {
+
+    /**
+     * Максимальное количество файлов в кэше (давно не использованные
+     * удаляются)
+     */
+    private static final int MAX_FILES = 256;
+
+    /**
+     * Разобранный включаемый файл
+     */
+    static class IncludeFile {
+
+        /**
+         * Абсолютный путь
+         */
+        final Path path;
+        /**
+         * Имя файла (для ошибок: "имя:номер строчки")
+         */
+        final String name;
+        /**
+         * Время изменения и размер файла при разборе
+         */
+        final FileTime modified;
+        final long size;
+        final ParsedLine[] lines;
+
+        IncludeFile(Path path, FileTime modified, long size, ParsedLine[] lines) {
+            this.path = path;
+            this.name = path.getFileName().toString();
+            this.modified = modified;
+            this.size = size;
+            this.lines = lines;
+        }
+
+        /**
+         * Не изменился ли файл после разбора
+         *
+         * @return Ответ
+         */
+        boolean isUpToDate() {
+            try {
+                return Files.getLastModifiedTime(path).equals(modified) && Files.size(path) == size;
+            } catch (IOException ex) {
+                return false;
+            }
+        }
+    }
+
+    private static final Map<Path, IncludeFile> files = new LinkedHashMap<Path, IncludeFile>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, IncludeFile> eldest) {
+            return size() > MAX_FILES;
+        }
+    };
+
+    /**
+     * Возвращает разобранный файл (из кэша или разбирает заново)
+     *
+     * @param path Абсолютный путь к файлу
+     * @return Разобранный файл
+     * @throws IOException
+     */
+    static IncludeFile get(Path path) throws IOException {
+        IncludeFile file;
+        synchronized (files) {
+            file = files.get(path);
+        }
+        if (file != null && file.isUpToDate()) {
+            return file;
+        }
+
+        // файл разбирается без блокировки: одновременный разбор одного файла
+        // в двух трансляциях только повторяет работу
+        FileTime modified = Files.getLastModifiedTime(path);
+        long size = Files.size(path);
+        ArrayList<ParsedLine> lines = new ArrayList<>();
+        try (SourceReader reader = new SourceReader(path.toString(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.nextLine()) != null) {
+                lines.add(new ParsedLine(line));
+            }
+        }
+        file = new IncludeFile(path, modified, size, lines.toArray(new ParsedLine[lines.size()]));
+        synchronized (files) {
+            files.put(path, file);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,532 @@
+package trasm;
+
+import java.util.ArrayList;
+
+/**
+ * Таблица кодирования команд. Запись выбирается по номеру мнемоники и
+ * форме операндов (индексы массива), поэтому кодирование строчки не зависит
+ * от размера таблицы.
+ *
+ * Строчка описания: мнемоника, операнды, способ кодирования, код операции
+ * для байтовых операндов и для слов (двойных слов) ("-" - нет), затем
+ * необязательные поля: /n - поле reg байта ModR/M, +XX - дополнительный код
+ * операции, i8/i16 - размер непосредственного операнда и флаги.
+ *
+ * Операнды: r - регистр общего назначения, s - сегментный регистр, i -
+ * константа, l - идентификатор без адресации (метка перехода или
+ * переменная), x - переменная с адресацией или заменой сегмента, m - l или
+ * x, rm - r, l или x. Третий операнд (IMUL, SHLD, SHRD) - r или i.
+ */
+class InstructionTable {
+
+    //<editor-fold defaultstate="collapsed" desc="operand classes">
+    /*
+     * Классы операндов
+     */
+    static final int NONE = 0;
+    static final int R = 1;
+    static final int S = 2;
+    static final int I = 3;
+    static final int L = 4;
+    static final int X = 5;
+    private static final int CLASS_COUNT = 6;
+    /**
+     * Форма "префикс команда" (rep movsb)
+     */
+    static final int PREFIXED = CLASS_COUNT * CLASS_COUNT * CLASS_COUNT;
+    /**
+     * Количество форм операндов
+     */
+    static final int SHAPE_COUNT = PREFIXED + 1;
+//</editor-fold>
+
+    /**
+     * Способы кодирования
+     */
+    static enum Format {
+
+        /**
+         * Без операндов
+         */
+        FIXED,
+        /**
+         * Префикс повторения перед строковой командой
+         */
+        PREFIX,
+        /**
+         * r/m, /n (+XX - регистр слова в коде операции)
+         */
+        RM,
+        /**
+         * r/m, r
+         */
+        RM_REG,
+        /**
+         * r, r/m
+         */
+        REG_RM,
+        /**
+         * r, r/m, imm (+XX - байт со знаком)
+         */
+        REG_RM_IMM,
+        /**
+         * r/m, imm, /n (+XX - байт со знаком для слова)
+         */
+        RM_IMM,
+        /**
+         * r, imm (регистр в коде операции)
+         */
+        REG_IMM,
+        /**
+         * r/m, 1 или r/m, imm8 (+XX - код операции с imm8), /n
+         */
+        SHIFT,
+        /**
+         * r/m, CL, /n
+         */
+        SHIFT_CL,
+        /**
+         * r/m, r, imm8 (сдвиг двойной точности)
+         */
+        RM_REG_IMM,
+        /**
+         * r/m, r, CL (сдвиг двойной точности)
+         */
+        RM_REG_CL,
+        /**
+         * Сегментный регистр в коде операции: ES, CS, SS, DS - байтовый код
+         * + 8 * номер, FS, GS - код слова + 8 * (номер - 4)
+         */
+        SREG,
+        /**
+         * r/m16, sreg
+         */
+        RM_SREG,
+        /**
+         * sreg, r/m16
+         */
+        SREG_RM,
+        /**
+         * imm (+XX - байт со знаком)
+         */
+        IMM,
+        /**
+         * imm16, imm8 (ENTER)
+         */
+        IMM_IMM,
+        /**
+         * Переход на метку: код слова - ближний, +XX - короткий
+         */
+        REL,
+        /**
+         * AL/AX/EAX, imm8
+         */
+        ACC_IMM,
+        /**
+         * imm8, AL/AX/EAX
+         */
+        IMM_ACC,
+        /**
+         * AL/AX/EAX, DX
+         */
+        ACC_DX,
+        /**
+         * DX, AL/AX/EAX
+         */
+        DX_ACC
+    }
+
+    //<editor-fold defaultstate="collapsed" desc="flags">
+    /**
+     * Операнд 32 бита (префикс 66) у команды без операндов
+     */
+    static final int O32 = 1;
+    /**
+     * Строковая команда (может идти после префикса повторения)
+     */
+    static final int STRING = 2;
+    /**
+     * Сегментный регистр CS недопустим
+     */
+    static final int NO_CS = 4;
+    /**
+     * Код операции выбирается по размеру второго операнда, который меньше
+     * первого (MOVZX, MOVSX)
+     */
+    static final int SOURCE_SIZE = 8;
+    /**
+     * Второй операнд - адрес, тип переменной не важен (LEA, LDS)
+     */
+    static final int ADDRESS = 16;
+    /**
+     * Допустим префикс LOCK (если один из операндов в памяти)
+     */
+    static final int LOCK = 32;
+    /**
+     * Префикс размера адреса 67 (JECXZ)
+     */
+    static final int ADDRESS32 = 64;
+//</editor-fold>
+
+    /**
+     * Запись таблицы
+     */
+    static class Encoding {
+
+        final Format format;
+        /**
+         * Код операции для байтовых операндов и для слов (-1 - нет; больше
+         * 0xFF - два байта)
+         */
+        final int opcode, wordOpcode;
+        /**
+         * Поле reg байта ModR/M (-1 - нет)
+         */
+        final int ext;
+        /**
+         * Дополнительный код операции (-1 - нет), см. Format
+         */
+        final int extraOpcode;
+        /**
+         * Размер непосредственного операнда (0 - по размеру операнда)
+         */
+        final int immWidth;
+        final int flags;
+
+        Encoding(Format format, int opcode, int wordOpcode, int ext, int extraOpcode, int immWidth, int flags) {
+            this.format = format;
+            this.opcode = opcode;
+            this.wordOpcode = wordOpcode;
+            this.ext = ext;
+            this.extraOpcode = extraOpcode;
+            this.immWidth = immWidth;
+            this.flags = flags;
+        }
+
+        boolean is(int flag) {
+            return (flags & flag) != 0;
+        }
+
+        boolean isJump() {
+            return format == Format.REL;
+        }
+    }
+
+    //<editor-fold defaultstate="collapsed" desc="table">
+    /**
+     * Описание команд
+     */
+    private static final String[] ROWS = {
+        // без операндов
+        "aaa - FIXED 37 -", "aad - FIXED D50A -", "aam - FIXED D40A -", "aas - FIXED 3F -",
+        "cbw - FIXED 98 -", "cwde - FIXED 98 - o32", "cwd - FIXED 99 -", "cdq - FIXED 99 - o32",
+        "clc - FIXED F8 -", "cld - FIXED FC -", "cli - FIXED FA -", "cmc - FIXED F5 -",
+        "daa - FIXED 27 -", "das - FIXED 2F -", "hlt - FIXED F4 -", "into - FIXED CE -",
+        "iret - FIXED CF -", "iretd - FIXED CF - o32", "lahf - FIXED 9F -", "leave - FIXED C9 -",
+        "enter i,i IMM_IMM C8 -",
+        "nop - FIXED 90 -", "popa - FIXED 61 -", "popad - FIXED 61 - o32",
+        "popf - FIXED 9D -", "popfd - FIXED 9D - o32", "pusha - FIXED 60 -", "pushad - FIXED 60 - o32",
+        "pushf - FIXED 9C -", "pushfd - FIXED 9C - o32", "ret - FIXED C3 -", "retf - FIXED CB -",
+        "sahf - FIXED 9E -", "stc - FIXED F9 -", "std - FIXED FD -", "sti - FIXED FB -",
+        "wait - FIXED 9B -", "xlat - FIXED D7 -",
+        // строковые команды и префиксы повторения
+        "movsb - FIXED A4 - str", "movsw - FIXED A5 - str", "movsd - FIXED A5 - o32 str",
+        "cmpsb - FIXED A6 - str", "cmpsw - FIXED A7 - str", "cmpsd - FIXED A7 - o32 str",
+        "stosb - FIXED AA - str", "stosw - FIXED AB - str", "stosd - FIXED AB - o32 str",
+        "lodsb - FIXED AC - str", "lodsw - FIXED AD - str", "lodsd - FIXED AD - o32 str",
+        "scasb - FIXED AE - str", "scasw - FIXED AF - str", "scasd - FIXED AF - o32 str",
+        "insb - FIXED 6C - str", "insw - FIXED 6D - str", "insd - FIXED 6D - o32 str",
+        "outsb - FIXED 6E - str", "outsw - FIXED 6F - str", "outsd - FIXED 6F - o32 str",
+        "rep - PREFIX F3 -", "repe - PREFIX F3 -", "repz - PREFIX F3 -",
+        "repne - PREFIX F2 -", "repnz - PREFIX F2 -",
+        // один операнд
+        "inc rm RM FE FF /0 +40 lock", "dec rm RM FE FF /1 +48 lock",
+        "not rm RM F6 F7 /2 lock", "neg rm RM F6 F7 /3 lock",
+        "mul rm RM F6 F7 /4", "imul rm RM F6 F7 /5", "div rm RM F6 F7 /6", "idiv rm RM F6 F7 /7",
+        "push rm RM - FF /6 +50", "push s SREG 06 0FA0", "push i IMM 68 - +6A i16",
+        "pop rm RM - 8F /0 +58", "pop s SREG 07 0FA1 nocs",
+        "int i IMM CD - i8", "ret i IMM C2 - i16", "retf i IMM CA - i16",
+        // переходы (условные - см. CONDITIONS)
+        "jmp l REL - E9 +EB", "jmp r RM - FF /4", "jmp x RM - FF /4",
+        "call l REL - E8", "call r RM - FF /2", "call x RM - FF /2",
+        "loop l REL - - +E2", "loope l REL - - +E1", "loopz l REL - - +E1",
+        "loopne l REL - - +E0", "loopnz l REL - - +E0", "jcxz l REL - - +E3",
+        "jecxz l REL - - +E3 a32",
+        // арифметика и логика
+        "add m,r RM_REG 00 01 lock", "add r,rm REG_RM 02 03", "add rm,i RM_IMM 80 81 /0 +83 lock",
+        "or m,r RM_REG 08 09 lock", "or r,rm REG_RM 0A 0B", "or rm,i RM_IMM 80 81 /1 +83 lock",
+        "adc m,r RM_REG 10 11 lock", "adc r,rm REG_RM 12 13", "adc rm,i RM_IMM 80 81 /2 +83 lock",
+        "sbb m,r RM_REG 18 19 lock", "sbb r,rm REG_RM 1A 1B", "sbb rm,i RM_IMM 80 81 /3 +83 lock",
+        "and m,r RM_REG 20 21 lock", "and r,rm REG_RM 22 23", "and rm,i RM_IMM 80 81 /4 +83 lock",
+        "sub m,r RM_REG 28 29 lock", "sub r,rm REG_RM 2A 2B", "sub rm,i RM_IMM 80 81 /5 +83 lock",
+        "xor m,r RM_REG 30 31 lock", "xor r,rm REG_RM 32 33", "xor rm,i RM_IMM 80 81 /6 +83 lock",
+        "cmp m,r RM_REG 38 39", "cmp r,rm REG_RM 3A 3B", "cmp rm,i RM_IMM 80 81 /7 +83",
+        "test m,r RM_REG 84 85", "test r,rm REG_RM 84 85", "test rm,i RM_IMM F6 F7 /0",
+        "imul r,rm REG_RM - 0FAF", "imul r,rm,i REG_RM_IMM - 69 +6B",
+        // пересылки
+        "mov m,r RM_REG 88 89", "mov r,rm REG_RM 8A 8B", "mov m,i RM_IMM C6 C7 /0", "mov r,i REG_IMM B0 B8",
+        "mov rm,s RM_SREG - 8C", "mov s,rm SREG_RM - 8E nocs",
+        "xchg m,r RM_REG 86 87 lock", "xchg r,rm REG_RM 86 87 lock",
+        "movzx r,rm REG_RM 0FB6 0FB7 src", "movsx r,rm REG_RM 0FBE 0FBF src",
+        "lea r,m REG_RM - 8D addr", "lds r,m REG_RM - C5 addr", "les r,m REG_RM - C4 addr",
+        "lfs r,m REG_RM - 0FB4 addr", "lgs r,m REG_RM - 0FB5 addr", "lss r,m REG_RM - 0FB2 addr",
+        "in r,i ACC_IMM E4 E5", "in r,r ACC_DX EC ED", "out i,r IMM_ACC E6 E7", "out r,r DX_ACC EE EF",
+        // сдвиги
+        "rol rm,i SHIFT D0 D1 /0 +C0", "rol rm,r SHIFT_CL D2 D3 /0",
+        "ror rm,i SHIFT D0 D1 /1 +C0", "ror rm,r SHIFT_CL D2 D3 /1",
+        "rcl rm,i SHIFT D0 D1 /2 +C0", "rcl rm,r SHIFT_CL D2 D3 /2",
+        "rcr rm,i SHIFT D0 D1 /3 +C0", "rcr rm,r SHIFT_CL D2 D3 /3",
+        "shl rm,i SHIFT D0 D1 /4 +C0", "shl rm,r SHIFT_CL D2 D3 /4",
+        "sal rm,i SHIFT D0 D1 /4 +C0", "sal rm,r SHIFT_CL D2 D3 /4",
+        "shr rm,i SHIFT D0 D1 /5 +C0", "shr rm,r SHIFT_CL D2 D3 /5",
+        "sar rm,i SHIFT D0 D1 /7 +C0", "sar rm,r SHIFT_CL D2 D3 /7",
+        "shld rm,r,i RM_REG_IMM - 0FA4", "shld rm,r,r RM_REG_CL - 0FA5",
+        "shrd rm,r,i RM_REG_IMM - 0FAC", "shrd rm,r,r RM_REG_CL - 0FAD",
+        // биты
+        "bsf r,rm REG_RM - 0FBC", "bsr r,rm REG_RM - 0FBD",
+        "bt rm,r RM_REG - 0FA3", "bt rm,i RM_IMM - 0FBA /4 i8",
+        "bts rm,r RM_REG - 0FAB lock", "bts rm,i RM_IMM - 0FBA /5 i8 lock",
+        "btr rm,r RM_REG - 0FB3 lock", "btr rm,i RM_IMM - 0FBA /6 i8 lock",
+        "btc rm,r RM_REG - 0FBB lock", "btc rm,i RM_IMM - 0FBA /7 i8 lock"
+    };
+    /**
+     * Условия Jcc и SETcc (с синонимами) в порядке кода условия
+     */
+    private static final String[] CONDITIONS = {
+        "o", "no", "b c nae", "nb ae nc", "e z", "ne nz", "be na", "a nbe",
+        "s", "ns", "p pe", "np po", "l nge", "ge nl", "le ng", "g nle"
+    };
+//</editor-fold>
+
+    /**
+     * Записи по номеру мнемоники (LexicalAnalyzer.getKeywordId) и форме
+     * операндов
+     */
+    private static final Encoding[][] table = new Encoding[LexicalAnalyzer.KEYWORD_COUNT][];
+
+    static {
+        for (String row : ROWS) {
+            addRow(row);
+        }
+        for (int cc = 0; cc < CONDITIONS.length; cc++) {
+            for (String condition : CONDITIONS[cc].split(" ")) {
+                addRow("j" + condition + " l REL - " + Integer.toHexString(0x0F80 + cc) + " +" + Integer.toHexString(0x70 + cc));
+                addRow("set" + condition + " rm RM " + Integer.toHexString(0x0F90 + cc) + " - /0");
+            }
+        }
+    }
+
+    /**
+     * Разбирает строчку описания и добавляет запись для всех форм операндов
+     *
+     * @param row Строчка описания
+     */
+    private static void addRow(String row) {
+        String[] words = row.split(" ");
+        int id = LexicalAnalyzer.getKeywordId(words[0]);
+        if (id < 0 || LexicalAnalyzer.getKeywordType(id) != LexemeType.INSTRUCTION) {
+            throw new AssertionError(row);
+        }
+
+        int ext = -1;
+        int extraOpcode = -1;
+        int immWidth = 0;
+        int flags = 0;
+        for (int i = 5; i < words.length; i++) {
+            String word = words[i];
+            switch (word) {
+                case "i8":
+                    immWidth = 1;
+                    break;
+                case "i16":
+                    immWidth = 2;
+                    break;
+                case "o32":
+                    flags |= O32;
+                    break;
+                case "str":
+                    flags |= STRING;
+                    break;
+                case "nocs":
+                    flags |= NO_CS;
+                    break;
+                case "src":
+                    flags |= SOURCE_SIZE;
+                    break;
+                case "addr":
+                    flags |= ADDRESS;
+                    break;
+                case "lock":
+                    flags |= LOCK;
+                    break;
+                case "a32":
+                    flags |= ADDRESS32;
+                    break;
+                default:
+                    if (word.startsWith("/")) {
+                        ext = Integer.parseInt(word.substring(1));
+                    } else if (word.startsWith("+")) {
+                        extraOpcode = Integer.parseInt(word.substring(1), 16);
+                    } else {
+                        throw new AssertionError(row);
+                    }
+            }
+        }
+        Encoding encoding = new Encoding(Format.valueOf(words[2]), parseOpcode(words[3]), parseOpcode(words[4]),
+                ext, extraOpcode, immWidth, flags);
+
+        if (table[id] == null) {
+            table[id] = new Encoding[SHAPE_COUNT];
+        }
+        if (encoding.format == Format.PREFIX) {
+            table[id][PREFIXED] = encoding;
+            return;
+        }
+        for (int shape : parseOperands(words[1])) {
+            if (table[id][shape] != null) {
+                throw new AssertionError(row);
+            }
+            table[id][shape] = encoding;
+        }
+    }
+
+    private static int parseOpcode(String word) {
+        return word.equals("-") ? -1 : Integer.parseInt(word, 16);
+    }
+
+    /**
+     * Классы одного операнда описания
+     *
+     * @param operand Операнд описания
+     * @return Классы операндов
+     */
+    private static int[] parseOperand(String operand) {
+        switch (operand) {
+            case "r":
+                return new int[]{R};
+            case "s":
+                return new int[]{S};
+            case "i":
+                return new int[]{I};
+            case "l":
+                return new int[]{L};
+            case "x":
+                return new int[]{X};
+            case "m":
+                return new int[]{L, X};
+            case "rm":
+                return new int[]{R, L, X};
+            default:
+                throw new AssertionError(operand);
+        }
+    }
+
+    /**
+     * Формы операндов описания ("rm,i" - все сочетания классов)
+     *
+     * @param operands Операнды описания ("-" - нет операндов)
+     * @return Формы операндов
+     */
+    private static int[] parseOperands(String operands) {
+        if (operands.equals("-")) {
+            return new int[]{NONE};
+        }
+        String[] parts = operands.split(",");
+        int[] thirds = parts.length == 3 ? parseOperand(parts[2]) : new int[]{NONE};
+        ArrayList<Integer> shapes = new ArrayList<>();
+        for (int first : parseOperand(parts[0])) {
+            if (parts.length == 1) {
+                shapes.add(getShape(first, NONE));
+                continue;
+            }
+            for (int second : parseOperand(parts[1])) {
+                for (int third : thirds) {
+                    shapes.add(getShape(first, second, third));
+                }
+            }
+        }
+        int[] result = new int[shapes.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = shapes.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Форма операндов
+     *
+     * @param first Класс первого операнда (NONE - нет операндов)
+     * @param second Класс второго операнда (NONE - один операнд)
+     * @return Форма операндов
+     */
+    static int getShape(int first, int second) {
+        return first * CLASS_COUNT + second;
+    }
+
+    /**
+     * Форма операндов с третьим операндом
+     *
+     * @param first Класс первого операнда
+     * @param second Класс второго операнда
+     * @param third Класс третьего операнда (NONE - два операнда)
+     * @return Форма операндов
+     */
+    static int getShape(int first, int second, int third) {
+        return (third * CLASS_COUNT + first) * CLASS_COUNT + second;
+    }
+
+    /**
+     * Класс первого операнда формы
+     *
+     * @param shape Форма операндов
+     * @return Класс операнда
+     */
+    static int getFirst(int shape) {
+        return shape == PREFIXED ? NONE : shape / CLASS_COUNT % CLASS_COUNT;
+    }
+
+    /**
+     * Класс второго операнда формы
+     *
+     * @param shape Форма операндов
+     * @return Класс операнда
+     */
+    static int getSecond(int shape) {
+        return shape == PREFIXED ? NONE : shape % CLASS_COUNT;
+    }
+
+    /**
+     * Класс третьего операнда формы
+     *
+     * @param shape Форма операндов
+     * @return Класс операнда
+     */
+    static int getThird(int shape) {
+        return shape == PREFIXED ? NONE : shape / (CLASS_COUNT * CLASS_COUNT);
+    }
+
+    /**
+     * Возвращает запись таблицы
+     *
+     * @param mnemonic Мнемоника команды
+     * @param shape Форма операндов
+     * @return Запись или null, если у команды нет такой формы
+     */
+    static Encoding get(String mnemonic, int shape) {
+        int id = LexicalAnalyzer.getKeywordId(mnemonic);
+        if (id < 0 || table[id] == null) {
+            return null;
+        }
+        return table[id][shape];
+    }
+
+    /**
+     * Длина кода операции в байтах
+     *
+     * @param opcode Код операции
+     * @return Длина
+     */
+    static int getOpcodeLength(int opcode) {
+        return opcode > 0xFF ? 2 : 1;
+    }
+}
@@ -1,7 +1,6 @@
 package trasm;
 
 import java.util.ArrayList;
-import java.util.regex.Pattern;
 
 /**
  * Типы лексем
@@ -83,42 +82,371 @@ class LexemeInfo {
 class LexicalAnalyzer {
 
     /**
-     * Возвращает информацию про все лексемы в строке
+     * Кэш значений перечисления (values() каждый раз создает новый массив)
+     */
+    private static final LexemeType[] TYPES = LexemeType.values();
+
+    //<editor-fold defaultstate="collapsed" desc="keywords">
+    /**
+     * Зарезервированные слова и их типы
+     */
+    private static final String[][] KEYWORDS = {
+        /*0*/{"cli", "inc", "dec", "add", "cmp", "xor", "mov", "or", "jb", "jmp",
+            "aaa", "aad", "aam", "aas", "cbw", "cwde", "cwd", "cdq", "clc", "cld", "cmc", "daa", "das",
+            "hlt", "into", "iret", "iretd", "lahf", "leave", "enter", "nop", "popa", "popad", "popf", "popfd",
+            "pusha", "pushad", "pushf", "pushfd", "ret", "retf", "sahf", "stc", "std", "sti", "wait", "xlat",
+            "movsb", "movsw", "movsd", "cmpsb", "cmpsw", "cmpsd", "stosb", "stosw", "stosd",
+            "lodsb", "lodsw", "lodsd", "scasb", "scasw", "scasd", "insb", "insw", "insd",
+            "outsb", "outsw", "outsd", "rep", "repe", "repz", "repne", "repnz", "lock",
+            "not", "neg", "mul", "imul", "div", "idiv", "push", "pop", "int",
+            "call", "loop", "loope", "loopz", "loopne", "loopnz", "jcxz", "jecxz",
+            "jo", "jno", "jc", "jnae", "jnb", "jae", "jnc", "je", "jz", "jne", "jnz", "jbe", "jna",
+            "ja", "jnbe", "js", "jns", "jp", "jpe", "jnp", "jpo", "jl", "jnge", "jge", "jnl", "jle", "jng",
+            "jg", "jnle", "seto", "setno", "setb", "setc", "setnae", "setnb", "setae", "setnc", "sete",
+            "setz", "setne", "setnz", "setbe", "setna", "seta", "setnbe", "sets", "setns", "setp", "setpe",
+            "setnp", "setpo", "setl", "setnge", "setge", "setnl", "setle", "setng", "setg", "setnle",
+            "adc", "sbb", "and", "sub", "test", "xchg", "lea", "lds", "les", "lfs", "lgs", "lss",
+            "movzx", "movsx", "bsf", "bsr", "bt", "bts", "btr", "btc",
+            "rol", "ror", "rcl", "rcr", "shl", "sal", "shr", "sar", "shld", "shrd", "in", "out"},
+        /*1*/ {"segment", "ends", "end", "assume", "macro", "endm", "include"},
+        /*2*/ {"al", "cl", "dl", "bl", "ah", "ch", "dh", "bh", "ax", "cx", "dx", "bx", "sp", "bp", "si", "di",
+            "eax", "ecx", "edx", "ebx", "esp", "ebp", "esi", "edi"},
+        /*3*/ {"es", "cs", "ss", "ds", "fs", "gs"},
+        /*4*/ {"db", "dw", "dd"}
+    };
+//</editor-fold>
+
+    /**
+     * Хэш-таблица ключевых слов с открытой адресацией (ключи в нижнем
+     * регистре)
+     */
+    private static final String[] keywordNames = new String[512];
+    /**
+     * Типы ключевых слов, параллельно keywordNames
+     */
+    private static final LexemeType[] keywordTypes = new LexemeType[512];
+    /**
+     * Номера ключевых слов (в порядке KEYWORDS), параллельно keywordNames
+     */
+    private static final int[] keywordIds = new int[512];
+    /**
+     * Ключевые слова по номерам
+     */
+    private static final String[] keywordList;
+    /**
+     * Типы ключевых слов по номерам
+     */
+    private static final LexemeType[] keywordListTypes;
+
+    static {
+        int count = 0;
+        for (String[] keywords : KEYWORDS) {
+            count += keywords.length;
+        }
+        keywordList = new String[count];
+        keywordListTypes = new LexemeType[count];
+
+        int id = 0;
+        for (int type = 0; type < KEYWORDS.length; type++) {
+            for (String keyword : KEYWORDS[type]) {
+                int slot = keywordHash(keyword, 0, keyword.length());
+                while (keywordNames[slot] != null) {
+                    slot = (slot + 1) & (keywordNames.length - 1);
+                }
+                keywordNames[slot] = keyword;
+                keywordTypes[slot] = TYPES[type];
+                keywordIds[slot] = id;
+                keywordListTypes[id] = TYPES[type];
+                keywordList[id++] = keyword;
+            }
+        }
+    }
+
+    /**
+     * Количество ключевых слов. Номера ключевых слов - от 0 до
+     * KEYWORD_COUNT - 1.
+     */
+    static final int KEYWORD_COUNT = keywordList.length;
+
+    /**
+     * Возвращает номер ключевого слова
+     *
+     * @param value Ключевое слово (в любом регистре)
+     * @return Номер ключевого слова или -1, если это не ключевое слово
+     */
+    static int getKeywordId(String value) {
+        int slot = findKeyword(value, 0, value.length());
+        return slot < 0 ? -1 : keywordIds[slot];
+    }
+
+    /**
+     * Возвращает ключевое слово по номеру
+     *
+     * @param id Номер ключевого слова
+     * @return Ключевое слово в нижнем регистре
+     */
+    static String getKeyword(int id) {
+        return keywordList[id];
+    }
+
+    /**
+     * Возвращает тип ключевого слова по номеру
+     *
+     * @param id Номер ключевого слова
+     * @return Тип лексемы
+     */
+    static LexemeType getKeywordType(int id) {
+        return keywordListTypes[id];
+    }
+
+    /**
+     * Хэш участка строки без учета регистра (только ASCII)
+     *
+     * @param line Строка
+     * @param from Начало участка
+     * @param to Конец участка (не включительно)
+     * @return Номер ячейки в таблице ключевых слов
+     */
+    private static int keywordHash(String line, int from, int to) {
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            hash = hash * 31 + (line.charAt(i) | 0x20);
+        }
+        return (hash ^ (hash >>> 7)) & (keywordNames.length - 1);
+    }
+
+    /**
+     * Ищет участок строки среди ключевых слов
+     *
+     * @param line Строка
+     * @param from Начало участка
+     * @param to Конец участка (не включительно)
+     * @return Номер ячейки в таблице или -1
+     */
+    private static int findKeyword(String line, int from, int to) {
+        int length = to - from;
+        if (length == 0 || length > 7) {
+            return -1;
+        }
+        for (int slot = keywordHash(line, from, to); keywordNames[slot] != null;
+                slot = (slot + 1) & (keywordNames.length - 1)) {
+            String keyword = keywordNames[slot];
+            if (keyword.length() != length) {
+                continue;
+            }
+            int i = 0;
+            while (i < length && toLowerAscii(line.charAt(from + i)) == keyword.charAt(i)) {
+                i++;
+            }
+            if (i == length) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private static char toLowerAscii(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c | 0x20) : c;
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isHexDigit(char c) {
+        return isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    /**
+     * Пробельный символ (разделитель лексем)
+     */
+    static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Односимвольная лексема
+     */
+    static boolean isOneSymbol(char c) {
+        return c == ',' || c == ':' || c == '[' || c == ']';
+    }
+
+    /**
+     * Символ конца строки (на нем заканчивается комментарий)
+     */
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    /**
+     * Определяет тип лексемы, не выделяя её в отдельную строку
+     *
+     * @param line Строка
+     * @param from Начало лексемы
+     * @param to Конец лексемы (не включительно)
+     * @return Тип лексемы
+     */
+    private static LexemeType getLexemeType(String line, int from, int to) {
+        int length = to - from;
+        char first = line.charAt(from);
+        char last = toLowerAscii(line.charAt(to - 1));
+
+        if (isLetter(first)) {
+            int slot = findKeyword(line, from, to);
+            if (slot >= 0) {
+                return keywordTypes[slot];
+            }
+            if (length > 8) {
+                return LexemeType.ERROR_LEXEME;
+            }
+            for (int i = from + 1; i < to; i++) {
+                char c = line.charAt(i);
+                if (!isLetter(c) && !isDigit(c)) {
+                    return LexemeType.ERROR_LEXEME;
+                }
+            }
+            return LexemeType.USER_IDENTIFIER;
+        }
+
+        if (isDigit(first)) {
+            // [01]+b | \d+d? | \d+[A-F0-9]*h
+            boolean binary = true;
+            int i = from;
+            while (i < to && isDigit(line.charAt(i))) {
+                char c = line.charAt(i++);
+                binary &= c == '0' || c == '1';
+            }
+            if (i == to || (i == to - 1 && last == 'd')) {
+                return LexemeType.CONST_DEC;
+            }
+            if (i == to - 1 && last == 'b') {
+                return binary ? LexemeType.CONST_BIN : LexemeType.ERROR_LEXEME;
+            }
+            if (last != 'h') {
+                return LexemeType.ERROR_LEXEME;
+            }
+            while (i < to - 1 && isHexDigit(line.charAt(i))) {
+                i++;
+            }
+            return i == to - 1 ? LexemeType.CONST_HEX : LexemeType.ERROR_LEXEME;
+        }
+
+        if (first == '\'') {
+            // '[^']*'
+            if (length < 2 || line.charAt(to - 1) != '\'') {
+                return LexemeType.ERROR_LEXEME;
+            }
+            return line.indexOf('\'', from + 1) == to - 1 ? LexemeType.CONST_STRING : LexemeType.ERROR_LEXEME;
+        }
+
+        if (length == 1 && first == '.') {
+            return LexemeType.ONE_SYMBOL;
+        }
+
+        return LexemeType.ERROR_LEXEME;
+    }
+
+    /**
+     * Возвращает информацию про все лексемы в строке.
+     *
+     * Строка разбирается за один проход: комментарий отбрасывается, лексемы
+     * разделяются пробельными символами, а ",", ":", "[" и "]" всегда
+     * выделяются в отдельную лексему. Строка, начинающаяся с разделителя,
+     * дает пустую недопустимую лексему в начале (так же как split).
      *
      * @param line Строчка для анализа
      * @return Массив лексем
      */
     static LexemeInfo[] getLexemeInfo(String line) {
-        ArrayList<LexemeInfo> infoList = new ArrayList();
-
-        final Pattern[] patterns = {
-            /*0*/Pattern.compile("^(cli|inc|dec|add|cmp|xor|mov|or|jb|jmp)$", Pattern.CASE_INSENSITIVE),
-            /*1*/ Pattern.compile("^(segment|ends|end|assume)$", Pattern.CASE_INSENSITIVE),
-            /*2*/ Pattern.compile("^(al|cl|dl|bl|ah|ch|dh|bh|ax|cx|dx|bx|sp|bp|si|di|eax|ecx|edx|ebx|esp|ebp|esi|edi)$", Pattern.CASE_INSENSITIVE),
-            /*3*/ Pattern.compile("^(es|cs|ss|ds|fs|gs)$", Pattern.CASE_INSENSITIVE),
-            /*4*/ Pattern.compile("^(db|dw|dd)$", Pattern.CASE_INSENSITIVE),
-            /*5*/ Pattern.compile("^([01]+b)$", Pattern.CASE_INSENSITIVE),
-            /*6*/ Pattern.compile("^(\\d+d?)$", Pattern.CASE_INSENSITIVE),
-            /*7*/ Pattern.compile("^(\\d+[A-F0-9]*h)$", Pattern.CASE_INSENSITIVE),
-            /*8*/ Pattern.compile("^('[^']*')$", Pattern.CASE_INSENSITIVE),
-            /*9*/ Pattern.compile("^[.,:\\[\\]]$"),
-            /*10*/ Pattern.compile("^([a-z][a-z0-9]{0,7})$", Pattern.CASE_INSENSITIVE),
-            /*11*/ Pattern.compile(".*")
-        };
+        ArrayList<LexemeInfo> infoList = new ArrayList<>(8);
 
-        line = line.trim();
-        line = line.replaceAll(";.*", "");
-        line = line.replaceAll("([,:\\[\\]])", " $1 ");
+        int end = line.length();
+        int pos = 0;
+        while (pos < end && line.charAt(pos) <= ' ') {
+            pos++;
+        }
+        while (end > pos && line.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        boolean isEmpty = true;         // после удаления комментария ничего нет
+        boolean leadingSpace = false;   // строка начинается с разделителя
+        int tokenCount = 0;
+        int tokenStart = -1;
+        int tokenEnd = -1;
+        boolean isBroken = false;       // лексема содержит символ конца строки
+        StringBuilder joined = null;    // начало лексемы, прерванной комментарием
+
+        while (pos <= end) {
+            char c = pos < end ? line.charAt(pos) : ' ';
 
-        String[] lexemes = line.split("[\\s\\t]+");
+            if (c == ';' && pos < end) {
+                pos++;
+                while (pos < end && !isLineTerminator(line.charAt(pos))) {
+                    pos++;
+                }
+                if (tokenStart >= 0 && pos < end && !isSpace(line.charAt(pos))) {
+                    // комментарий внутри лексемы - она продолжается после него
+                    if (joined == null) {
+                        joined = new StringBuilder();
+                    }
+                    joined.append(line, tokenStart, tokenEnd);
+                    tokenStart = pos;
+                }
+                continue;
+            }
 
-        for (String lexeme : lexemes) {
-            for (LexemeType lexemeType : LexemeType.values()) {
-                if (patterns[lexemeType.ordinal()].matcher(lexeme).matches()) {
-                    infoList.add(new LexemeInfo(lexeme, lexemeType));
-                    break;
+            boolean isSeparator = isSpace(c) || isOneSymbol(c);
+            if (pos < end) {
+                if (isEmpty && isSeparator) {
+                    leadingSpace = true;
                 }
+                isEmpty = false;
             }
+
+            if (isSeparator) {
+                if (tokenStart >= 0) {
+                    tokenCount++;
+                    String value;
+                    LexemeType type;
+                    if (joined == null) {
+                        value = line.substring(tokenStart, tokenEnd);
+                        type = getLexemeType(line, tokenStart, tokenEnd);
+                    } else {
+                        value = joined.append(line, tokenStart, tokenEnd).toString();
+                        type = getLexemeType(value, 0, value.length());
+                        joined = null;
+                    }
+                    // недопустимая лексема с символом конца строки не попадает в результат
+                    if (!isBroken || type != LexemeType.ERROR_LEXEME) {
+                        infoList.add(new LexemeInfo(value, type));
+                    }
+                    tokenStart = -1;
+                    isBroken = false;
+                }
+                if (isOneSymbol(c) && pos < end) {
+                    tokenCount++;
+                    infoList.add(new LexemeInfo(String.valueOf(c), LexemeType.ONE_SYMBOL));
+                }
+            } else {
+                if (tokenStart < 0) {
+                    tokenStart = pos;
+                }
+                tokenEnd = pos + 1;
+                isBroken |= isLineTerminator(c);
+            }
+            pos++;
+        }
+
+        if (tokenCount == 0) {
+            return isEmpty ? new LexemeInfo[]{new LexemeInfo("", LexemeType.ERROR_LEXEME)} : new LexemeInfo[0];
+        }
+        if (leadingSpace) {
+            infoList.add(0, new LexemeInfo("", LexemeType.ERROR_LEXEME));
         }
 
         return infoList.toArray(new LexemeInfo[infoList.size()]);
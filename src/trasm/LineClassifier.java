@@ -0,0 +1,453 @@
+package trasm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import trasm.LineInfo.LineType;
+
+/**
+ * Классификатор строк. Строка представляется последовательностью видов
+ * лексем (небольших целых чисел), тип строки и форма операндов определяются
+ * одним проходом по префиксному дереву, построенному из допустимых форм.
+ *
+ * Все команды имеют вид INSTR, поэтому формы команд не зависят от мнемоники:
+ * это сочетания операндов (reg, rS, CONST, ID, переменная с адресацией или
+ * заменой сегмента). Допустима ли форма для данной мнемоники, решает таблица
+ * команд (InstructionTable).
+ */
+class LineClassifier {
+
+    //<editor-fold defaultstate="collapsed" desc="token kinds">
+    /*
+     * Виды лексем. Ключевые слова имеют вид равный своему номеру
+     * (LexicalAnalyzer.getKeywordId), остальные виды идут после них.
+     */
+    static final int CONST = LexicalAnalyzer.KEYWORD_COUNT;
+    static final int C_STR = CONST + 1;
+    static final int DOT = CONST + 2;
+    static final int COMMA = CONST + 3;
+    static final int COLON = CONST + 4;
+    static final int OPEN_BRACKET = CONST + 5;
+    static final int CLOSE_BRACKET = CONST + 6;
+    static final int ID = CONST + 7;
+    static final int ERROR = CONST + 8;
+    /**
+     * Пустая лексема в начале строки
+     */
+    static final int EMPTY = CONST + 9;
+    /**
+     * Адресация [r16a] или [r32] (только после нормализации)
+     */
+    static final int ADDR = CONST + 10;
+    /**
+     * Любой регистр общего назначения (только после нормализации)
+     */
+    static final int REG = CONST + 11;
+    /**
+     * Любой сегментный регистр (только после нормализации)
+     */
+    static final int SREG = CONST + 12;
+    /**
+     * Любая команда (только после нормализации)
+     */
+    static final int INSTR = CONST + 13;
+    /**
+     * Количество видов лексем
+     */
+    static final int KIND_COUNT = CONST + 14;
+
+    private static final int ASSUME = LexicalAnalyzer.getKeywordId("assume");
+    private static final int DB = LexicalAnalyzer.getKeywordId("db");
+    private static final int MACRO = LexicalAnalyzer.getKeywordId("macro");
+    private static final int LOCK = LexicalAnalyzer.getKeywordId("lock");
+//</editor-fold>
+
+    //<editor-fold defaultstate="collapsed" desc="forms">
+    /**
+     * Допустимые формы строк
+     */
+    private static final String[] FORMS = {
+        /*0*/"ID SEGMENT",
+        /*1*/ "ID ENDS",
+        /*2*/ "ASSUME rS : ID",
+        /*3*/ "END ID",
+        /*4*/ "END",
+        /*5*/ "ID :",
+        /*6*/ "ID DB CONST",
+        /*7*/ "ID DW CONST",
+        /*8*/ "ID DD CONST",
+        /*9*/ "ID DB C_STR",
+        /*10*/ "",
+        /*11*/ "ID MACRO",
+        /*12*/ "ID MACRO ID",
+        /*13*/ "ENDM",
+        /*14*/ "INCLUDE CONST",
+        /*15*/ "INCLUDE ID",
+        /*16*/ "INCLUDE ERROR" // имя файла с точкой - недопустимая лексема
+    };
+    /**
+     * Типы строк для каждой формы
+     */
+    private static final LineType[] FORM_TYPES = {
+        /*0*/LineType.BEGIN_SEGMENT,
+        /*1*/ LineType.END_SEGMENT,
+        /*2*/ LineType.ASSUME,
+        /*3*/ LineType.END,
+        /*4*/ LineType.END,
+        /*5*/ LineType.LABEL,
+        /*6*/ LineType.DATA_DECLARATION,
+        /*7*/ LineType.DATA_DECLARATION,
+        /*8*/ LineType.DATA_DECLARATION,
+        /*9*/ LineType.DATA_DECLARATION,
+        /*10*/ LineType.EMPTY,
+        /*11*/ LineType.MACRO,
+        /*12*/ LineType.MACRO,
+        /*13*/ LineType.MACRO,
+        /*14*/ LineType.INCLUDE,
+        /*15*/ LineType.INCLUDE,
+        /*16*/ LineType.INCLUDE
+    };
+    /**
+     * Операнды команд и их классы (InstructionTable)
+     */
+    private static final String[] OPERANDS = {"reg", "rS", "CONST", "ID", "ID ADDR", "rS : ID", "rS : ID ADDR"};
+    private static final int[] OPERAND_CLASSES = {
+        InstructionTable.R, InstructionTable.S, InstructionTable.I, InstructionTable.L,
+        InstructionTable.X, InstructionTable.X, InstructionTable.X
+    };
+    /**
+     * Третий операнд команды (IMUL, SHLD, SHRD) и его классы
+     */
+    private static final String[] THIRD_OPERANDS = {"reg", "CONST"};
+    private static final int[] THIRD_CLASSES = {InstructionTable.R, InstructionTable.I};
+//</editor-fold>
+
+    /**
+     * Вид после нормализации для каждого вида лексемы (регистры сводятся к
+     * REG и SREG)
+     */
+    private static final int[] kindClass = new int[KIND_COUNT];
+    /**
+     * Может ли регистр использоваться для адресации ([r16a] или [r32])
+     */
+    private static final boolean[] isAddrReg = new boolean[KIND_COUNT];
+    /**
+     * Переходы префиксного дерева: node -> вид лексемы -> node (0 - нет
+     * перехода, корень не может быть потомком)
+     */
+    private static final int[][] next;
+    /**
+     * Номер формы для каждого узла дерева (-1 - не конечный узел)
+     */
+    private static final int[] nodeForm;
+    /**
+     * Формы операндов команд (InstructionTable) для номеров форм от
+     * FORMS.length
+     */
+    private static final int[] formShapes;
+    /**
+     * Узел после "ID :" - метка перед командой
+     */
+    private static final int labelNode;
+
+    static {
+        for (int kind = 0; kind < KIND_COUNT; kind++) {
+            kindClass[kind] = kind;
+        }
+        for (int id = 0; id < LexicalAnalyzer.KEYWORD_COUNT; id++) {
+            String reg = LexicalAnalyzer.getKeyword(id).toUpperCase();
+            switch (LexicalAnalyzer.getKeywordType(id)) {
+                case REGISTER_GENERAL:
+                    kindClass[id] = REG;
+                    isAddrReg[id] = !reg.contains("L") && !reg.contains("H")
+                            && (reg.contains("E") || reg.contains("B") || reg.contains("I"));
+                    break;
+                case REGISTER_SEGMENT:
+                    kindClass[id] = SREG;
+                    break;
+                case INSTRUCTION:
+                    kindClass[id] = INSTR;
+                    break;
+            }
+        }
+
+        // формы команд: без операндов, префикс с командой, от одного до трёх операндов
+        ArrayList<String> allForms = new ArrayList<>(Arrays.asList(FORMS));
+        ArrayList<Integer> shapes = new ArrayList<>();
+        allForms.add("INSTR");
+        shapes.add(InstructionTable.getShape(InstructionTable.NONE, InstructionTable.NONE));
+        allForms.add("INSTR INSTR");
+        shapes.add(InstructionTable.PREFIXED);
+        for (int i = 0; i < OPERANDS.length; i++) {
+            allForms.add("INSTR " + OPERANDS[i]);
+            shapes.add(InstructionTable.getShape(OPERAND_CLASSES[i], InstructionTable.NONE));
+            for (int j = 0; j < OPERANDS.length; j++) {
+                allForms.add("INSTR " + OPERANDS[i] + " , " + OPERANDS[j]);
+                shapes.add(InstructionTable.getShape(OPERAND_CLASSES[i], OPERAND_CLASSES[j]));
+                for (int k = 0; k < THIRD_OPERANDS.length; k++) {
+                    allForms.add("INSTR " + OPERANDS[i] + " , " + OPERANDS[j] + " , " + THIRD_OPERANDS[k]);
+                    shapes.add(InstructionTable.getShape(OPERAND_CLASSES[i], OPERAND_CLASSES[j], THIRD_CLASSES[k]));
+                }
+            }
+        }
+        formShapes = new int[shapes.size()];
+        for (int i = 0; i < formShapes.length; i++) {
+            formShapes[i] = shapes.get(i);
+        }
+
+        ArrayList<int[]> nodes = new ArrayList<>();
+        ArrayList<Integer> forms = new ArrayList<>();
+        nodes.add(new int[KIND_COUNT]);
+        forms.add(-1);
+        for (int form = 0; form < allForms.size(); form++) {
+            int node = 0;
+            for (int kind : parseForm(allForms.get(form))) {
+                if (nodes.get(node)[kind] == 0) {
+                    nodes.get(node)[kind] = nodes.size();
+                    nodes.add(new int[KIND_COUNT]);
+                    forms.add(-1);
+                }
+                node = nodes.get(node)[kind];
+            }
+            forms.set(node, form);
+        }
+
+        next = nodes.toArray(new int[nodes.size()][]);
+        nodeForm = new int[forms.size()];
+        for (int i = 0; i < nodeForm.length; i++) {
+            nodeForm[i] = forms.get(i);
+        }
+        labelNode = next[next[0][ID]][COLON];
+    }
+
+    /**
+     * Преобразовывает текстовую форму в последовательность видов лексем
+     *
+     * @param form Форма
+     * @return Виды лексем
+     */
+    private static int[] parseForm(String form) {
+        if (form.isEmpty()) {
+            return new int[0];
+        }
+        String[] words = form.split(" ");
+        int[] kinds = new int[words.length];
+        for (int i = 0; i < words.length; i++) {
+            switch (words[i]) {
+                case "ID":
+                    kinds[i] = ID;
+                    break;
+                case "CONST":
+                    kinds[i] = CONST;
+                    break;
+                case "C_STR":
+                    kinds[i] = C_STR;
+                    break;
+                case "ERROR":
+                    kinds[i] = ERROR;
+                    break;
+                case "ADDR":
+                    kinds[i] = ADDR;
+                    break;
+                case "reg":
+                    kinds[i] = REG;
+                    break;
+                case "rS":
+                    kinds[i] = SREG;
+                    break;
+                case "INSTR":
+                    kinds[i] = INSTR;
+                    break;
+                case ",":
+                    kinds[i] = COMMA;
+                    break;
+                case ":":
+                    kinds[i] = COLON;
+                    break;
+                default:
+                    kinds[i] = LexicalAnalyzer.getKeywordId(words[i]);
+                    if (kinds[i] < 0) {
+                        throw new AssertionError(words[i]);
+                    }
+            }
+        }
+        return kinds;
+    }
+
+    /**
+     * Возвращает вид лексемы
+     *
+     * @param lexeme Лексема
+     * @return Вид лексемы
+     */
+    static int getKind(LexemeInfo lexeme) {
+        switch (lexeme.type) {
+            case INSTRUCTION:
+            case DIRECTIVE:
+            case REGISTER_GENERAL:
+            case REGISTER_SEGMENT:
+            case DATA_TYPE:
+                return LexicalAnalyzer.getKeywordId(lexeme.value);
+            case CONST_BIN:
+            case CONST_DEC:
+            case CONST_HEX:
+                return CONST;
+            case CONST_STRING:
+                return C_STR;
+            case ONE_SYMBOL:
+                switch (lexeme.value.charAt(0)) {
+                    case ',':
+                        return COMMA;
+                    case ':':
+                        return COLON;
+                    case '[':
+                        return OPEN_BRACKET;
+                    case ']':
+                        return CLOSE_BRACKET;
+                    default:
+                        return DOT;
+                }
+            case USER_IDENTIFIER:
+                return ID;
+            case ERROR_LEXEME:
+                return lexeme.value.isEmpty() ? EMPTY : ERROR;
+            default:
+                throw new AssertionError(lexeme.type.name());
+        }
+    }
+
+    /**
+     * Возвращает виды всех лексем строки
+     *
+     * @param lexemes Массив лексем
+     * @return Виды лексем
+     */
+    static int[] getKinds(LexemeInfo[] lexemes) {
+        int[] kinds = new int[lexemes.length];
+        for (int i = 0; i < lexemes.length; i++) {
+            kinds[i] = getKind(lexemes[i]);
+        }
+        return kinds;
+    }
+
+    /**
+     * Нормализует виды лексем: регистры сводятся к REG и SREG, "[r16a]" и
+     * "[r32]" - к ADDR, строка вне "DB 'str'" - к CONST, в строке с ASSUME
+     * убираются дополнительные ", rS : ID", а в строке с MACRO -
+     * дополнительные ", ID" (параметры).
+     *
+     * @param kinds Виды лексем
+     * @return Нормализованные виды лексем
+     */
+    static int[] normalize(int[] kinds) {
+        int length = kinds.length;
+        if (length == 1 && kinds[0] == EMPTY) {
+            return new int[0];
+        }
+
+        boolean isAssume = false;
+        boolean isMacro = false;
+        for (int kind : kinds) {
+            isAssume |= kind == ASSUME;
+            isMacro |= kind == MACRO;
+        }
+
+        int[] out = new int[length];
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            int kind = kinds[i];
+            if (isAssume && kind == COMMA && i + 3 < length && kindClass[kinds[i + 1]] == SREG
+                    && kinds[i + 2] == COLON && kinds[i + 3] == ID) {
+                i += 3;
+                continue;
+            }
+            if (isMacro && kind == COMMA && i + 1 < length && kinds[i + 1] == ID) {
+                i += 1;
+                continue;
+            }
+            if (kind == OPEN_BRACKET && i + 2 < length && isAddrReg[kinds[i + 1]] && kinds[i + 2] == CLOSE_BRACKET) {
+                out[count++] = ADDR;
+                i += 2;
+                continue;
+            }
+            if (kind == C_STR && (i == 0 || kinds[i - 1] != DB)) {
+                kind = CONST;
+            }
+            out[count++] = kindClass[kind];
+        }
+
+        return count == length ? out : Arrays.copyOf(out, count);
+    }
+
+    /**
+     * Определяет форму строки. Метка "ID :" перед командой пропускается.
+     *
+     * @param kinds Нормализованные виды лексем
+     * @return Номер формы или -1, если строка не соответствует ни одной форме
+     */
+    static int classify(int[] kinds) {
+        int node = 0;
+        for (int i = 0; i < kinds.length; i++) {
+            if (i == 2 && node == labelNode) {
+                node = 0;
+            }
+            node = next[node][kinds[i]];
+            if (node == 0) {
+                return -1;
+            }
+        }
+        return nodeForm[node];
+    }
+
+    /**
+     * Возвращает тип строки для формы
+     *
+     * @param form Номер формы
+     * @param body Лексемы после меток (для команды - мнемоника и операнды)
+     * @return Тип строки (ERROR_LINE, если у команды нет такой формы
+     * операндов)
+     */
+    static LineType getLineType(int form, LexemeInfo[] body) {
+        if (form < FORMS.length) {
+            return form < 0 ? LineType.ERROR_LINE : FORM_TYPES[form];
+        }
+        InstructionTable.Encoding encoding = InstructionTable.get(body[0].value, getShape(form));
+        if (encoding == null) {
+            return LineType.ERROR_LINE;
+        }
+        return encoding.isJump() ? LineType.JUMP : LineType.INSTRUCTIONS;
+    }
+
+    /**
+     * Возвращает форму операндов команды
+     *
+     * @param form Номер формы
+     * @return Форма операндов (InstructionTable) или -1, если это не форма
+     * команды
+     */
+    static int getShape(int form) {
+        return form < FORMS.length ? -1 : formShapes[form - FORMS.length];
+    }
+
+    /**
+     * Начинается ли строка (с заданной лексемы) с метки, после которой есть
+     * что-то ещё
+     *
+     * @param kinds Виды лексем
+     * @param from Номер первой лексемы
+     * @return Ответ
+     */
+    static boolean hasLabelPrefix(int[] kinds, int from) {
+        return kinds.length - from > 2 && kinds[from] == ID && kinds[from + 1] == COLON;
+    }
+
+    /**
+     * Стоит ли (с заданной лексемы) префикс LOCK перед командой
+     *
+     * @param kinds Виды лексем
+     * @param from Номер первой лексемы
+     * @return Ответ
+     */
+    static boolean hasLockPrefix(int[] kinds, int from) {
+        return kinds.length - from > 1 && kinds[from] == LOCK;
+    }
+}
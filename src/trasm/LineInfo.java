@@ -24,6 +24,8 @@ class LineInfo {
         INSTRUCTIONS,
         JUMP,
         END,
+        MACRO,
+        INCLUDE,
         ERROR_LINE,
         EMPTY
     }
@@ -47,8 +49,16 @@ class LineInfo {
             return num;
         }
 
-        public static String getModRM(int base, Register index, boolean isAddress) {
-            int addr = (isAddress ? 0x80 : 0xC0) + 0x08 * base;
+        /**
+         * Записывает байт ModR/M (и SIB для ESP) операнда в памяти с
+         * адресацией [index] и смещением disp16 или disp32
+         *
+         * @param code Куда записывать код
+         * @param regField Поле reg байта ModR/M
+         * @param index Регистр адресации
+         */
+        public static void putModRM(CodeBuffer code, int regField, Register index) {
+            int addr = 0x80 + 0x08 * regField;
 
             if (index.name().contains("E")) {
                 addr += index.getNum();
@@ -68,14 +78,12 @@ class LineInfo {
                     addr += 7;
                     break;
                 case ESP:
-                    return IOLib.toHex(addr, 2) + " 24 ";
+                    code.putByte(addr);
+                    code.putByte(0x24);
+                    return;
             }
 
-            return IOLib.toHex(addr, 2) + " ";
-        }
-
-        public static String getModRM(Register base, Register index, boolean isAddress) {
-            return Register.getModRM(base.getNum(), index, isAddress);
+            code.putByte(addr);
         }
 
         private Register(int num, int size) {
@@ -85,12 +93,159 @@ class LineInfo {
 
     }
 
+    /**
+     * Операнд команды
+     */
+    private static class Operand {
+
+        /**
+         * Класс операнда (InstructionTable)
+         */
+        final int kind;
+        /**
+         * Регистр (R) или регистр адресации (X, null - без адресации)
+         */
+        final Register reg;
+        /**
+         * Сегментный регистр (S) или замена сегмента (X, null - по Assume-у)
+         */
+        final SegRegister sreg;
+        /**
+         * Константа (I, null - строковая константа) или имя идентификатора
+         * (L, X)
+         */
+        final String value;
+        /**
+         * Идентификатор (L, X; после resolveOperand)
+         */
+        IdInfo idInfo;
+
+        private Operand(int kind, Register reg, SegRegister sreg, String value) {
+            this.kind = kind;
+            this.reg = reg;
+            this.sreg = sreg;
+            this.value = value;
+        }
+
+        /**
+         * Разбирает операнд заданного класса (форма строки уже проверена
+         * классификатором)
+         *
+         * @param kind Класс операнда
+         * @param lexemes Лексемы строчки
+         * @param from Первая лексема операнда
+         * @param to Конец операнда (не включительно)
+         * @return Операнд или null, если kind - NONE
+         */
+        static Operand parse(int kind, LexemeInfo[] lexemes, int from, int to) {
+            switch (kind) {
+                case InstructionTable.NONE:
+                    return null;
+                case InstructionTable.R:
+                    return new Operand(kind, Register.valueOf(lexemes[from].value.toUpperCase()), null, null);
+                case InstructionTable.S:
+                    return new Operand(kind, null, SegRegister.valueOf(lexemes[from].value.toUpperCase()), null);
+                case InstructionTable.I:
+                    return new Operand(kind, null, null,
+                            lexemes[from].type == LexemeType.CONST_STRING ? null : lexemes[from].value);
+                case InstructionTable.L:
+                    return new Operand(kind, null, null, lexemes[from].value);
+                default: // X: [S_REG :] ID [[ REG ]]
+                    SegRegister sreg = null;
+                    if (lexemes[from].type == LexemeType.REGISTER_SEGMENT) {
+                        sreg = SegRegister.valueOf(lexemes[from].value.toUpperCase());
+                        from += 2;
+                    }
+                    Register index = to - from > 1 ? Register.valueOf(lexemes[from + 2].value.toUpperCase()) : null;
+                    return new Operand(kind, index, sreg, lexemes[from].value);
+            }
+        }
+
+        /**
+         * Размер операнда r/m в байтах (0 - метка)
+         *
+         * @return Размер
+         */
+        int getSize() {
+            return kind == InstructionTable.R ? reg.getSize() : idInfo.getType().getSize();
+        }
+
+        /**
+         * Размер константы
+         *
+         * @return Размер в байтах или -1, если константа слишком большая
+         * или строковая
+         */
+        int getImmSize() {
+            return value == null ? -1 : LexicalAnalyzer.getConstSize(value);
+        }
+
+        long getImm() {
+            return LexicalAnalyzer.getConstValue(value);
+        }
+
+        /**
+         * Операнд в памяти (переменная с адресацией или без)
+         *
+         * @return Ответ
+         */
+        boolean isMemory() {
+            return kind == InstructionTable.L || kind == InstructionTable.X;
+        }
+    }
+
+    /**
+     * Запись о ссылке на идентификатор, байты которой дописываются во втором
+     * проходе: место (смещение от начала строчки), вид, имя цели и ширина
+     * поля.
+     */
+    static class Fixup {
+
+        /**
+         * Виды ссылок
+         */
+        static enum Kind {
+
+            /**
+             * Смещение идентификатора в поле адреса команды
+             */
+            ABSOLUTE,
+            /**
+             * Переход на метку: короткий rel8 (ширина 1) или ближний rel16
+             * (ширина 2), коды операций - из таблицы команд
+             */
+            JUMP,
+            /**
+             * Ссылка вперёд на данные: кодировка команды зависит от типа и
+             * сегмента идентификатора, поэтому команда (ширина - её размер)
+             * записывается заново
+             */
+            OPERAND
+        }
+
+        final Kind kind;
+        final String target;
+        final int offset;
+        int width;
+
+        Fixup(Kind kind, String target, int offset, int width) {
+            this.kind = kind;
+            this.target = target;
+            this.offset = offset;
+            this.width = width;
+        }
+    }
+
+    /**
+     * Результат разбора строки
+     */
+    final ParsedLine parsed;
     /**
      * Исходное значение строки
      */
     final String value;
     /**
-     * Размер строки в байтах (кода операции)
+     * Размер строки в байтах в первом проходе
      */
     final int sizeInBytes;
     /**
@@ -98,265 +253,269 @@ class LineInfo {
      */
     final LineType type;
     /**
-     * Код операции. Машинная трансляция строки
+     * Запись таблицы команд (null - строчка не команда)
      */
-    final String opCode;
+    private final InstructionTable.Encoding encoding;
     /**
-     * Содержит ли строчка ошибку?
+     * Трансляция, которой принадлежит строчка
      */
-    private boolean isCorrect;
+    private final Translation translation;
+    /**
+     * Буфер сегмента с машинной трансляцией строки
+     */
+    private final CodeBuffer code;
+    /**
+     * Количество элементов переменного размера перед строчкой (для сдвига
+     * адреса после выравнивания)
+     */
+    private final int itemsBefore;
     /**
-     * Шаблон строчки (для внутринних нужд)
+     * Размер кода строки в байтах (во втором проходе может отличаться от
+     * sizeInBytes)
      */
-    private String template;
+    private int codeLength;
+    /**
+     * Номер элемента переменного размера в буфере сегмента (-1 - строчка
+     * имеет постоянный размер)
+     */
+    private int itemIndex = -1;
+    /**
+     * Ссылка, дописываемая во втором проходе
+     */
+    private Fixup fixup = null;
+    /**
+     * Состояние Assume-а для ссылки вперёд
+     */
+    private SegInfo[] assumeState = null;
+    /**
+     * Содержит ли строчка ошибку?
+     */
+    private boolean isCorrect;
     /**
      * Смещение строчки (для внутринних нужд)
      */
     private int address;
 
-    //<editor-fold defaultstate="collapsed" desc="validTemplates">
-    /**
-     * Допустимые шаблоны строк
-     */
-    private static final String[] validTemplates = {
-        /*0*/"ID SEGMENT",
-        /*1*/ "ID ENDS",
-        /*2*/ "ASSUME rS : ID",
-        /*3*/ "END ID",
-        /*4*/ "END",
-        /*5*/ "ID :",
-        /*6*/ "ID DB CONST",
-        /*7*/ "ID DW CONST",
-        /*8*/ "ID DD CONST",
-        /*9*/ "ID DB C_STR",
-        /*10*/ "CLI",
-        /*11*/ "INC ID [ ADDR ]",
-        /*12*/ "INC rS : ID [ ADDR ]",            
-        /*13*/ "DEC reg",
-        /*14*/ "ADD ID [ ADDR ] , CONST",
-        /*15*/ "ADD rS : ID [ ADDR ] , CONST",
-        /*16*/ "CMP reg , ID [ ADDR ]",
-        /*17*/ "CMP reg , rS : ID [ ADDR ]",
-        /*18*/ "XOR ID [ ADDR ] , reg",
-        /*19*/ "XOR rS : ID [ ADDR ] , reg",
-        /*20*/ "MOV reg , CONST",
-        /*21*/ "OR reg , reg",
-        /*22*/ "JB ID",
-        /*23*/ "JMP ID",
-        /*24*/ ""
-    };
-//</editor-fold>
-
     boolean isCorrect() {
         return isCorrect;
     }
 
     /**
-     * Преобразование строчки в удобный для печати вид
+     * Возвращает смещение строчки с учетом изменения размеров элементов
      *
-     * @return Строка для печати
+     * @return Смещение
      */
-    @Override
-    public String toString() {
-        return String.format("%1$-20s %2$s", opCode, value);
+    int getAddress() {
+        return address + code.getShift(itemsBefore);
     }
 
     /**
-     * Конструктор для второго прохода. Специально для команда JMP и JB.
+     * Возвращает количество элементов переменного размера перед строчкой
      *
-     * @param info Результат превого прохода
+     * @return Количество элементов
      */
-    public LineInfo(LineInfo info) {
-        value = info.value;
-        sizeInBytes = info.sizeInBytes;
-        type = info.type;
-        address = info.address;
-        isCorrect = info.isCorrect;
-        template = info.template;
-        opCode = getOpCode(value);
+    int getItemsBefore() {
+        return itemsBefore;
     }
 
     /**
-     * Конструктор для первого прохода.
+     * Является ли строчка элементом переменного размера (переход или ссылка
+     * вперёд)
      *
-     * @param line Исходная строчка
+     * @return Ответ
+     */
+    boolean isVariableSize() {
+        return itemIndex >= 0;
+    }
+
+    /**
+     * Есть ли в строчке ссылка для второго прохода
+     *
+     * @return Ответ
      */
-    public LineInfo(String line) {
-        template = getLineTemplate(line);
-        template = template.replaceAll("(\\[ r16a \\])|(\\[ r32 \\])", "[ ADDR ]").replaceAll("r8|r16a|r16|r32", "reg");
-        if (template.contains("DB C_STR") == false) {
-            template = template.replace("C_STR", "CONST");
+    boolean hasFixup() {
+        return fixup != null;
+    }
+
+    /**
+     * Ссылка вперёд на данные: после первого прохода тип и сегмент цели
+     * известны, место под команду меняется на её настоящий размер (0 - цель
+     * не объявлена или не подходит).
+     */
+    void resolveForward() {
+        if (fixup == null || fixup.kind != Fixup.Kind.OPERAND) {
+            return;
         }
-        if (template.contains("ASSUME")) {
-            template = template.replaceAll(" , rS : ID", "");
+        int size = 0;
+        if (translation.idTable.get(fixup.target) != null) {
+            CodeBuffer scratch = new CodeBuffer();
+            getInstructionCode(parsed.body, scratch);
+            size = isCorrect ? scratch.size() : 0;
         }
+        code.growItem(itemIndex, size - fixup.width);
+        fixup.width = size;
+    }
 
-        this.value = line;
-        this.address = SegTable.getInstance().getCurrentAddress();
-        this.type = getTemplateType(template);
-        this.isCorrect = type != LineType.ERROR_LINE;
-        this.opCode = getOpCode(line);
-        this.sizeInBytes = opCode.replaceAll("[|\\s]", "").length() / 2;
+    /**
+     * Шаг выравнивания переходов: короткий переход, цель которого вышла за
+     * пределы rel8, становится ближним (если у него есть ближняя форма).
+     *
+     * @return Был ли переход удлинен
+     */
+    boolean relax() {
+        if (fixup == null || fixup.kind != Fixup.Kind.JUMP || fixup.width == 2 || encoding.wordOpcode < 0) {
+            return false;
+        }
+        IdInfo idInfo = (IdInfo) (translation.idTable.get(fixup.target));
+        if (idInfo == null) {
+            return false;
+        }
+        int jumpWidth = idInfo.getAddress() - (getAddress() + 2);
+        if (jumpWidth >= -128 && jumpWidth <= 127) {
+            return false;
+        }
+        fixup.width = 2;
+        // rel8 -> rel16 и код операции ближнего перехода вместо короткого
+        code.growItem(itemIndex, InstructionTable.getOpcodeLength(encoding.wordOpcode));
+        return true;
     }
 
     /**
-     * Преобразование лексемы к шаблону
+     * Второй проход: дописывает байты по записи о ссылке. Вызывается после
+     * выравнивания, код записывается по окончательному адресу.
      *
-     * @param lexeme Лексема
-     * @return Шаблон
-     */
-    private String getLexemeTemplate(LexemeInfo lexeme) {
-        String outStr = "So empty...";
-        switch (lexeme.type) {
-            case INSTRUCTION:
-                outStr = lexeme.value.toUpperCase();
-                break;
-            case DIRECTIVE:
-                outStr = lexeme.value.toUpperCase();
-                break;
-            case REGISTER_GENERAL:
-                String reg = lexeme.value.toUpperCase();
-                if (reg.contains("L") || reg.contains("H")) {
-                    outStr = "r8";
-                } else if (reg.contains("E")) {
-                    outStr = "r32";
-                } else if (reg.contains("B") || reg.contains("I")) {
-                    outStr = "r16a";
-                } else {
-                    outStr = "r16";
-                }
-                break;
-            case REGISTER_SEGMENT:
-                outStr = "rS";
-                break;
-            case DATA_TYPE:
-                outStr = lexeme.value.toUpperCase();
-                break;
-            case CONST_BIN:
-            case CONST_DEC:
-            case CONST_HEX:
-                outStr = "CONST";
-                break;
-            case CONST_STRING:
-                outStr = "C_STR";
-                break;
-            case ONE_SYMBOL:
-                outStr = lexeme.value;
-                break;
-            case USER_IDENTIFIER:
-                outStr = "ID";
+     * @param out Буфер сегмента строчки или его курсор
+     * @return Корректна ли строчка (цель объявлена и подходит)
+     */
+    boolean applyFixup(CodeBuffer out) {
+        IdInfo idInfo = (IdInfo) (translation.idTable.get(fixup.target));
+        if (idInfo == null || !isCorrect) {
+            isCorrect = false;
+            codeLength = 0;
+            return false;
+        }
+        out.seek(getAddress() + fixup.offset);
+        switch (fixup.kind) {
+            case ABSOLUTE:
+                out.putField(idInfo.getAddress(), fixup.width);
                 break;
-            case ERROR_LEXEME:
-                if (lexeme.value.isEmpty()) {
-                    return "";
+            case JUMP:
+                if (!putJump(out, idInfo)) {
+                    // цель перехода без ближней формы вне пределов rel8
+                    isCorrect = false;
+                    codeLength = 0;
+                    return false;
                 }
-                outStr = "<Error lexeme, sad... So sad... =( " + lexeme.value + ">";
+                codeLength = out.getPosition() - getAddress();
                 break;
-            default:
-                throw new AssertionError(lexeme.type.name());
+            default: // OPERAND
+                getInstructionCode(parsed.body, out);
+                codeLength = isCorrect ? out.getPosition() - getAddress() : 0;
         }
+        return isCorrect;
+    }
 
-        return outStr;
+    /**
+     * Преобразование строчки в удобный для печати вид
+     *
+     * @return Строка для печати
+     */
+    @Override
+    public String toString() {
+        return appendTo(new StringBuilder()).toString();
     }
 
     /**
-     * Преобразование строчки к шаблону
+     * Добавляет строчку в удобном для печати виде: код операции в поле
+     * шириной 20 символов и исходная строчка
      *
-     * @param line Исходная строчка
-     * @return Шаблон
+     * @param out Куда добавлять
+     * @return out
      */
-    private String getLineTemplate(String line) {
-        LexemeInfo[] lexemeInfo = LexicalAnalyzer.getLexemeInfo(line);
-        StringBuilder template = new StringBuilder(getLexemeTemplate(lexemeInfo[0]));
+    StringBuilder appendTo(StringBuilder out) {
+        int start = out.length();
+        code.appendHex(out, getAddress(), codeLength);
+        return IOLib.padRight(out, start, 20).append(' ').append(value);
+    }
 
-        for (int i = 1; i < lexemeInfo.length; i++) {
-            template = template.append(" ").append(getLexemeTemplate(lexemeInfo[i]));
-        }
+    /**
+     * Код операции в виде текста, например "66| 26: FE 87 0000"
+     *
+     * @return Код операции
+     */
+    String getOpCode() {
+        return code.appendHex(new StringBuilder(), getAddress(), codeLength).toString();
+    }
 
-        return template.toString();
+    /**
+     * Конструктор для первого прохода.
+     *
+     * @param line Исходная строчка
+     * @param translation Трансляция
+     */
+    public LineInfo(String line, Translation translation) {
+        this(new ParsedLine(line), translation);
     }
 
     /**
-     * Возвращает тип шаблона
+     * Конструктор для первого прохода.
      *
-     * @param template Шаблон
-     * @return Тип шаблона
+     * @param parsed Разобранная строчка
+     * @param translation Трансляция
      */
-    private LineType getTemplateType(String template) {
+    public LineInfo(ParsedLine parsed, Translation translation) {
+        this.parsed = parsed;
+        this.translation = translation;
+        this.value = parsed.value;
+        this.address = translation.segTable.getCurrentAddress();
+        this.type = parsed.type;
+        this.isCorrect = type != LineType.ERROR_LINE;
+        this.encoding = type == LineType.INSTRUCTIONS || type == LineType.JUMP
+                ? InstructionTable.get(parsed.body[0].value, LineClassifier.getShape(parsed.form)) : null;
+        this.code = translation.segTable.getCode();
+        this.itemsBefore = code.getItemCount();
 
-        if (!template.equals("ID :") && template.startsWith("ID :")) {
-            template = template.substring(template.indexOf(":") + 1).trim();
+        for (String label : parsed.labels) {
+            translation.idTable.add(new IdInfo(label, IdType.LABEL, translation.segTable));
         }
 
-        int index = -1;
-        for (int i = 0; i < validTemplates.length; i++) {
-            if (validTemplates[i].equals(template)) {
-                index = i;
-                break;
+        code.seek(address);
+        this.codeLength = getOpCode(parsed.body);
+        this.sizeInBytes = codeLength;
+        if (!isCorrect) {
+            fixup = null;
+        } else if (fixup != null && fixup.kind != Fixup.Kind.ABSOLUTE) {
+            if (fixup.kind == Fixup.Kind.OPERAND) {
+                fixup.width = codeLength;
             }
-        }
-
-        if (index == -1) {
-            return LineType.ERROR_LINE;
-        }
-
-        switch (index) {
-            case 0:
-                return LineType.BEGIN_SEGMENT;
-            case 1:
-                return LineType.END_SEGMENT;
-            case 2:
-                return LineType.ASSUME;
-            case 3:
-            case 4:
-                return LineType.END;
-            case 5:
-                return LineType.LABEL;
-            case 22:
-            case 23:
-                return LineType.JUMP;
-            case 24:
-                return LineType.EMPTY;
-            default:
-                if (index < 10) {
-                    return LineType.DATA_DECLARATION;
-                }
-                return LineType.INSTRUCTIONS;
+            itemIndex = code.addItem(address, codeLength);
         }
     }
 
     /**
-     * Генерация кода операции для строчки
+     * Генерация кода операции для строчки. Код записывается в буфер сегмента
+     * с текущей позиции.
      *
-     * @param input Исходная строчка
-     * @return Код операции
+     * @param lexemes Лексемы строчки без меток
+     * @return Размер кода в байтах
      */
-    private String getOpCode(String input) {
+    private int getOpCode(LexemeInfo[] lexemes) {
 
-        SegTable segTable = SegTable.getInstance();
-        IdTable idTable = IdTable.getInstance();
-
-        while (!template.equals("ID :") && template.startsWith("ID :")) {
-            String label = input.substring(0, input.indexOf(":")).trim();
-            input = input.substring(input.indexOf(":") + 1).trim();
-            idTable.add(new IdInfo(label, IdType.LABEL));
-            template = getLineTemplate(input);
-        }
-
-        LexemeInfo[] lexemes = LexicalAnalyzer.getLexemeInfo(input);
+        SegTable segTable = translation.segTable;
+        IdTable idTable = translation.idTable;
 
         switch (type) {
             case BEGIN_SEGMENT:
                 if (!segTable.getCurrentSegment().equals(SegTable.NULL_SEG_NAME)) {
                     isCorrect = false;
                 } else {
-                    segTable.setCurrentSegment(lexemes[0].value);
                     if (!segTable.isExist(lexemes[0].value)) {
                         segTable.add(new SegInfo(lexemes[0].value));
                     }
+                    segTable.setCurrentSegment(lexemes[0].value);
                     segTable.setCurrentAddress(((SegInfo) segTable.get(lexemes[0].value)).getSize());
                 }
-                return "";
+                return 0;
             case END_SEGMENT:
                 if (!segTable.getCurrentSegment().equalsIgnoreCase(lexemes[0].value)) {
                     isCorrect = false;
@@ -364,324 +523,635 @@ class LineInfo {
                     segTable.setSize(segTable.getCurrentSegment(), address);
                 }
                 segTable.setCurrentSegment(SegTable.NULL_SEG_NAME);
-                return "";
+                return 0;
             case DATA_DECLARATION:
                 if (lexemes[2].type == LexemeType.CONST_STRING) {
                     if (!lexemes[1].value.equalsIgnoreCase("DB")) {
                         isCorrect = false;
-                        return "";
+                        return 0;
                     }
-                    idTable.add(new IdInfo(lexemes[0].value, IdType.DB));
-                    
+                    idTable.add(new IdInfo(lexemes[0].value, IdType.DB, segTable));
+
                     String constStr = lexemes[2].value.substring(1, lexemes[2].value.length() - 1);
-                    String constHex = "";
-                    for (byte b : constStr.getBytes(StandardCharsets.UTF_8)) {
-                        constHex += Integer.toHexString(b & 0xFF) + " ";
+                    byte[] bytes = constStr.getBytes(StandardCharsets.UTF_8);
+                    for (byte b : bytes) {
+                        code.putByte(b);
                     }
 
-
-                    return constHex.trim().toUpperCase();
+                    return bytes.length;
                 }
                 int immSize = LexicalAnalyzer.getConstSize(lexemes[2].value);
 
                 IdType idType = IdType.valueOf(lexemes[1].value.toUpperCase());
 
-                idTable.add(new IdInfo(lexemes[0].value, idType));
+                idTable.add(new IdInfo(lexemes[0].value, idType, segTable));
 
                 if (idType.getSize() < immSize || immSize == -1) {
                     isCorrect = false;
-                    return "";
+                    return 0;
                 }
 
-                return IOLib.toHex(lexemes[2].value, immSize * 2);
+                code.putField(LexicalAnalyzer.getConstValue(lexemes[2].value), immSize);
+                return immSize;
             case LABEL:
-                idTable.add(new IdInfo(lexemes[0].value, IdType.LABEL));
-                return "";
+                idTable.add(new IdInfo(lexemes[0].value, IdType.LABEL, segTable));
+                return 0;
             case ASSUME:
-                segTable.assume(input);
-                return "";
+                segTable.assume(lexemes);
+                return 0;
             case INSTRUCTIONS:
             case JUMP:
-                return getInstructionCode(lexemes);
+                int start = code.getPosition();
+                getInstructionCode(lexemes, code);
+                return code.getPosition() - start;
             case ERROR_LINE:
                 isCorrect = false;
             default:
-                return "";
+                return 0;
         }
     }
 
     /**
-     * Генерация кода операции для операций.
+     * Префиксы размера операнда, размера адреса и блокировки шины
+     */
+    private static final int OPERAND_PREFIX = 0x66;
+    private static final int ADDRESS_PREFIX = 0x67;
+    private static final int LOCK_PREFIX = 0xF0;
+
+    /**
+     * Генерация кода операции для операций по записи таблицы команд. Код
+     * записывается в заданный буфер, в случае ошибки ничего не записывается.
+     * В первом проходе ссылки, которые нельзя записать окончательно,
+     * запоминаются в fixup.
      *
      * @param lexemes Массив лексем
-     * @return Код операции
+     * @param out Куда записывать код
      */
-    private String getInstructionCode(LexemeInfo[] lexemes) {
-
-        SegTable segTable = SegTable.getInstance();
-        IdTable idTable = IdTable.getInstance();
-
-        final String addrPrefix = "66| ";
-        final String regPrefix = "67| ";
-        boolean isAddrPref, isRegPref, isSegPref;
-        String segPrefix = "";
-        int immSize = 0;
-        IdInfo idInfo = null;
-        Register reg = null;
-        SegRegister idSeg = null;
-        switch (lexemes[0].value.toUpperCase()) {
-            case "INC": {
-                //FE /0 — INC r/m8
-                //FF /0 — INC r/m16
-                //FF /0 — INC r/m32
-                isSegPref = lexemes[1].type == LexemeType.REGISTER_SEGMENT;
-                // INC(0) ID(1) [(2) REG(3) ](4)                    
-                // INC(0) S_REG(1) :(2) ID(3) [(4) REG(5) ](5)
+    private void getInstructionCode(LexemeInfo[] lexemes, CodeBuffer out) {
+        if (parsed.isLocked && !encoding.is(InstructionTable.LOCK)) {
+            isCorrect = false;
+            return;
+        }
+        if (encoding.format == InstructionTable.Format.PREFIX) {
+            // REP(0) STRING_INSTR(1)
+            InstructionTable.Encoding command = InstructionTable.get(lexemes[1].value,
+                    InstructionTable.getShape(InstructionTable.NONE, InstructionTable.NONE));
+            if (command == null || !command.is(InstructionTable.STRING)) {
+                isCorrect = false;
+                return;
+            }
+            out.putPrefix(encoding.opcode);
+            putFixed(out, command);
+            return;
+        }
 
-                if (isSegPref) {
-                    segPrefix = getSegPrefix(lexemes[1].value);
+        int shape = LineClassifier.getShape(parsed.form);
+        int comma = lexemes.length;
+        int thirdComma = lexemes.length;
+        for (int i = 1; i < lexemes.length; i++) {
+            if (lexemes[i].type == LexemeType.ONE_SYMBOL && lexemes[i].value.equals(",")) {
+                if (comma < lexemes.length) {
+                    thirdComma = i;
+                    break;
                 }
+                comma = i;
+            }
+        }
+        Operand first = Operand.parse(InstructionTable.getFirst(shape), lexemes, 1, comma);
+        Operand second = Operand.parse(InstructionTable.getSecond(shape), lexemes, comma + 1, thirdComma);
+        Operand third = Operand.parse(InstructionTable.getThird(shape), lexemes, thirdComma + 1, lexemes.length);
+        // LOCK - только перед командой, которая меняет память
+        if (parsed.isLocked && !first.isMemory() && (second == null || !second.isMemory())) {
+            isCorrect = false;
+            return;
+        }
 
-                idInfo = (IdInfo) (idTable.get(lexemes[isSegPref ? 3 : 1].value));
-
-                if (idInfo == null) {
+        switch (encoding.format) {
+            case FIXED:
+                putFixed(out, encoding);
+                return;
+            case RM: {
+                // регистр слова в коде операции: 40+r INC, 48+r DEC, 50+r PUSH, 58+r POP
+                if (first.kind == InstructionTable.R && first.reg.getSize() != 1 && encoding.extraOpcode >= 0) {
+                    putPrefixes(out, getOperandPrefix(first.reg.getSize()), 0, 0);
+                    out.putByte(encoding.extraOpcode + first.reg.getNum());
+                    return;
+                }
+                if (!resolveOperand(first, encoding.wordOpcode >= 0 ? IdType.DW : IdType.DB)) {
+                    return;
+                }
+                int size = first.getSize();
+                int opcode = getOpcode(size);
+                if (opcode < 0) {
                     isCorrect = false;
-                    return "";
+                    return;
                 }
-
-                idSeg = segTable.getSegmentReg(idInfo.getSegment());
-                if (idSeg != SegTable.SegRegister.DS && !isSegPref) {
-                    segPrefix = getSegPrefix(idSeg.name());
+                putRMCode(out, size, opcode, encoding.ext, first, 0, 0);
+                return;
+            }
+            case RM_REG: {
+                int size = second.reg.getSize();
+                if (!resolveOperand(first, getTypeBySize(size))) {
+                    return;
                 }
-
-                isAddrPref = idInfo.getType() == IdType.DD;
-                reg = Register.valueOf(lexemes[isSegPref ? 5 : 3].value.toUpperCase());
-                isRegPref = reg.getSize() == 4;
-
-                return (isAddrPref ? addrPrefix : "") + segPrefix + (isRegPref ? regPrefix : "")
-                        + "FE " + Register.getModRM(0, reg, true) + IOLib.toHex(idInfo.getAddress(), (isRegPref ? 8 : 4));
-
+                int opcode = getOpcode(size);
+                if (opcode < 0 || first.getSize() != size) {
+                    isCorrect = false;
+                    return;
+                }
+                putRMCode(out, size, opcode, second.reg.getNum(), first, 0, 0);
+                return;
             }
-            case "DEC": {
-                //FE /1 — DEC r/m8
-                //48+rw — DEC r16
-                //48+rd — DEC r32
-                // DEC(0) REG(1)                    
-
-                reg = Register.valueOf(lexemes[1].value.toUpperCase());
-                isRegPref = reg.getSize() == 4;
-
-                return (isRegPref ? regPrefix : "") + (reg.getSize() == 1 ? "FE "
-                        + IOLib.toHex(0xC8 + reg.getNum(), 2) : IOLib.toHex(0x48 + reg.getNum(), 2));
+            case REG_RM: {
+                int size = first.reg.getSize();
+                int opcode;
+                if (encoding.is(InstructionTable.ADDRESS)) {
+                    if (!resolveOperand(second, IdType.DW)) {
+                        return;
+                    }
+                    opcode = size == 1 ? -1 : encoding.wordOpcode;
+                } else if (encoding.is(InstructionTable.SOURCE_SIZE)) {
+                    if (!resolveOperand(second, IdType.DB)) {
+                        return;
+                    }
+                    int sourceSize = second.getSize();
+                    opcode = sourceSize == 0 || sourceSize >= size ? -1 : getOpcode(sourceSize);
+                } else {
+                    if (!resolveOperand(second, getTypeBySize(size))) {
+                        return;
+                    }
+                    opcode = second.getSize() == size ? getOpcode(size) : -1;
+                }
+                if (opcode < 0) {
+                    isCorrect = false;
+                    return;
+                }
+                putRMCode(out, size, opcode, first.reg.getNum(), second, 0, 0);
+                return;
             }
-            case "ADD": {
-                //80 /0 ib — ADD r/m8,imm8
-                //81 /0 iw — ADD r/m16,imm16
-                //81 /0 id — ADD r/m32,imm32
-                //83 /0 ib — ADD r/m16,imm8
-                //83 /0 ib — ADD r/m32,imm8
-
-                isSegPref = lexemes[1].type == LexemeType.REGISTER_SEGMENT;
-                // ADD(0) ID(1) [(2) REG(3) ](4) ,(5) CONST(6)                    
-                // ADD(0) S_REG(1) :(2) ID(3) [(4) REG(5) ](6) ,(7) CONST(8)
-
-                if (isSegPref) {
-                    segPrefix = getSegPrefix(lexemes[1].value);
+            case RM_IMM: {
+                if (!resolveOperand(first, IdType.DW)) {
+                    return;
                 }
-
-                idInfo = (IdInfo) (idTable.get(lexemes[isSegPref ? 3 : 1].value));
-                if (idInfo == null || idInfo.getType().getSize() < immSize || immSize == -1) {
+                int size = first.getSize();
+                int opcode = getOpcode(size);
+                int immSize = second.getImmSize();
+                int immWidth = encoding.immWidth != 0 ? encoding.immWidth : size;
+                if (opcode < 0 || immSize < 0 || immSize > immWidth) {
                     isCorrect = false;
-                    return "";
+                    return;
                 }
-
-                idSeg = segTable.getSegmentReg(idInfo.getSegment());
-                if (idSeg != SegTable.SegRegister.DS && !isSegPref) {
-                    segPrefix = getSegPrefix(idSeg.name());
+                long imm = second.getImm();
+                // 83 /n ib: байт со знаком расширяется до слова
+                if (encoding.extraOpcode >= 0 && size != 1 && imm <= 0x7F) {
+                    opcode = encoding.extraOpcode;
+                    immWidth = 1;
                 }
-                long imm = LexicalAnalyzer.getConstValue(lexemes[isSegPref ? 8 : 6].value);
-                immSize = LexicalAnalyzer.getConstSize(imm);
-
-                isAddrPref = idInfo.getType() == IdType.DD;
-                reg = Register.valueOf(lexemes[isSegPref ? 5 : 3].value.toUpperCase());
-                isRegPref = reg.getSize() == 4;
-
-                return (isAddrPref ? addrPrefix : "") + segPrefix + (isRegPref ? regPrefix : "")
-                        + (immSize == 1 && idInfo.getType().getSize() != 1 ? "83 " : idInfo.getType().getSize() == 1 ? "80 " : "81 ")
-                        + Register.getModRM(0, reg, true) + IOLib.toHex(idInfo.getAddress(), (isRegPref ? 8 : 4))
-                        + " " + IOLib.toHex(imm, immSize != 1 ? idInfo.getType().getSize() * 2 : 2);
-
+                putRMCode(out, size, opcode, encoding.ext, first, imm, immWidth);
+                return;
             }
-            case "CMP": {
-                //3A /r — CMP r8,r/m8
-                //3B /r — CMP r16,r/m16
-                //3B /r — CMP r32,r/m32
-
-                isSegPref = lexemes[3].type == LexemeType.REGISTER_SEGMENT;
-                // CMP(0) FIRST_REG(1) ,(2) ID(3) [(4) REG(5) ](6)                    
-                // CMP(0) FIRST_REG(1) ,(2) S_REG(3) :(4) ID(5) [(6) REG(7) ](8)                    
-
-                if (isSegPref) {
-                    segPrefix = getSegPrefix(lexemes[3].value);
+            case REG_RM_IMM: {
+                // IMUL r, r/m, imm: 6B - байт со знаком, 69 - imm размера операнда
+                int size = first.reg.getSize();
+                if (!resolveOperand(second, getTypeBySize(size))) {
+                    return;
                 }
-
-                idInfo = (IdInfo) (idTable.get(lexemes[isSegPref ? 5 : 3].value));
-                Register firstReg = Register.valueOf(lexemes[1].value.toUpperCase());
-                if (idInfo == null || idInfo.getType().getSize() != firstReg.getSize()) {
+                int immSize = third.getImmSize();
+                if (size == 1 || second.getSize() != size || immSize < 0 || immSize > size) {
                     isCorrect = false;
-                    return "";
+                    return;
                 }
-
-                idSeg = segTable.getSegmentReg(idInfo.getSegment());
-                if (idSeg != SegTable.SegRegister.DS && !isSegPref) {
-                    segPrefix = getSegPrefix(idSeg.name());
+                long imm = third.getImm();
+                boolean isShort = imm <= 0x7F;
+                putRMCode(out, size, isShort ? encoding.extraOpcode : encoding.wordOpcode, first.reg.getNum(), second,
+                        imm, isShort ? 1 : size);
+                return;
+            }
+            case REG_IMM: {
+                int size = first.reg.getSize();
+                int immSize = second.getImmSize();
+                if (immSize < 0 || immSize > size) {
+                    isCorrect = false;
+                    return;
                 }
-
-                isAddrPref = idInfo.getType() == IdType.DD;
-                reg = Register.valueOf(lexemes[isSegPref ? 7 : 5].value.toUpperCase());
-                isRegPref = reg.getSize() == 4;
-
-                return (isAddrPref ? addrPrefix : "") + segPrefix + (isRegPref ? regPrefix : "")
-                        + (idInfo.getType() == IdType.DB ? "3A " : "3B ") + Register.getModRM(firstReg, reg, true)
-                        + IOLib.toHex(idInfo.getAddress(), (isRegPref ? 8 : 4));
+                putPrefixes(out, getOperandPrefix(size), 0, 0);
+                out.putByte(getOpcode(size) + first.reg.getNum());
+                out.putField(second.getImm(), size);
+                return;
             }
-            case "XOR": {
-                //30 /r — XOR r/m8,r8
-                //31 /r — XOR r/m16,r16
-                //31 /r — XOR r/m32,r32
-
-                isSegPref = lexemes[1].type == LexemeType.REGISTER_SEGMENT;
-                // XOR(0) ID(1) [(2) REG(3) ](4) ,(5) SECOND_REG(6)
-                // XOR(0) S_REG(1) :(2) ID(3) [(4) REG(5) ](6) ,(7) SECOND_REG(8)
-
-                if (isSegPref) {
-                    segPrefix = getSegPrefix(lexemes[1].value);
+            case SHIFT: {
+                if (!resolveOperand(first, IdType.DW)) {
+                    return;
                 }
-
-                idInfo = (IdInfo) (idTable.get(lexemes[isSegPref ? 3 : 1].value));
-                Register secondReg = Register.valueOf(lexemes[isSegPref ? 8 : 6].value.toUpperCase());
-                if (idInfo == null || idInfo.getType().getSize() != secondReg.getSize()) {
+                int size = first.getSize();
+                int opcode = getOpcode(size);
+                if (opcode < 0 || second.getImmSize() != 1) {
                     isCorrect = false;
-                    return "";
+                    return;
                 }
-
-                idSeg = segTable.getSegmentReg(idInfo.getSegment());
-                if (idSeg != SegTable.SegRegister.DS && !isSegPref) {
-                    segPrefix = getSegPrefix(idSeg.name());
+                long count = second.getImm();
+                if (count == 1) {
+                    putRMCode(out, size, opcode, encoding.ext, first, 0, 0);
+                } else {
+                    putRMCode(out, size, encoding.extraOpcode + (size == 1 ? 0 : 1), encoding.ext, first, count, 1);
                 }
-
-                isAddrPref = idInfo.getType() == IdType.DD;
-                reg = Register.valueOf(lexemes[isSegPref ? 5 : 3].value.toUpperCase());
-                isRegPref = reg.getSize() == 4;
-
-                return (isAddrPref ? addrPrefix : "") + segPrefix + (isRegPref ? regPrefix : "")
-                        + (idInfo.getType() == IdType.DB ? "30 " : "31 ") + Register.getModRM(secondReg, reg, true)
-                        + IOLib.toHex(idInfo.getAddress(), (isRegPref ? 8 : 4));
+                return;
             }
-            case "MOV": {
-                //B0+rb — MOV r8,imm8
-                //B8+rw — MOV r16,imm16
-                //B8+rd — MOV r32,imm32                
-                // MOV(0) REG(1) ,(2) imm(3)
-
-                immSize = LexicalAnalyzer.getConstSize(lexemes[3].value);
-                reg = Register.valueOf(lexemes[1].value.toUpperCase());
-                isAddrPref = reg.getSize() == 4;
-
-                if (reg.getSize() < immSize) {
+            case SHIFT_CL: {
+                if (!resolveOperand(first, IdType.DW)) {
+                    return;
+                }
+                int size = first.getSize();
+                int opcode = getOpcode(size);
+                if (opcode < 0 || second.reg != Register.CL) {
                     isCorrect = false;
-                    return "";
+                    return;
                 }
-
-                return (isAddrPref ? addrPrefix : "")
-                        + (reg.getSize() == 1 ? IOLib.toHex(0xB0 + reg.getNum(), 2) : IOLib.toHex(0xB8 + reg.getNum(), 2))
-                        + " " + IOLib.toHex(lexemes[3].value, reg.getSize() * 2);
+                putRMCode(out, size, opcode, encoding.ext, first, 0, 0);
+                return;
             }
-            case "OR": {
-                //0A /r — OR r8,r/m8
-                //0B /r — OR r16,r/m16
-                //0B /r — OR r32,r/m32              
-                // OR(0) REG(1) ,(2) SECOND_REG(3)
-
-                reg = Register.valueOf(lexemes[1].value.toUpperCase());
-                Register secondReg = Register.valueOf(lexemes[3].value.toUpperCase());
-                isAddrPref = reg.getSize() == 4;
-
-                if (reg.getSize() != secondReg.getSize()) {
+            case RM_REG_IMM:
+            case RM_REG_CL: {
+                // SHLD/SHRD r/m, r, imm8 / r/m, r, CL
+                boolean isCl = encoding.format == InstructionTable.Format.RM_REG_CL;
+                int size = second.reg.getSize();
+                if (!resolveOperand(first, getTypeBySize(size))) {
+                    return;
+                }
+                if (size == 1 || first.getSize() != size || (isCl ? third.reg != Register.CL : third.getImmSize() != 1)) {
                     isCorrect = false;
-                    return "";
+                    return;
                 }
-
-                return (isAddrPref ? addrPrefix : "") + (reg.getSize() == 1 ? IOLib.toHex(0x0A, 2) : IOLib.toHex(0x0B, 2))
-                        + " " + Register.getModRM(reg, secondReg, false);
+                putRMCode(out, size, encoding.wordOpcode, second.reg.getNum(), first, isCl ? 0 : third.getImm(),
+                        isCl ? 0 : 1);
+                return;
             }
-            case "JB": {
-                //72 cb — JB rel8
-                //0F 82 cw/cd — JB rel16/32
-                //JB(0) ID(1)
-
-                idInfo = (IdInfo) (idTable.get(lexemes[1].value));
-
-                if (idInfo == null) {
-                    if (Translator.isSecondPass) {
-                        isCorrect = false;
-                        return "";
-                    }
-                    return "90 90 90 90";
+            case SREG: {
+                if (encoding.is(InstructionTable.NO_CS) && first.sreg == SegRegister.CS) {
+                    isCorrect = false;
+                    return;
                 }
-                int jumpWidth = idInfo.getAddress() - (address + 2);
-                if (jumpWidth > -128 && jumpWidth < 0) {
-                    return "72 " + IOLib.toHex(jumpWidth, 2);
+                int num = first.sreg.ordinal();
+                putOpcode(out, num < 4 ? encoding.opcode + 8 * num : encoding.wordOpcode + 8 * (num - 4));
+                return;
+            }
+            case RM_SREG:
+            case SREG_RM: {
+                boolean isToSeg = encoding.format == InstructionTable.Format.SREG_RM;
+                Operand rm = isToSeg ? second : first;
+                SegRegister sreg = (isToSeg ? first : second).sreg;
+                if (!resolveOperand(rm, IdType.DW)) {
+                    return;
+                }
+                if (rm.getSize() != 2 || (encoding.is(InstructionTable.NO_CS) && sreg == SegRegister.CS)) {
+                    isCorrect = false;
+                    return;
                 }
-                return jumpWidth < 127 && jumpWidth > -128 ? "72 " + IOLib.toHex(jumpWidth, 2) + " 90 90" : "0F 82 " + IOLib.toHex(jumpWidth - 2, 4);
+                putRMCode(out, 2, encoding.wordOpcode, sreg.ordinal(), rm, 0, 0);
+                return;
             }
-            case "JMP": {
-                //EB cb — JMP rel8
-                //E9 cw — JMP rel16
-                //JMP(0) ID(1)
-
-                idInfo = (IdInfo) (idTable.get(lexemes[1].value));
-
-                if (idInfo == null) {
-                    if (Translator.isSecondPass) {
-                        isCorrect = false;
-                        return "";
-                    }
-                    return "90 90 90";
+            case IMM: {
+                int immSize = first.getImmSize();
+                if (immSize < 0 || immSize > encoding.immWidth) {
+                    isCorrect = false;
+                    return;
                 }
-                int jumpWidth = idInfo.getAddress() - (address + 2);
-                if (jumpWidth > -128 && jumpWidth < 0) {
-                    return "EB " + IOLib.toHex(jumpWidth, 2);
+                long imm = first.getImm();
+                if (encoding.extraOpcode >= 0 && imm <= 0x7F) {
+                    out.putByte(encoding.extraOpcode);
+                    out.putField(imm, 1);
+                } else {
+                    putOpcode(out, encoding.opcode);
+                    out.putField(imm, encoding.immWidth);
+                }
+                return;
+            }
+            case IMM_IMM: {
+                // ENTER imm16, imm8
+                int frameSize = first.getImmSize();
+                if (frameSize < 0 || frameSize > 2 || second.getImmSize() != 1) {
+                    isCorrect = false;
+                    return;
+                }
+                putOpcode(out, encoding.opcode);
+                out.putField(first.getImm(), 2);
+                out.putField(second.getImm(), 1);
+                return;
+            }
+            case REL:
+                startJump(out, first.value);
+                return;
+            case ACC_IMM:
+            case IMM_ACC: {
+                // IN AL, imm8 / OUT imm8, AL
+                boolean isIn = encoding.format == InstructionTable.Format.ACC_IMM;
+                Register acc = (isIn ? first : second).reg;
+                Operand port = isIn ? second : first;
+                if (acc.getNum() != 0 || port.getImmSize() != 1) {
+                    isCorrect = false;
+                    return;
+                }
+                putPrefixes(out, getOperandPrefix(acc.getSize()), 0, 0);
+                out.putByte(getOpcode(acc.getSize()));
+                out.putField(port.getImm(), 1);
+                return;
+            }
+            default: { // ACC_DX, DX_ACC
+                // IN AL, DX / OUT DX, AL
+                boolean isIn = encoding.format == InstructionTable.Format.ACC_DX;
+                Register acc = (isIn ? first : second).reg;
+                Register port = (isIn ? second : first).reg;
+                if (acc.getNum() != 0 || port != Register.DX) {
+                    isCorrect = false;
+                    return;
                 }
-                return jumpWidth < 127 && jumpWidth > -128 ? "EB " + IOLib.toHex(jumpWidth, 2) + " 90" : "E9 " + IOLib.toHex(jumpWidth - 1, 4);
+                putPrefixes(out, getOperandPrefix(acc.getSize()), 0, 0);
+                out.putByte(getOpcode(acc.getSize()));
             }
-            default: //CLI
-                return "FA";
         }
     }
 
+    /**
+     * Код операции записи таблицы для операнда заданного размера
+     *
+     * @param size Размер операнда в байтах
+     * @return Код операции или -1, если у команды нет операнда такого
+     * размера
+     */
+    private int getOpcode(int size) {
+        return size == 1 ? encoding.opcode : size == 0 ? -1 : encoding.wordOpcode;
+    }
+
+    /**
+     * Префикс размера операнда (0 - не нужен)
+     *
+     * @param size Размер операнда в байтах
+     * @return Префикс
+     */
+    private static int getOperandPrefix(int size) {
+        return size == 4 ? OPERAND_PREFIX : 0;
+    }
+
+    /**
+     * Записывает код операции (один или два байта)
+     *
+     * @param out Куда записывать код
+     * @param opcode Код операции
+     */
+    private static void putOpcode(CodeBuffer out, int opcode) {
+        if (opcode > 0xFF) {
+            out.putByte(opcode >> 8);
+        }
+        out.putByte(opcode & 0xFF);
+    }
+
+    /**
+     * Записывает команду без операндов
+     *
+     * @param out Куда записывать код
+     * @param command Запись таблицы команд
+     */
+    private static void putFixed(CodeBuffer out, InstructionTable.Encoding command) {
+        if (command.is(InstructionTable.O32)) {
+            out.putPrefix(OPERAND_PREFIX);
+        }
+        putOpcode(out, command.opcode);
+    }
+
+    /**
+     * Ищет идентификатор операнда в памяти (регистр не ищется)
+     *
+     * @param operand Операнд
+     * @param assumedType Предполагаемый тип для ссылки вперёд
+     * @return Найден ли идентификатор
+     */
+    private boolean resolveOperand(Operand operand, IdType assumedType) {
+        if (operand.kind == InstructionTable.R) {
+            return true;
+        }
+        operand.idInfo = findOperand(operand.value, assumedType);
+        if (operand.idInfo == null) {
+            isCorrect = false;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Записывает команду с байтом ModR/M: префиксы, код операции, ModR/M
+     * (для операнда в памяти - и адрес) и непосредственный операнд.
+     *
+     * @param out Куда записывать код
+     * @param size Размер операнда в байтах
+     * @param opcode Код операции
+     * @param regField Поле reg байта ModR/M
+     * @param rm Операнд r/m
+     * @param imm Непосредственный операнд
+     * @param immWidth Размер непосредственного операнда (0 - нет)
+     */
+    private void putRMCode(CodeBuffer out, int size, int opcode, int regField, Operand rm, long imm, int immWidth) {
+        if (parsed.isLocked) {
+            out.putPrefix(LOCK_PREFIX);
+        }
+        if (rm.kind == InstructionTable.R) {
+            putPrefixes(out, getOperandPrefix(size), 0, 0);
+            putOpcode(out, opcode);
+            out.putByte(0xC0 + 0x08 * regField + rm.reg.getNum());
+        } else {
+            int segPrefix = rm.sreg != null ? getSegPrefix(rm.sreg) : getImplicitSegPrefix(rm.idInfo);
+            boolean isAddr32 = rm.reg != null && rm.reg.getSize() == 4;
+            putPrefixes(out, getOperandPrefix(size), segPrefix, isAddr32 ? ADDRESS_PREFIX : 0);
+            putOpcode(out, opcode);
+            if (rm.reg == null) {
+                // прямой адрес: mod 00, r/m 110, disp16
+                out.putByte(0x06 + 0x08 * regField);
+                putAddress(out, rm.idInfo, 2);
+            } else {
+                Register.putModRM(out, regField, rm.reg);
+                putAddress(out, rm.idInfo, isAddr32 ? 4 : 2);
+            }
+        }
+        if (immWidth != 0) {
+            out.putField(imm, immWidth);
+        }
+    }
+
+    /**
+     * Первый проход перехода. Переходы, у которых есть короткая форма,
+     * начинают короткими, ближними их делает выравнивание (размеры команд со
+     * ссылкой вперёд ещё не известны). Переход на уже объявленную метку
+     * записывается сразу, для остальных оставляется место.
+     *
+     * @param out Куда записывать код
+     * @param target Метка
+     */
+    private void startJump(CodeBuffer out, String target) {
+        boolean isShort = encoding.extraOpcode >= 0;
+        fixup = new Fixup(Fixup.Kind.JUMP, target, 0, isShort ? 1 : 2);
+        IdInfo idInfo = (IdInfo) (translation.idTable.get(target));
+        if (idInfo == null) {
+            putNops(out, getJumpLength());
+            return;
+        }
+        if (!putJump(out, idInfo)) {
+            if (encoding.wordOpcode < 0) {
+                // у перехода только короткая форма (LOOP, JCXZ)
+                isCorrect = false;
+                return;
+            }
+            putNops(out, getJumpLength());
+        }
+    }
+
+    /**
+     * Размер перехода по записи о ссылке
+     *
+     * @return Размер в байтах
+     */
+    private int getJumpLength() {
+        return getJumpPrefixLength() + (fixup.width == 1 ? 2 : InstructionTable.getOpcodeLength(encoding.wordOpcode) + 2);
+    }
+
+    /**
+     * Длина префикса перехода (67 у JECXZ)
+     *
+     * @return Длина в байтах
+     */
+    private int getJumpPrefixLength() {
+        return encoding.is(InstructionTable.ADDRESS32) ? 1 : 0;
+    }
+
+    /**
+     * Записывает переход по записи о ссылке (ширина 1 - короткий, 2 -
+     * ближний)
+     *
+     * @param out Куда записывать код
+     * @param idInfo Метка
+     * @return false (ничего не записано), если цель короткого перехода вне
+     * пределов rel8
+     */
+    private boolean putJump(CodeBuffer out, IdInfo idInfo) {
+        boolean isNear = fixup.width == 2;
+        int opcode = isNear ? encoding.wordOpcode : encoding.extraOpcode;
+        int jumpWidth = idInfo.getAddress() - (out.getPosition() + getJumpPrefixLength()
+                + InstructionTable.getOpcodeLength(opcode) + fixup.width);
+        if (!isNear && (jumpWidth < -128 || jumpWidth > 127)) {
+            return false;
+        }
+        if (getJumpPrefixLength() != 0) {
+            out.putPrefix(ADDRESS_PREFIX);
+        }
+        putOpcode(out, opcode);
+        out.putField(jumpWidth, fixup.width);
+        return true;
+    }
+
+    /**
+     * Ищет идентификатор операнда. Для ссылки вперёд в первом проходе
+     * возвращает предполагаемый идентификатор, с которым команда получается
+     * самой короткой, и запоминает ссылку: команда записывается заново во
+     * втором проходе.
+     *
+     * @param name Имя идентификатора
+     * @param assumedType Предполагаемый тип
+     * @return Идентификатор или null, если он не объявлен
+     */
+    private IdInfo findOperand(String name, IdType assumedType) {
+        IdInfo idInfo = (IdInfo) (translation.idTable.get(name));
+        if (idInfo == null && !translation.isSecondPass) {
+            fixup = new Fixup(Fixup.Kind.OPERAND, name, 0, 0);
+            assumeState = translation.segTable.getAssumeState();
+            return IdInfo.forward(name, assumedType, code);
+        }
+        return idInfo;
+    }
+
+    /**
+     * Записывает смещение идентификатора. Если адрес идентификатора может
+     * измениться при выравнивании, запоминает ссылку для второго прохода.
+     *
+     * @param out Куда записывать код
+     * @param idInfo Идентификатор
+     * @param width Размер поля
+     */
+    private void putAddress(CodeBuffer out, IdInfo idInfo, int width) {
+        if (!translation.isSecondPass && fixup == null && !idInfo.isFixed()) {
+            fixup = new Fixup(Fixup.Kind.ABSOLUTE, idInfo.getName(), out.getPosition() - address, width);
+        }
+        out.putField(idInfo.getAddress(), width);
+    }
+
+    /**
+     * Возвращает префикс замены сегмента, который нужен идентификатору по
+     * Assume-у (0 - сегмент в DS или неизвестен)
+     *
+     * @param idInfo Идентификатор
+     * @return Префикс замены сегмента
+     */
+    private int getImplicitSegPrefix(IdInfo idInfo) {
+        if (idInfo.getSegment() == null) {
+            return 0;
+        }
+        SegRegister idSeg = assumeState == null
+                ? translation.segTable.getSegmentReg(idInfo.getSegment())
+                : SegTable.getSegmentReg(idInfo.getSegment(), assumeState);
+        return idSeg == SegRegister.DS ? 0 : getSegPrefix(idSeg);
+    }
+
+    /**
+     * Тип данных заданного размера
+     *
+     * @param size Размер в байтах
+     * @return Тип
+     */
+    private static IdType getTypeBySize(int size) {
+        return size == 1 ? IdType.DB : size == 2 ? IdType.DW : IdType.DD;
+    }
+
+    /**
+     * Записывает префиксы команды (0 - префикса нет)
+     *
+     * @param out Куда записывать код
+     * @param operandPrefix Префикс 66
+     * @param segPrefix Префикс замены сегмента
+     * @param addressPrefix Префикс 67
+     */
+    private static void putPrefixes(CodeBuffer out, int operandPrefix, int segPrefix, int addressPrefix) {
+        if (operandPrefix != 0) {
+            out.putPrefix(operandPrefix);
+        }
+        if (segPrefix != 0) {
+            out.putSegPrefix(segPrefix);
+        }
+        if (addressPrefix != 0) {
+            out.putPrefix(addressPrefix);
+        }
+    }
+
+    /**
+     * Записывает заданное количество NOP
+     *
+     * @param out Куда записывать код
+     * @param count Количество
+     */
+    private void putNops(CodeBuffer out, int count) {
+        for (int i = 0; i < count; i++) {
+            out.putByte(0x90);
+        }
+    }
+
+    /**
+     * Коды префиксов замены сегмента в порядке SegRegister
+     */
+    private static final int[] segPrefixes = {0x26, 0x2E, 0x36, 0x3E, 0x64, 0x65};
+
     /**
      * Возвращает машинное представление префикса замены сегмента
      *
      * @param reg Сегментный регистр
      * @return Префикс замены сегмента
      */
-    private String getSegPrefix(String reg) {
-        switch (reg.toUpperCase()) {
-            case "ES":
-                return "26: ";
-            case "CS":
-                return "2E: ";
-            case "SS":
-                return "36: ";
-            case "DS":
-                return "3E: ";
-            case "FS":
-                return "64: ";
-            case "GS":
-                return "65: ";
-            default:
-                return "ERROR";
-        }
+    private static int getSegPrefix(SegRegister reg) {
+        return segPrefixes[reg.ordinal()];
     }
 }
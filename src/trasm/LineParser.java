@@ -0,0 +1,172 @@
+package trasm;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Первый этап первого прохода: лексический анализ и классификация строчек.
+ * Разбор строчки зависит только от ее текста, поэтому в параллельном режиме
+ * строчки читаются блоками и каждый блок разбирается параллельно (fork-join).
+ * Строчки выдаются строго в порядке файла - адреса и идентификаторы
+ * назначаются последовательно уже по результатам разбора.
+ *
+ * При сборе статистики строчки тоже читаются блоками (и разбираются
+ * последовательно, если режим не параллельный), чтобы время чтения и разбора
+ * измерялось один раз на блок.
+ */
+class LineParser {
+
+    /**
+     * Количество строчек в блоке параллельного разбора
+     */
+    private static final int BLOCK_SIZE = 64 * 1024;
+    /**
+     * Минимальное количество строчек на одну задачу
+     */
+    private static final int TASK_SIZE = 1024;
+
+    /**
+     * Разбор части блока
+     */
+    private static class ParseTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String[] lines;
+        private final ParsedLine[] parsed;
+        private final ParseCache cache;
+        private final Statistics stats;
+        private final int from, to;
+
+        ParseTask(String[] lines, ParsedLine[] parsed, ParseCache cache, Statistics stats, int from, int to) {
+            this.lines = lines;
+            this.parsed = parsed;
+            this.cache = cache;
+            this.stats = stats;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= TASK_SIZE) {
+                long start = stats == null ? 0 : Statistics.getThreadCpuTime();
+                parseRange(lines, parsed, cache, from, to);
+                if (stats != null) {
+                    stats.addTaskTime(Statistics.Phase.PASS_ONE, start);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ParseTask(lines, parsed, cache, stats, from, middle),
+                    new ParseTask(lines, parsed, cache, stats, middle, to));
+        }
+    }
+
+    private final SourceReader reader;
+    private final boolean isParallel;
+    /**
+     * Разбор предыдущей трансляции (null - без кэша)
+     */
+    private final ParseCache cache;
+    /**
+     * Статистика трансляции (null - не собирается)
+     */
+    private final Statistics stats;
+    /**
+     * Текущий блок (null - строчки читаются по одной)
+     */
+    private String[] lines;
+    private ParsedLine[] parsed;
+    private int count = 0;
+    private int next = 0;
+
+    /**
+     * Создает разбор строчек файла
+     *
+     * @param reader Исходный файл
+     * @param isParallel Разбирать ли блоки параллельно
+     * @param cache Разбор предыдущей трансляции (null - без кэша)
+     * @param stats Статистика трансляции (null - не собирается)
+     */
+    LineParser(SourceReader reader, boolean isParallel, ParseCache cache, Statistics stats) {
+        this.reader = reader;
+        this.isParallel = isParallel;
+        this.cache = cache;
+        this.stats = stats;
+        if (cache != null) {
+            cache.start();
+        }
+        if (isParallel || stats != null) {
+            lines = new String[BLOCK_SIZE];
+            parsed = new ParsedLine[BLOCK_SIZE];
+        }
+    }
+
+    /**
+     * Возвращает следующую разобранную строчку
+     *
+     * @return Строчка или null, если файл закончился
+     * @throws IOException
+     */
+    ParsedLine next() throws IOException {
+        ParsedLine line;
+        if (lines == null) {
+            String source = reader.nextLine();
+            line = source == null ? null : parse(source, cache);
+        } else {
+            if (next == count) {
+                readBlock();
+            }
+            line = parsed[next];
+            parsed[next] = null;
+            next = Math.min(next + 1, count);
+        }
+
+        if (cache != null) {
+            if (line == null) {
+                cache.finish();
+            } else {
+                cache.keep(line);
+            }
+        }
+        return line;
+    }
+
+    private static ParsedLine parse(String line, ParseCache cache) {
+        return cache == null ? new ParsedLine(line) : cache.parse(line);
+    }
+
+    private static void parseRange(String[] lines, ParsedLine[] parsed, ParseCache cache, int from, int to) {
+        for (int i = from; i < to; i++) {
+            parsed[i] = parse(lines[i], cache);
+            lines[i] = null;
+        }
+    }
+
+    /**
+     * Читает и разбирает следующий блок строчек
+     *
+     * @throws IOException
+     */
+    private void readBlock() throws IOException {
+        if (stats != null) {
+            stats.lap(Statistics.Phase.PASS_ONE);
+        }
+        count = 0;
+        next = 0;
+        String line;
+        while (count < BLOCK_SIZE && (line = reader.nextLine()) != null) {
+            lines[count++] = line;
+        }
+        if (stats != null) {
+            stats.lap(Statistics.Phase.READ);
+        }
+        if (count > 0 && isParallel) {
+            ForkJoinPool.commonPool().invoke(new ParseTask(lines, parsed, cache, stats, 0, count));
+        } else {
+            parseRange(lines, parsed, cache, 0, count);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package trasm;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Потоковая запись листинга. Строчки кодируются в UTF-8 в буфер постоянного
+ * размера, заполненный буфер сбрасывается в файл; копия для экрана берется
+ * из тех же байтов. При сборе статистики время до сброса буфера относится к
+ * формированию листинга, сам сброс - к записи.
+ */
+class ListingWriter implements Closeable {
+
+    /**
+     * Размер буфера записи
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final FileChannel channel;
+    /**
+     * Копия для экрана (null - без копии)
+     */
+    private final OutputStream console;
+    /**
+     * Статистика трансляции (null - не собирается)
+     */
+    private final Statistics stats;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    /**
+     * Открывает файл листинга (существующий файл перезаписывается)
+     *
+     * @param filePath Путь к файлу
+     * @param console Куда копировать листинг (null - без копии)
+     * @param stats Статистика трансляции (null - не собирается)
+     * @throws IOException
+     */
+    ListingWriter(String filePath, OutputStream console, Statistics stats) throws IOException {
+        this.channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        this.console = console;
+        this.stats = stats;
+    }
+
+    /**
+     * Записывает строчку и конец строки
+     *
+     * @param line Строчка
+     * @throws IOException
+     */
+    void println(CharSequence line) throws IOException {
+        write(line);
+        write(LINE_SEPARATOR);
+    }
+
+    private void write(CharSequence text) throws IOException {
+        CharBuffer chars = CharBuffer.wrap(text);
+        encoder.reset();
+        while (encoder.encode(chars, buffer, true).isOverflow()) {
+            flush();
+        }
+    }
+
+    /**
+     * Сбрасывает буфер в файл и на экран
+     *
+     * @throws IOException
+     */
+    private void flush() throws IOException {
+        if (stats != null) {
+            stats.lap(Statistics.Phase.RENDER);
+        }
+        buffer.flip();
+        if (console != null) {
+            console.write(buffer.array(), buffer.arrayOffset(), buffer.limit());
+        }
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        if (stats != null) {
+            stats.lap(Statistics.Phase.WRITE);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            if (console != null) {
+                console.flush();
+            }
+        } finally {
+            channel.close();
+        }
+    }
+}
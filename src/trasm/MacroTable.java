@@ -0,0 +1,367 @@
+package trasm;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import trasm.LineInfo.LineType;
+
+/**
+ * Таблица макросов (MACRO/ENDM).
+ *
+ * Строчки тела макроса разбираются (лексемы и форма) один раз - при
+ * определении. При вызове строчки без параметров используются как есть, в
+ * остальных лексемы параметров заменяются лексемами аргументов, и строчка
+ * только классифицируется заново: лексический анализ не повторяется. Текст
+ * развернутой строчки собирается из частей, на которые текст строчки тела
+ * разделен параметрами.
+ *
+ * Вызов - строчка, которая не подходит ни под одну форму и начинается с
+ * имени макроса: "name arg1, arg2". Метки в теле макроса не локальные,
+ * повторный вызов объявляет их заново (ошибка).
+ */
+class MacroTable {
+
+    /**
+     * Максимальная глубина вложенных вызовов
+     */
+    private static final int MAX_DEPTH = 16;
+
+    private static final int ENDM = LexicalAnalyzer.getKeywordId("endm");
+
+    /**
+     * Строчка тела макроса
+     */
+    private static class BodyLine {
+
+        /**
+         * Разбор строчки при определении
+         */
+        final ParsedLine parsed;
+        /**
+         * Строчка макроса для ошибок ("имя:номер строчки")
+         */
+        final String source;
+        /**
+         * Номер параметра для каждой лексемы (-1 - не параметр); null - в
+         * строчке нет параметров
+         */
+        final int[] lexemeParams;
+        /**
+         * Текст строчки между параметрами (на одну часть больше, чем
+         * параметров)
+         */
+        final String[] textParts;
+        /**
+         * Номера параметров в тексте
+         */
+        final int[] textParams;
+
+        BodyLine(ParsedLine parsed, String source, String[] params) {
+            this.parsed = parsed;
+            this.source = source;
+
+            int[] lexemeParams = new int[parsed.lexemes.length];
+            boolean hasParams = false;
+            for (int i = 0; i < lexemeParams.length; i++) {
+                LexemeInfo lexeme = parsed.lexemes[i];
+                lexemeParams[i] = lexeme.type == LexemeType.USER_IDENTIFIER ? indexOf(params, lexeme.value) : -1;
+                hasParams |= lexemeParams[i] >= 0;
+            }
+            if (!hasParams) {
+                this.lexemeParams = null;
+                this.textParts = null;
+                this.textParams = null;
+                return;
+            }
+            this.lexemeParams = lexemeParams;
+
+            // слова текста выделяются так же, как лексемы (до комментария)
+            String value = parsed.value;
+            ArrayList<String> parts = new ArrayList<>();
+            ArrayList<Integer> partParams = new ArrayList<>();
+            int partStart = 0;
+            int pos = 0;
+            while (pos < value.length() && value.charAt(pos) != ';') {
+                if (isSeparator(value.charAt(pos))) {
+                    pos++;
+                    continue;
+                }
+                int start = pos;
+                while (pos < value.length() && !isSeparator(value.charAt(pos)) && value.charAt(pos) != ';') {
+                    pos++;
+                }
+                int param = indexOf(params, value.substring(start, pos));
+                if (param >= 0) {
+                    parts.add(value.substring(partStart, start));
+                    partParams.add(param);
+                    partStart = pos;
+                }
+            }
+            parts.add(value.substring(partStart));
+
+            this.textParts = parts.toArray(new String[parts.size()]);
+            this.textParams = new int[partParams.size()];
+            for (int i = 0; i < textParams.length; i++) {
+                textParams[i] = partParams.get(i);
+            }
+        }
+
+        /**
+         * Строчка с подставленными аргументами
+         *
+         * @param args Лексемы аргументов
+         * @param argText Текст аргументов
+         * @return Разобранная строчка
+         */
+        ParsedLine expand(LexemeInfo[][] args, String[] argText) {
+            if (lexemeParams == null) {
+                return parsed;
+            }
+
+            ArrayList<LexemeInfo> lexemes = new ArrayList<>(parsed.lexemes.length + 4);
+            for (int i = 0; i < lexemeParams.length; i++) {
+                int param = lexemeParams[i];
+                if (param < 0) {
+                    lexemes.add(parsed.lexemes[i]);
+                } else if (param < args.length) {
+                    for (LexemeInfo lexeme : args[param]) {
+                        lexemes.add(lexeme);
+                    }
+                }
+            }
+
+            StringBuilder text = new StringBuilder(textParts[0]);
+            for (int i = 0; i < textParams.length; i++) {
+                if (textParams[i] < argText.length) {
+                    text.append(argText[textParams[i]]);
+                }
+                text.append(textParts[i + 1]);
+            }
+            return new ParsedLine(text.toString(), lexemes.toArray(new LexemeInfo[lexemes.size()]));
+        }
+    }
+
+    /**
+     * Макрос
+     */
+    private static class Macro {
+
+        final String name;
+        /**
+         * Параметры (в нижнем регистре)
+         */
+        final String[] params;
+        /**
+         * Номер строчки заголовка
+         */
+        final int lineNum;
+        final ArrayList<BodyLine> lines = new ArrayList<>();
+
+        Macro(String name, String[] params, int lineNum) {
+            this.name = name;
+            this.params = params;
+            this.lineNum = lineNum;
+        }
+    }
+
+    /**
+     * Развернутая строчка вызова
+     */
+    static class Expansion {
+
+        final ParsedLine parsed;
+        /**
+         * Строчка макроса ("имя:номер строчки")
+         */
+        final String sourceLine;
+
+        Expansion(ParsedLine parsed, String sourceLine) {
+            this.parsed = parsed;
+            this.sourceLine = sourceLine;
+        }
+    }
+
+    /**
+     * Макросы по именам (в нижнем регистре)
+     */
+    private final HashMap<String, Macro> macros = new HashMap<>();
+    /**
+     * Макрос, определение которого не закончено (null - вне определения)
+     */
+    private Macro current = null;
+
+    /**
+     * Удаляет все макросы
+     */
+    void reset() {
+        macros.clear();
+        current = null;
+    }
+
+    /**
+     * Номер строчки заголовка незаконченного определения
+     *
+     * @return Номер строчки или 0, если все определения закончены
+     */
+    int getOpenDefinition() {
+        return current == null ? 0 : current.lineNum;
+    }
+
+    private static boolean isSeparator(char c) {
+        return LexicalAnalyzer.isSpace(c) || LexicalAnalyzer.isOneSymbol(c);
+    }
+
+    private static int indexOf(String[] params, String value) {
+        for (int i = 0; i < params.length; i++) {
+            if (params[i].equalsIgnoreCase(value)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isEndm(ParsedLine parsed) {
+        return parsed.body.length == 1 && LexicalAnalyzer.getKeywordId(parsed.body[0].value) == ENDM;
+    }
+
+    /**
+     * Обрабатывает строчку исходного файла в первом проходе: строчки
+     * определений запоминаются, вызов разворачивается.
+     *
+     * @param parsed Разобранная строчка
+     * @param lineNum Номер строчки
+     * @param expansion Куда добавлять развернутые строчки вызова
+     * @return Строчка для трансляции на месте исходной: она сама, её копия
+     * без кода (определение или вызов) или копия с ошибкой
+     */
+    ParsedLine process(ParsedLine parsed, int lineNum, ArrayList<Expansion> expansion) {
+        if (current != null) {
+            return define(parsed, lineNum);
+        }
+        if (parsed.type == LineType.MACRO) {
+            return begin(parsed, lineNum);
+        }
+        Macro macro = find(parsed);
+        if (macro == null) {
+            return parsed;
+        }
+        return parsed.withType(expand(macro, parsed, 0, expansion) ? LineType.MACRO : LineType.ERROR_LINE, true);
+    }
+
+    /**
+     * Заголовок определения ("name MACRO p1, p2") вне определения
+     *
+     * @param parsed Строчка
+     * @param lineNum Номер строчки
+     * @return Строчка для трансляции
+     */
+    private ParsedLine begin(ParsedLine parsed, int lineNum) {
+        if (isEndm(parsed)) {
+            return parsed.withType(LineType.ERROR_LINE, true);
+        }
+        LexemeInfo[] body = parsed.body;
+        String[] params = new String[(body.length - 1) / 2];
+        for (int i = 0; i < params.length; i++) {
+            params[i] = body[2 + i * 2].value.toLowerCase();
+            if (indexOf(params, params[i]) < i) {
+                return parsed.withType(LineType.ERROR_LINE, false);
+            }
+        }
+        current = new Macro(body[0].value.toLowerCase(), params, lineNum);
+        return parsed.withType(LineType.MACRO, false);
+    }
+
+    /**
+     * Строчка внутри определения: строчка тела или ENDM. Вложенные
+     * определения не поддерживаются.
+     *
+     * @param parsed Строчка
+     * @param lineNum Номер строчки
+     * @return Строчка для трансляции
+     */
+    private ParsedLine define(ParsedLine parsed, int lineNum) {
+        if (parsed.type == LineType.MACRO) {
+            if (!isEndm(parsed)) {
+                return parsed.withType(LineType.ERROR_LINE, false);
+            }
+            macros.put(current.name, current);
+            current = null;
+        } else {
+            current.lines.add(new BodyLine(parsed, current.name + ":" + lineNum, current.params));
+        }
+        return parsed.withType(LineType.MACRO, false);
+    }
+
+    /**
+     * Макрос, который вызывает строчка
+     *
+     * @param parsed Строчка
+     * @return Макрос или null, если строчка не вызов
+     */
+    private Macro find(ParsedLine parsed) {
+        if (macros.isEmpty() || parsed.type != LineType.ERROR_LINE
+                || parsed.body.length == 0 || parsed.body[0].type != LexemeType.USER_IDENTIFIER) {
+            return null;
+        }
+        return macros.get(parsed.body[0].value.toLowerCase());
+    }
+
+    /**
+     * Разворачивает вызов (и вложенные вызовы)
+     *
+     * @param macro Макрос
+     * @param call Строчка вызова
+     * @param depth Глубина вызова
+     * @param expansion Куда добавлять развернутые строчки
+     * @return false, если аргументов больше, чем параметров, или вызовы
+     * вложены слишком глубоко
+     */
+    private boolean expand(Macro macro, ParsedLine call, int depth, ArrayList<Expansion> expansion) {
+        if (depth >= MAX_DEPTH) {
+            return false;
+        }
+
+        // аргументы - лексемы между запятыми после имени
+        LexemeInfo[] body = call.body;
+        ArrayList<LexemeInfo[]> argList = new ArrayList<>();
+        int start = 1;
+        for (int i = 1; i <= body.length; i++) {
+            if (i == body.length || (body[i].type == LexemeType.ONE_SYMBOL && body[i].value.equals(","))) {
+                if (body.length > 1) {
+                    LexemeInfo[] arg = new LexemeInfo[i - start];
+                    System.arraycopy(body, start, arg, 0, arg.length);
+                    argList.add(arg);
+                }
+                start = i + 1;
+            }
+        }
+        if (argList.size() > macro.params.length) {
+            return false;
+        }
+        LexemeInfo[][] args = argList.toArray(new LexemeInfo[argList.size()][]);
+        String[] argText = new String[args.length];
+        for (int i = 0; i < args.length; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int j = 0; j < args[i].length; j++) {
+                if (j > 0 && args[i][j - 1].type != LexemeType.ONE_SYMBOL && args[i][j].type != LexemeType.ONE_SYMBOL) {
+                    text.append(' ');
+                }
+                text.append(args[i][j].value);
+            }
+            argText[i] = text.toString();
+        }
+
+        for (BodyLine line : macro.lines) {
+            ParsedLine parsed = line.expand(args, argText);
+            Macro inner = find(parsed);
+            if (inner == null) {
+                expansion.add(new Expansion(parsed, line.source));
+                continue;
+            }
+            int at = expansion.size();
+            expansion.add(null);
+            boolean isCorrect = expand(inner, parsed, depth + 1, expansion);
+            expansion.set(at, new Expansion(parsed.withType(isCorrect ? LineType.MACRO : LineType.ERROR_LINE, true), line.source));
+        }
+        return true;
+    }
+}
@@ -0,0 +1,89 @@
+package trasm;
+
+import java.util.HashMap;
+
+/**
+ * Результаты разбора строчек предыдущей трансляции того же файла (режим
+ * наблюдения). Разбор строчки зависит только от ее текста и не изменяется,
+ * поэтому для неизмененных строчек используется готовый ParsedLine, заново
+ * разбираются только новые и измененные строчки.
+ *
+ * Во время трансляции предыдущие результаты только читаются (в том числе из
+ * нескольких потоков), новые сохраняются последовательно.
+ */
+class ParseCache {
+
+    /**
+     * Разбор предыдущей трансляции по тексту строчки
+     */
+    private HashMap<String, ParsedLine> previous = new HashMap<>();
+    /**
+     * Разбор текущей трансляции
+     */
+    private HashMap<String, ParsedLine> current = new HashMap<>();
+    /**
+     * Количество строчек текущей трансляции, разобранных заново
+     */
+    private int parsedCount = 0;
+    private int lineCount = 0;
+
+    /**
+     * Начинает новую трансляцию
+     */
+    void start() {
+        current = new HashMap<>(Math.max(16, previous.size() * 4 / 3));
+        parsedCount = 0;
+        lineCount = 0;
+    }
+
+    /**
+     * Разбирает строчку или возвращает разбор предыдущей трансляции
+     *
+     * @param line Исходная строчка
+     * @return Разбор строчки
+     */
+    ParsedLine parse(String line) {
+        ParsedLine parsed = previous.get(line);
+        return parsed != null ? parsed : new ParsedLine(line);
+    }
+
+    /**
+     * Сохраняет разбор строчки текущей трансляции (строчки передаются по
+     * порядку из одного потока)
+     *
+     * @param parsed Разбор строчки
+     */
+    void keep(ParsedLine parsed) {
+        lineCount++;
+        if (previous.get(parsed.value) != parsed) {
+            parsedCount++;
+        }
+        current.put(parsed.value, parsed);
+    }
+
+    /**
+     * Завершает трансляцию: ее разбор становится предыдущим
+     */
+    void finish() {
+        previous = current;
+        current = new HashMap<>();
+    }
+
+    /**
+     * Количество строчек последней трансляции, разобранных заново
+     *
+     * @return Количество строчек
+     */
+    int getParsedCount() {
+        return parsedCount;
+    }
+
+    /**
+     * Количество строчек последней трансляции
+     *
+     * @return Количество строчек
+     */
+    int getLineCount() {
+        return lineCount;
+    }
+}
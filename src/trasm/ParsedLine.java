@@ -0,0 +1,125 @@
+package trasm;
+
+import java.util.Arrays;
+import trasm.LineInfo.LineType;
+
+/**
+ * Результат разбора исходной строчки. Строчка лексически анализируется и
+ * классифицируется один раз, результат используется обоими проходами и всеми
+ * выходными файлами.
+ */
+class ParsedLine {
+
+    private static final String[] NO_LABELS = {};
+
+    /**
+     * Исходное значение строки
+     */
+    final String value;
+    /**
+     * Все лексемы строки
+     */
+    final LexemeInfo[] lexemes;
+    /**
+     * Метки перед командой ("label1: label2: cli")
+     */
+    final String[] labels;
+    /**
+     * Лексемы после меток и префикса LOCK - команда с операндами
+     */
+    final LexemeInfo[] body;
+    /**
+     * Есть ли перед командой префикс LOCK
+     */
+    final boolean isLocked;
+    /**
+     * Форма строки, см. LineClassifier
+     */
+    final int form;
+    /**
+     * Тип строки
+     */
+    final LineType type;
+
+    /**
+     * Разбирает строчку
+     *
+     * @param line Исходная строчка
+     */
+    ParsedLine(String line) {
+        this(line, LexicalAnalyzer.getLexemeInfo(line));
+    }
+
+    /**
+     * Классифицирует строчку с готовыми лексемами (развернутая строчка
+     * макроса)
+     *
+     * @param line Текст строчки
+     * @param lexemes Лексемы строчки
+     */
+    ParsedLine(String line, LexemeInfo[] lexemes) {
+        value = line;
+        this.lexemes = lexemes;
+
+        int[] kinds = LineClassifier.getKinds(lexemes);
+
+        int start = 0;
+        while (LineClassifier.hasLabelPrefix(kinds, start)) {
+            start += 2;
+        }
+        isLocked = LineClassifier.hasLockPrefix(kinds, start);
+        if (isLocked) {
+            // форма определяется по команде без префикса
+            int[] unlocked = Arrays.copyOf(kinds, kinds.length - 1);
+            System.arraycopy(kinds, start + 1, unlocked, start, kinds.length - start - 1);
+            form = LineClassifier.classify(LineClassifier.normalize(unlocked));
+        } else {
+            form = LineClassifier.classify(LineClassifier.normalize(kinds));
+        }
+
+        if (start == 0) {
+            labels = NO_LABELS;
+        } else {
+            labels = new String[start / 2];
+            for (int i = 0; i < labels.length; i++) {
+                labels[i] = lexemes[i * 2].value;
+            }
+        }
+        int bodyStart = isLocked ? start + 1 : start;
+        body = bodyStart == 0 ? lexemes : Arrays.copyOfRange(lexemes, bodyStart, lexemes.length);
+        type = LineClassifier.getLineType(form, body);
+    }
+
+    private ParsedLine(ParsedLine line, String[] labels, LexemeInfo[] body, boolean isLocked, LineType type) {
+        this.value = line.value;
+        this.lexemes = line.lexemes;
+        this.labels = labels;
+        this.body = body;
+        this.isLocked = isLocked;
+        this.form = line.form;
+        this.type = type;
+    }
+
+    /**
+     * Копия строчки с другим типом (строчки определений и вызовов
+     * макросов)
+     *
+     * @param type Тип строки
+     * @param keepLabels Объявлять ли метки строчки (без них все лексемы
+     * считаются командой)
+     * @return Копия строчки
+     */
+    ParsedLine withType(LineType type, boolean keepLabels) {
+        return keepLabels ? new ParsedLine(this, labels, body, isLocked, type)
+                : new ParsedLine(this, NO_LABELS, lexemes, false, type);
+    }
+
+    /**
+     * Пустая строчка или только комментарий
+     *
+     * @return Ответ
+     */
+    boolean isBlank() {
+        return lexemes.length == 0 || (lexemes.length == 1 && lexemes[0].value.isEmpty());
+    }
+}
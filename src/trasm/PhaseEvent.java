@@ -0,0 +1,48 @@
+package trasm;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Событие JFR: этап трансляции (интервал от begin до commit). Когда запись
+ * не ведется, begin и commit ничего не делают.
+ */
+@Name("trasm.Phase")
+@Label("Translation Phase")
+@Category("Trasm")
+@Description("Phase of Translator.makeLST")
+class PhaseEvent extends Event {
+
+    /*
+     * Этапы
+     */
+    static final String PASS_ONE = "passOne";
+    static final String FIRST_PASS_LISTING = "firstPassListing";
+    static final String LAYOUT = "layout";
+    static final String PASS_TWO = "passTwo";
+    static final String LISTING = "listing";
+    static final String OUTPUTS = "outputs";
+
+    @Label("File")
+    String file;
+    @Label("Phase")
+    String phase;
+
+    /**
+     * Начинает этап
+     *
+     * @param file Исходный файл
+     * @param phase Этап
+     * @return Событие (завершается вызовом commit)
+     */
+    static PhaseEvent begin(String file, String phase) {
+        PhaseEvent event = new PhaseEvent();
+        event.file = file;
+        event.phase = phase;
+        event.begin();
+        return event;
+    }
+}
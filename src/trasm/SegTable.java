@@ -12,32 +12,39 @@ class SegTable extends AbstractTable {
     /**
      * Текущий сегмент
      */
-    private static String currentSegment = SegTable.NULL_SEG_NAME;
+    private String currentSegment = SegTable.NULL_SEG_NAME;
     /**
      * Текущее смещение
      */
-    private static int currentAddress = 0;
+    private int currentAddress = 0;
     /**
      * Состояние Assume-а
      */
     private SegInfo[] assumeSegs = {new SegInfo(), new SegInfo(), new SegInfo(),
         new SegInfo(), new SegInfo(), new SegInfo()}; //что бы не инициализировать
-    private static SegTable instance = null;
-
-    private SegTable() {
-
-    }
+    /**
+     * Код, записанный вне сегментов
+     */
+    private final CodeBuffer nullSegCode = new CodeBuffer();
+    /**
+     * Буфер сегмента, которому принадлежит текущее смещение (после ENDS
+     * смещение продолжает отсчитываться от закрытого сегмента)
+     */
+    private CodeBuffer addressCode = nullSegCode;
 
     /**
-     * Возвращает единственный экземпляр таблицы сегментов
-     *
-     * @return Таблица сегментов
+     * Возвращает таблицу в начальное состояние
      */
-    static SegTable getInstance() {
-        if (instance == null) {
-            instance = new SegTable();
+    @Override
+    void reset() {
+        super.reset();
+        currentSegment = NULL_SEG_NAME;
+        currentAddress = 0;
+        for (int i = 0; i < assumeSegs.length; i++) {
+            assumeSegs[i] = new SegInfo();
         }
-        return instance;
+        nullSegCode.reset();
+        addressCode = nullSegCode;
     }
 
     /**
@@ -58,9 +65,17 @@ class SegTable extends AbstractTable {
          */
         private final String name;
         /**
-         * Размер сегмента
+         * Размер сегмента в первом проходе
          */
         private int size;
+        /**
+         * Количество элементов переменного размера на момент установки размера
+         */
+        private int sizeItems;
+        /**
+         * Машинный код сегмента
+         */
+        private CodeBuffer code = null;
 
         public SegInfo() {
             name = NULL_SEG_NAME;
@@ -79,6 +94,7 @@ class SegTable extends AbstractTable {
          */
         public void setSize(int size) {
             this.size = size;
+            this.sizeItems = getCode().getItemCount();
         }
 
         /**
@@ -87,7 +103,19 @@ class SegTable extends AbstractTable {
          * @return Размер сегмента
          */
         public int getSize() {
-            return size;
+            return code == null ? size : size + code.getShift(sizeItems);
+        }
+
+        /**
+         * Возвращает буфер машинного кода сегмента
+         *
+         * @return Буфер кода
+         */
+        public CodeBuffer getCode() {
+            if (code == null) {
+                code = new CodeBuffer();
+            }
+            return code;
         }
 
         /**
@@ -107,7 +135,14 @@ class SegTable extends AbstractTable {
          */
         @Override
         public String toString() {
-            return String.format("%1$-8s %2$-4s\n", name, IOLib.toHex(size, 4));
+            return appendTo(new StringBuilder()).toString();
+        }
+
+        @Override
+        public StringBuilder appendTo(StringBuilder out) {
+            int start = out.length();
+            IOLib.padRight(out.append(name), start, 8).append(' ');
+            return IOLib.appendHex(out, getSize(), 4).append('\n');
         }
     }
 
@@ -127,6 +162,38 @@ class SegTable extends AbstractTable {
      */
     void setCurrentSegment(String newSegment) {
         currentSegment = newSegment;
+        SegInfo info = (SegInfo) get(newSegment);
+        if (info != null) {
+            addressCode = info.getCode();
+        }
+    }
+
+    /**
+     * Возвращает все сегменты в порядке объявления
+     *
+     * @return Сегменты
+     */
+    SegInfo[] getSegments() {
+        return list.toArray(new SegInfo[list.size()]);
+    }
+
+    /**
+     * Возвращает буфер машинного кода, которому принадлежит текущее смещение
+     *
+     * @return Буфер кода
+     */
+    CodeBuffer getCode() {
+        return addressCode;
+    }
+
+    /**
+     * Перемещает код всех сегментов под новые размеры элементов
+     */
+    void applyGrowth() {
+        nullSegCode.applyGrowth();
+        for (TableItem item : list) {
+            ((SegInfo) item).getCode().applyGrowth();
+        }
     }
 
     /**
@@ -154,31 +221,24 @@ class SegTable extends AbstractTable {
      * @param size Новый размер сегмента
      */
     void setSize(String segment, int size) {
-        if (isExist(segment)) {
-            for (int i = 0; i < list.size(); i++) {
-                if (list.get(i).getName().equalsIgnoreCase(segment)) {
-                    SegInfo info = (SegInfo) list.get(i);
-                    info.setSize(size);
-                    list.set(i, info);
-                    break;
-                }
-            }
+        SegInfo info = (SegInfo) get(segment);
+        if (info != null) {
+            info.setSize(size);
         }
     }
 
     /**
      * Assume
      *
-     * @param assume Строчка для Assume-а
+     * @param lexemes Лексемы строчки Assume-а
      */
-    void assume(String assume) {
-        LexemeInfo[] lexemes = LexicalAnalyzer.getLexemeInfo(assume.toUpperCase());
+    void assume(LexemeInfo[] lexemes) {
         int index = 0;
 
         String segName = NULL_SEG_NAME;
         for (LexemeInfo lexemeInfo : lexemes) {
             if (lexemeInfo.type == LexemeType.REGISTER_SEGMENT) {
-                index = SegRegister.valueOf(lexemeInfo.value).ordinal();
+                index = SegRegister.valueOf(lexemeInfo.value.toUpperCase()).ordinal();
             } else if (lexemeInfo.type == LexemeType.USER_IDENTIFIER) {
                 segName = lexemeInfo.value.toUpperCase();
             } else if (lexemeInfo.value.equals(",")) {
@@ -196,10 +256,12 @@ class SegTable extends AbstractTable {
      */
     String assumeToString() {
         StringBuilder outStr;
-        outStr = new StringBuilder(String.format("Сегмент  Регістр\n"));
+        outStr = new StringBuilder("Сегмент  Регістр\n");
 
         for (SegRegister segReg : SegRegister.values()) {
-            outStr = outStr.append(String.format("%1$-8s %2$s\n", assumeSegs[segReg.ordinal()].name, segReg.toString()));
+            int start = outStr.length();
+            IOLib.padRight(outStr.append(assumeSegs[segReg.ordinal()].name), start, 8);
+            outStr.append(' ').append(segReg.toString()).append('\n');
         }
 
         return outStr.toString();
@@ -212,8 +274,20 @@ class SegTable extends AbstractTable {
      * @return Сегмент лежащий в этом регистре
      */
     SegRegister getSegmentReg(String segment) {
+        return getSegmentReg(segment, assumeSegs);
+    }
+
+    /**
+     * Возвращает сегмент который "лежал" в заданном регистре при заданном
+     * состоянии Assume-а
+     *
+     * @param segment Сегментный регистр
+     * @param assumeState Состояние Assume-а (см. getAssumeState)
+     * @return Сегмент лежащий в этом регистре
+     */
+    static SegRegister getSegmentReg(String segment, SegInfo[] assumeState) {
         for (SegRegister segReg : SegRegister.values()) {
-            SegInfo segInfo = assumeSegs[segReg.ordinal()];
+            SegInfo segInfo = assumeState[segReg.ordinal()];
             if (segInfo.name.equalsIgnoreCase(segment)) {
                 return segReg;
             }
@@ -221,6 +295,15 @@ class SegTable extends AbstractTable {
         return null;
     }
 
+    /**
+     * Возвращает копию текущего состояния Assume-а
+     *
+     * @return Состояние Assume-а
+     */
+    SegInfo[] getAssumeState() {
+        return assumeSegs.clone();
+    }
+
     /**
      * Возвращает таблицу сегментов в удобном для чтения виде
      *
@@ -232,7 +315,7 @@ class SegTable extends AbstractTable {
         outStr = new StringBuilder("Сегмент  Розмір\n");
 
         for (TableItem tableItem : list) {
-            outStr = outStr.append(tableItem.toString());
+            tableItem.appendTo(outStr);
         }
 
         return outStr.toString();
@@ -0,0 +1,89 @@
+package trasm;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Событие JFR: строчка, первый проход которой (конструктор LineInfo) или
+ * перекодирование во втором проходе заняли больше порога. Порог - настройка
+ * threshold события, например
+ * -XX:StartFlightRecording:trasm.SlowLine#threshold=100us (по умолчанию 1
+ * мс).
+ *
+ * Включено ли событие, проверяется один раз на трансляцию (или на часть
+ * второго прохода), поэтому без записи строчки не измеряются.
+ */
+@Name("trasm.SlowLine")
+@Label("Slow Line")
+@Category("Trasm")
+@Description("Source line whose LineInfo construction or second-pass encoding exceeded the threshold")
+@Threshold("1 ms")
+class SlowLineEvent extends Event {
+
+    /*
+     * Этапы
+     */
+    static final String PASS_ONE = "passOne";
+    static final String PASS_TWO = "passTwo";
+
+    @Label("File")
+    String file;
+    @Label("Phase")
+    String phase;
+    @Label("Line Number")
+    int lineNumber;
+    @Label("Line Type")
+    String lineType;
+    @Label("Lexeme Count")
+    int lexemeCount;
+    @Label("Symbol Table Size")
+    int symbolCount;
+
+    /**
+     * Включено ли событие в текущей записи JFR
+     *
+     * @return Ответ
+     */
+    static boolean isTraced() {
+        return EventType.getEventType(SlowLineEvent.class).isEnabled();
+    }
+
+    /**
+     * Начинает измерение строчки
+     *
+     * @return Событие
+     */
+    static SlowLineEvent start() {
+        SlowLineEvent event = new SlowLineEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Заканчивает измерение строчки и записывает событие, если строчка
+     * обрабатывалась дольше порога
+     *
+     * @param file Исходный файл
+     * @param phase Этап
+     * @param lineNumber Номер строчки
+     * @param info Строчка
+     * @param idTable Таблица идентификаторов
+     */
+    void finish(String file, String phase, int lineNumber, LineInfo info, IdTable idTable) {
+        end();
+        if (shouldCommit()) {
+            this.file = file;
+            this.phase = phase;
+            this.lineNumber = lineNumber;
+            this.lineType = info.type.name();
+            this.lexemeCount = info.parsed.lexemes.length;
+            this.symbolCount = idTable.size();
+            commit();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package trasm;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Построчное чтение исходного файла. Файл отображается в память окнами,
+ * границы строк ищутся по байтам ("\n", "\r\n" или "\r"), каждая строчка
+ * декодируется в заданной кодировке. Кодировка должна совпадать с ASCII в
+ * управляющих символах (UTF-8, cp1251, cp866 и т.п.).
+ */
+class SourceReader implements Closeable {
+
+    /**
+     * Размер окна отображения файла
+     */
+    private static final long WINDOW_SIZE = 64L << 20;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final Charset charset;
+    private final long windowSize;
+    /**
+     * Текущее окно и смещение в файле следующего окна
+     */
+    private MappedByteBuffer window;
+    private long nextWindow = 0;
+    /**
+     * Байты текущей строчки
+     */
+    private byte[] line = new byte[256];
+
+    /**
+     * Открывает файл
+     *
+     * @param filePath Путь к файлу
+     * @param charset Кодировка файла
+     * @throws FileNotFoundException
+     * @throws IOException
+     */
+    SourceReader(String filePath, Charset charset) throws FileNotFoundException, IOException {
+        this(filePath, charset, WINDOW_SIZE);
+    }
+
+    /**
+     * Открывает файл с заданным размером окна
+     *
+     * @param filePath Путь к файлу
+     * @param charset Кодировка файла
+     * @param windowSize Размер окна отображения в байтах
+     * @throws FileNotFoundException
+     * @throws IOException
+     */
+    SourceReader(String filePath, Charset charset, long windowSize) throws FileNotFoundException, IOException {
+        this.channel = new FileInputStream(filePath).getChannel();
+        this.fileSize = channel.size();
+        this.charset = charset;
+        this.windowSize = windowSize;
+
+        if (charset.equals(StandardCharsets.UTF_8)) {
+            ByteBuffer bom = ByteBuffer.allocate(3);
+            if (channel.read(bom, 0) == bom.capacity()
+                    && bom.get(0) == (byte) 0xEF && bom.get(1) == (byte) 0xBB && bom.get(2) == (byte) 0xBF) {
+                nextWindow = 3;
+            }
+        }
+        mapNextWindow();
+    }
+
+    /**
+     * Отображает следующее окно файла
+     *
+     * @return false, если файл закончился
+     * @throws IOException
+     */
+    private boolean mapNextWindow() throws IOException {
+        if (window != null && nextWindow >= fileSize) {
+            return false;
+        }
+        long length = Math.min(windowSize, fileSize - nextWindow);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, nextWindow, length);
+        nextWindow += length;
+        return length > 0;
+    }
+
+    /**
+     * Есть ли непрочитанные байты (при необходимости отображает следующее
+     * окно)
+     *
+     * @return Ответ
+     * @throws IOException
+     */
+    private boolean hasRemaining() throws IOException {
+        return window.hasRemaining() || (mapNextWindow() && window.hasRemaining());
+    }
+
+    /**
+     * Читает следующую строчку (без символов конца строки)
+     *
+     * @return Строчка или null, если файл закончился
+     * @throws IOException
+     */
+    String nextLine() throws IOException {
+        if (!hasRemaining()) {
+            return null;
+        }
+
+        // строчка может продолжаться в следующем окне
+        int length = 0;
+        while (hasRemaining()) {
+            int start = window.position();
+            int end = start;
+            int limit = window.limit();
+            while (end < limit && window.get(end) != '\n' && window.get(end) != '\r') {
+                end++;
+            }
+
+            if (length + end - start > line.length) {
+                line = Arrays.copyOf(line, Math.max(line.length * 2, length + end - start));
+            }
+            window.get(line, length, end - start);
+            length += end - start;
+
+            if (end < limit) {
+                if (window.get() == '\r' && hasRemaining() && window.get(window.position()) == '\n') {
+                    window.get();
+                }
+                break;
+            }
+        }
+        return new String(line, 0, length, charset);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
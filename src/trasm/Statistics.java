@@ -0,0 +1,258 @@
+package trasm;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import trasm.SegTable.SegInfo;
+
+/**
+ * Статистика трансляции (опция -s): время этапов и счетчики.
+ *
+ * Время считается "кругами": lap относит время с предыдущего вызова к
+ * заданному этапу. Этапы, которые чередуются (чтение и разбор блоков,
+ * формирование и запись листинга), разделяются на границах блоков и буферов
+ * записи, а не на каждой строчке. Процессорное время - время потока
+ * трансляции и потоков fork-join, которые выполняли ее задачи.
+ */
+class Statistics {
+
+    /**
+     * Этапы трансляции
+     */
+    static enum Phase {
+
+        READ("Читання", "read"),
+        PASS_ONE("Перший прохід", "passOne"),
+        PASS_TWO("Другий прохід", "passTwo"),
+        RENDER("Формування лістингу", "render"),
+        WRITE("Запис", "write");
+
+        private final String title, key;
+
+        private Phase(String title, String key) {
+            this.title = title;
+            this.key = key;
+        }
+    }
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean HAS_CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported()
+            && THREADS.isThreadCpuTimeEnabled();
+
+    /**
+     * Время этапов, нс (потоки fork-join добавляют только процессорное)
+     */
+    private final long[] wallTime = new long[Phase.values().length];
+    private final AtomicLongArray cpuTime = new AtomicLongArray(Phase.values().length);
+    /**
+     * Начало текущего круга
+     */
+    private long lapWall, lapCpu;
+
+    /*
+     * Счетчики
+     */
+    long lineCount = 0;
+    long lexemeCount = 0;
+    /**
+     * Поиски в таблице идентификаторов (второй проход может искать из
+     * нескольких потоков)
+     */
+    final LongAdder symbolLookups = new LongAdder();
+    long symbolInserts = 0;
+    /**
+     * Переходы, удлиненные при выравнивании
+     */
+    long relaxedJumps = 0;
+    /**
+     * Переходы, записанные заново во втором проходе
+     */
+    long reencodedJumps = 0;
+    private int errorCount = 0;
+    private final ArrayList<SegInfo> segments = new ArrayList<>();
+
+    /**
+     * Начинает измерение (первый круг)
+     */
+    Statistics() {
+        lapWall = System.nanoTime();
+        lapCpu = getThreadCpuTime();
+    }
+
+    /**
+     * Процессорное время текущего потока
+     *
+     * @return Время, нс (0, если JVM его не измеряет)
+     */
+    static long getThreadCpuTime() {
+        return HAS_CPU_TIME ? THREADS.getCurrentThreadCpuTime() : 0;
+    }
+
+    /**
+     * Относит время с предыдущего круга к этапу (только из потока
+     * трансляции)
+     *
+     * @param phase Этап
+     */
+    void lap(Phase phase) {
+        long wall = System.nanoTime();
+        long cpu = getThreadCpuTime();
+        wallTime[phase.ordinal()] += wall - lapWall;
+        cpuTime.addAndGet(phase.ordinal(), cpu - lapCpu);
+        lapWall = wall;
+        lapCpu = cpu;
+    }
+
+    /**
+     * Добавляет процессорное время задачи fork-join. Задачи, которые
+     * выполнил сам поток трансляции, уже входят в его круг.
+     *
+     * @param phase Этап
+     * @param start Процессорное время потока в начале задачи
+     */
+    void addTaskTime(Phase phase, long start) {
+        if (Thread.currentThread() instanceof ForkJoinWorkerThread) {
+            cpuTime.addAndGet(phase.ordinal(), getThreadCpuTime() - start);
+        }
+    }
+
+    /**
+     * Запоминает итоги трансляции (ошибки и размеры сегментов)
+     *
+     * @param translation Трансляция
+     */
+    void finish(Translation translation) {
+        errorCount = translation.errors.getCount();
+        segments.clear();
+        for (SegInfo segInfo : translation.segTable.getSegments()) {
+            segments.add(segInfo);
+        }
+    }
+
+    private long getTotalWallTime() {
+        long total = 0;
+        for (long time : wallTime) {
+            total += time;
+        }
+        return total;
+    }
+
+    private long getTotalCpuTime() {
+        long total = 0;
+        for (int i = 0; i < cpuTime.length(); i++) {
+            total += cpuTime.get(i);
+        }
+        return total;
+    }
+
+    private long getLinesPerSecond() {
+        long total = getTotalWallTime();
+        return total == 0 ? 0 : lineCount * 1000000000L / total;
+    }
+
+    private static String toMillis(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1e6);
+    }
+
+    private static StringBuilder appendTimeRow(StringBuilder out, String title, long wall, long cpu) {
+        int start = out.length();
+        IOLib.padRight(out.append(title), start, 20);
+        start = out.length();
+        IOLib.padRight(out.append(toMillis(wall)), start, 12);
+        return out.append(toMillis(cpu)).append('\n');
+    }
+
+    /**
+     * Отчет для печати
+     *
+     * @return Строка для печати
+     */
+    String getStringToPrint() {
+        StringBuilder out = new StringBuilder("Статистика трансляції\n");
+        int start = out.length();
+        IOLib.padRight(out.append("Етап"), start, 20);
+        start = out.length();
+        IOLib.padRight(out.append("Час, мс"), start, 12).append("CPU, мс\n");
+        for (Phase phase : Phase.values()) {
+            appendTimeRow(out, phase.title, wallTime[phase.ordinal()], cpuTime.get(phase.ordinal()));
+        }
+        appendTimeRow(out, "Усього", getTotalWallTime(), getTotalCpuTime());
+
+        out.append("Рядків: ").append(lineCount).append(", лексем: ").append(lexemeCount).append('\n');
+        out.append("Пошуків ідентифікаторів: ").append(symbolLookups.sum())
+                .append(", додано ідентифікаторів: ").append(symbolInserts).append('\n');
+        out.append("Переходів подовжено: ").append(relaxedJumps)
+                .append(", перекодовано у другому проході: ").append(reencodedJumps).append('\n');
+        out.append("Помилок: ").append(errorCount).append('\n');
+        out.append("Швидкість: ").append(getLinesPerSecond()).append(" рядків/с\n");
+
+        out.append("Сегмент  Байтів\n");
+        for (SegInfo segInfo : segments) {
+            start = out.length();
+            IOLib.padRight(out.append(segInfo.getName()), start, 8).append(' ').append(segInfo.getSize()).append('\n');
+        }
+        return out.toString();
+    }
+
+    /**
+     * Добавляет строку JSON в кавычках
+     *
+     * @param out Куда добавлять
+     * @param value Строка
+     * @return out
+     */
+    private static StringBuilder appendJsonString(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                IOLib.appendHex(out.append("\\u"), c, 4);
+            } else {
+                out.append(c);
+            }
+        }
+        return out.append('"');
+    }
+
+    /**
+     * Отчет в формате JSON (время в миллисекундах)
+     *
+     * @param asmFilePath Исходный файл
+     * @param options Опции генерации
+     * @return Текст JSON
+     */
+    String toJson(String asmFilePath, String options) {
+        StringBuilder out = new StringBuilder("{\n  \"file\": ");
+        appendJsonString(out, asmFilePath).append(",\n  \"options\": ");
+        appendJsonString(out, options).append(",\n  \"phases\": {\n");
+        for (Phase phase : Phase.values()) {
+            out.append("    \"").append(phase.key).append("\": {\"wallMs\": ").append(toMillis(wallTime[phase.ordinal()]))
+                    .append(", \"cpuMs\": ").append(toMillis(cpuTime.get(phase.ordinal()))).append("},\n");
+        }
+        out.append("    \"total\": {\"wallMs\": ").append(toMillis(getTotalWallTime()))
+                .append(", \"cpuMs\": ").append(toMillis(getTotalCpuTime())).append("}\n  },\n");
+
+        out.append("  \"counters\": {\n");
+        out.append("    \"lines\": ").append(lineCount).append(",\n");
+        out.append("    \"lexemes\": ").append(lexemeCount).append(",\n");
+        out.append("    \"symbolLookups\": ").append(symbolLookups.sum()).append(",\n");
+        out.append("    \"symbolInserts\": ").append(symbolInserts).append(",\n");
+        out.append("    \"relaxedJumps\": ").append(relaxedJumps).append(",\n");
+        out.append("    \"reencodedJumps\": ").append(reencodedJumps).append(",\n");
+        out.append("    \"errors\": ").append(errorCount).append("\n  },\n");
+        out.append("  \"linesPerSecond\": ").append(getLinesPerSecond()).append(",\n");
+
+        out.append("  \"segments\": [");
+        for (int i = 0; i < segments.size(); i++) {
+            out.append(i == 0 ? "\n    {\"name\": " : ",\n    {\"name\": ");
+            appendJsonString(out, segments.get(i).getName()).append(", \"bytes\": ").append(segments.get(i).getSize()).append('}');
+        }
+        return out.append(segments.isEmpty() ? "]\n}\n" : "\n  ]\n}\n").toString();
+    }
+}
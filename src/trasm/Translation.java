@@ -0,0 +1,64 @@
+package trasm;
+
+import java.util.ArrayList;
+
+/**
+ * Состояние одной трансляции: таблицы сегментов и идентификаторов, список
+ * ошибок и текущий проход. Передается строчкам и таблицам вместо глобальных
+ * переменных, поэтому разные трансляции могут выполняться одновременно в
+ * разных потоках. После reset() контекст можно использовать снова.
+ */
+class Translation {
+
+    /**
+     * Список ошибок (и номер текущей строки)
+     */
+    final ErrorList errors = new ErrorList();
+    /**
+     * Таблица сегментов
+     */
+    final SegTable segTable = new SegTable();
+    /**
+     * Таблица идентификаторов
+     */
+    final IdTable idTable = new IdTable(this);
+    /**
+     * Таблица макросов
+     */
+    final MacroTable macros = new MacroTable();
+    /**
+     * Флаг первого/второго прохода
+     */
+    boolean isSecondPass = false;
+    /**
+     * Разбор строчек предыдущей трансляции того же файла (режим
+     * наблюдения), сохраняется после reset(); null - без кэша
+     */
+    ParseCache parseCache = null;
+    /**
+     * Включенные файлы (INCLUDE)
+     */
+    final ArrayList<IncludeCache.IncludeFile> includes = new ArrayList<>();
+    /**
+     * Файлы, записанные трансляцией (листинг, образы сегментов и т.д.)
+     */
+    final ArrayList<String> outputFiles = new ArrayList<>();
+    /**
+     * Статистика трансляции (опция -s); null - не собирается
+     */
+    Statistics stats = null;
+
+    /**
+     * Возвращает контекст в начальное состояние
+     */
+    void reset() {
+        errors.reset();
+        segTable.reset();
+        idTable.reset();
+        macros.reset();
+        isSecondPass = false;
+        includes.clear();
+        outputFiles.clear();
+        stats = null;
+    }
+}
@@ -0,0 +1,316 @@
+package trasm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Дисковый кэш результатов трансляции. Ключ - хэш (SHA-256) версии формата,
+ * опций, абсолютных путей и содержимого исходного файла (включаемые файлы
+ * ищутся относительно каталога исходного, поэтому одинаковые файлы в разных
+ * каталогах - разные записи). Запись кэша хранит все
+ * выходные файлы трансляции, сообщения и количество ошибок; при попадании
+ * файлы восстанавливаются без трансляции (вместе с датой генерации в
+ * заголовке листинга). Запись хранит также время изменения и размер
+ * включенных файлов (INCLUDE) и не используется, если они изменились.
+ * Трансляция со статистикой (опция -s) не кэшируется.
+ *
+ * Размер кэша ограничен: после записи удаляются давно не использованные
+ * записи (время использования - время изменения файла записи). Записи другой
+ * версии формата или поврежденные записи не используются и удаляются.
+ */
+class TranslationCache {
+
+    /**
+     * Версия формата записи (меняется при изменении формата или вывода
+     * транслятора)
+     */
+    static final int FORMAT_VERSION = 4;
+    /**
+     * Размер кэша по умолчанию, байт
+     */
+    static final long DEFAULT_MAX_SIZE = 512L << 20;
+
+    private static final int MAGIC = 0x5452534D; // "TRSM"
+    private static final String ENTRY_SUFFIX = ".cache";
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    /**
+     * Наибольший размер сообщений в записи; большая длина означает
+     * поврежденную запись
+     */
+    private static final int MAX_MESSAGES_SIZE = 256 << 20;
+
+    private final Path dir;
+    private final long maxSize;
+
+    /**
+     * Открывает кэш (каталог создается при необходимости)
+     *
+     * @param dir Каталог кэша
+     * @param maxSize Максимальный размер кэша, байт
+     * @throws IOException
+     */
+    TranslationCache(String dir, long maxSize) throws IOException {
+        this.dir = Files.createDirectories(Paths.get(dir));
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Генерирует файл листинга (как Translator.makeLST) или восстанавливает
+     * результат из кэша
+     *
+     * @param asmFilePath Пусть к исходному файлу
+     * @param lstFilePath Пусть для файла листинга
+     * @param options Дополнительные опции генерации
+     * @param translation Контекст трансляции
+     * @param out Куда печатать сообщения
+     * @return Количество ошибок
+     * @throws IOException
+     */
+    int makeLST(String asmFilePath, String lstFilePath, String options, Translation translation, PrintStream out) throws IOException {
+        // время этапов из кэша не имеет смысла
+        if (options.contains("s")) {
+            return Translator.makeLST(asmFilePath, lstFilePath, options, translation, out);
+        }
+        Path entry = dir.resolve(getKey(asmFilePath, lstFilePath, options) + ENTRY_SUFFIX);
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry), COPY_BUFFER_SIZE))) {
+            if (in.readInt() == MAGIC && in.readInt() == FORMAT_VERSION && isIncludesUpToDate(in)) {
+                int errorCount = restore(in, out);
+                Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+                return errorCount;
+            }
+        } catch (NoSuchFileException ex) {
+            // промах
+        } catch (EOFException | StreamCorruptedException | RuntimeException ex) {
+            // поврежденная запись
+        }
+        Files.deleteIfExists(entry);
+
+        ByteArrayOutputStream messages = new ByteArrayOutputStream();
+        int errorCount;
+        try (PrintStream buffer = new PrintStream(messages, false, "UTF-8")) {
+            errorCount = Translator.makeLST(asmFilePath, lstFilePath, options, translation, buffer);
+        }
+        out.print(messages.toString("UTF-8"));
+        out.flush();
+
+        store(entry, errorCount, messages.toByteArray(), translation.includes, translation.outputFiles);
+        evict();
+        return errorCount;
+    }
+
+    /**
+     * Ключ записи
+     *
+     * @param asmFilePath Пусть к исходному файлу
+     * @param lstFilePath Пусть для файла листинга
+     * @param options Опции генерации
+     * @return Хэш в hex виде
+     * @throws FileNotFoundException
+     * @throws IOException
+     */
+    private static String getKey(String asmFilePath, String lstFilePath, String options) throws FileNotFoundException, IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new AssertionError(ex);
+        }
+        Path asmPath = Paths.get(Translator.getAsmPath(asmFilePath)).toAbsolutePath().normalize();
+        Path lstPath = Paths.get(Translator.getLstPath(lstFilePath)).toAbsolutePath().normalize();
+        String header = FORMAT_VERSION + "\n" + options + "\n" + asmPath + "\n" + lstPath + "\n";
+        digest.update(header.getBytes(StandardCharsets.UTF_8));
+
+        try (InputStream in = new FileInputStream(asmPath.toFile())) {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int length;
+            while ((length = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, length);
+            }
+        }
+
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) {
+            IOLib.appendHex(key, b, 2);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Не изменились ли включенные файлы записи
+     *
+     * @param in Запись (после заголовка)
+     * @return Ответ
+     * @throws IOException
+     */
+    private static boolean isIncludesUpToDate(DataInputStream in) throws IOException {
+        boolean isUpToDate = true;
+        int includeCount = in.readInt();
+        for (int i = 0; i < includeCount; i++) {
+            Path path = Paths.get(in.readUTF());
+            long modified = in.readLong();
+            long size = in.readLong();
+            try {
+                isUpToDate &= Files.getLastModifiedTime(path).toMillis() == modified && Files.size(path) == size;
+            } catch (IOException ex) {
+                isUpToDate = false;
+            }
+        }
+        return isUpToDate;
+    }
+
+    /**
+     * Восстанавливает выходные файлы и сообщения из записи
+     *
+     * @param in Запись (после заголовка)
+     * @param out Куда печатать сообщения
+     * @return Количество ошибок
+     * @throws IOException
+     */
+    private static int restore(DataInputStream in, PrintStream out) throws IOException {
+        int errorCount = in.readInt();
+        int messagesSize = in.readInt();
+        if (messagesSize < 0 || messagesSize > MAX_MESSAGES_SIZE) {
+            throw new StreamCorruptedException("Розмір повідомлень: " + messagesSize);
+        }
+        byte[] messages = new byte[messagesSize];
+        in.readFully(messages);
+
+        int fileCount = in.readInt();
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        for (int i = 0; i < fileCount; i++) {
+            String path = in.readUTF();
+            long length = in.readLong();
+            try (OutputStream file = Files.newOutputStream(Paths.get(path))) {
+                while (length > 0) {
+                    int count = (int) Math.min(length, buffer.length);
+                    in.readFully(buffer, 0, count);
+                    file.write(buffer, 0, count);
+                    length -= count;
+                }
+            }
+        }
+
+        out.print(new String(messages, StandardCharsets.UTF_8));
+        out.flush();
+        return errorCount;
+    }
+
+    /**
+     * Сохраняет запись (через временный файл, чтобы запись не была видна
+     * недописанной)
+     *
+     * @param entry Файл записи
+     * @param errorCount Количество ошибок
+     * @param messages Сообщения
+     * @param includes Включенные файлы
+     * @param outputFiles Выходные файлы
+     * @throws IOException
+     */
+    private void store(Path entry, int errorCount, byte[] messages, List<IncludeCache.IncludeFile> includes, List<String> outputFiles) throws IOException {
+        Path temp = Files.createTempFile(dir, "entry", ".tmp");
+        try {
+            try (DataOutputStream data = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), COPY_BUFFER_SIZE))) {
+                data.writeInt(MAGIC);
+                data.writeInt(FORMAT_VERSION);
+                data.writeInt(includes.size());
+                for (IncludeCache.IncludeFile file : includes) {
+                    data.writeUTF(file.path.toString());
+                    data.writeLong(file.modified.toMillis());
+                    data.writeLong(file.size);
+                }
+                data.writeInt(errorCount);
+                data.writeInt(messages.length);
+                data.write(messages);
+                data.writeInt(outputFiles.size());
+                for (String path : outputFiles) {
+                    data.writeUTF(path);
+                    data.writeLong(Files.size(Paths.get(path)));
+                    Files.copy(Paths.get(path), data);
+                }
+            }
+            try {
+                Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Запись кэша для вытеснения
+     */
+    private static class EntryInfo {
+
+        final Path path;
+        final long size;
+        final FileTime lastUsed;
+
+        EntryInfo(Path path) throws IOException {
+            this.path = path;
+            this.size = Files.size(path);
+            this.lastUsed = Files.getLastModifiedTime(path);
+        }
+    }
+
+    /**
+     * Удаляет давно не использованные записи, пока размер кэша больше
+     * максимального
+     *
+     * @throws IOException
+     */
+    private synchronized void evict() throws IOException {
+        List<EntryInfo> entries = new ArrayList<>();
+        long totalSize = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + ENTRY_SUFFIX)) {
+            for (Path path : stream) {
+                try {
+                    EntryInfo entry = new EntryInfo(path);
+                    entries.add(entry);
+                    totalSize += entry.size;
+                } catch (NoSuchFileException ex) {
+                    // запись уже удалена
+                }
+            }
+        }
+        if (totalSize <= maxSize) {
+            return;
+        }
+
+        entries.sort((a, b) -> a.lastUsed.compareTo(b.lastUsed));
+        for (EntryInfo entry : entries) {
+            if (totalSize <= maxSize) {
+                break;
+            }
+            if (Files.deleteIfExists(entry.path)) {
+                totalSize -= entry.size;
+            }
+        }
+    }
+}
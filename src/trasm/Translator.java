@@ -4,19 +4,23 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import trasm.LineInfo.LineType;
+import trasm.SegTable.SegInfo;
 
 /**
  * Главный класс транслятора
  */
 class Translator {
 
-    /**
-     * Глобальный флаг первого/второго прохода
-     */
-    static boolean isSecondPass = false;
-
     /**
      * Контейнер для хренения информации про строчку листинга
      */
@@ -24,20 +28,335 @@ class Translator {
 
         int address, lineNum;
         LineInfo info;
+        /**
+         * Строчка макроса или включаемого файла ("имя:номер"), null -
+         * строчка исходного файла
+         */
+        String sourceLine;
+        /**
+         * Буфер сегмента и количество элементов переменного размера перед
+         * строчкой листинга
+         */
+        CodeBuffer code;
+        int itemsBefore;
 
-        public LstLine(int address, int lineNum, LineInfo info) {
+        /**
+         * Строчка листинга по текущему состоянию таблицы сегментов (сразу
+         * после первого прохода строчки)
+         *
+         * @param lineNum Номер строчки
+         * @param sourceLine Строчка макроса или файла, null - строчка
+         * исходного файла
+         * @param info Строчка
+         * @param segTable Таблица сегментов
+         */
+        public LstLine(int lineNum, String sourceLine, LineInfo info, SegTable segTable) {
             this.lineNum = lineNum;
-            this.address = address;
+            this.sourceLine = sourceLine;
+            this.address = segTable.getCurrentAddress();
             this.info = info;
+            this.code = segTable.getCode();
+            this.itemsBefore = info.isVariableSize() ? info.getItemsBefore() : code.getItemCount();
+        }
+
+        /**
+         * Смещение строчки с учетом изменения размеров элементов
+         *
+         * @return Смещение
+         */
+        int getAddress() {
+            return address + code.getShift(itemsBefore);
         }
 
         @Override
         public String toString() {
+            return appendTo(new StringBuilder()).toString();
+        }
+
+        /**
+         * Добавляет строчку листинга: номер, смещение и строчку с кодом
+         * (строчка макроса или включаемого файла отмечается "+" после
+         * номера)
+         *
+         * @param out Куда добавлять
+         * @return out
+         */
+        StringBuilder appendTo(StringBuilder out) {
             if (info.type == LineType.ASSUME) {
-                return "        " + info.toString();
+                return info.appendTo(out.append("        "));
+            }
+            IOLib.appendDecimal(out, lineNum, 3).append(sourceLine == null ? ' ' : '+');
+            IOLib.appendHex(out, getAddress(), 4).append("    ");
+            return info.appendTo(out);
+        }
+    }
+
+    /**
+     * Первый проход по разобранным строчкам: определения и вызовы макросов,
+     * включаемые файлы (INCLUDE) и трансляция строчек по порядку. Строчки
+     * макросов и включаемых файлов получают номер строчки вызова.
+     */
+    private static class PassOne {
+
+        private final Translation translation;
+        private final String asmFilePath;
+        private final boolean isTraced;
+        private final ArrayList<LstLine> allLines, fixups;
+        /**
+         * Файлы, которые включаются сейчас (исходный файл первый), для
+         * поиска циклов
+         */
+        private final ArrayList<Path> includeStack = new ArrayList<>();
+        private final ArrayList<MacroTable.Expansion> expansion = new ArrayList<>();
+
+        PassOne(Translation translation, String asmFilePath, boolean isTraced, ArrayList<LstLine> allLines, ArrayList<LstLine> fixups) {
+            this.translation = translation;
+            this.asmFilePath = asmFilePath;
+            this.isTraced = isTraced;
+            this.allLines = allLines;
+            this.fixups = fixups;
+            includeStack.add(Paths.get(asmFilePath).toAbsolutePath().normalize());
+        }
+
+        /**
+         * Добавляет строчку исходного или включаемого файла
+         *
+         * @param parsed Разобранная строчка
+         * @param lineNum Номер строчки в своем файле
+         * @param sourceLine Строчка включаемого файла или null
+         */
+        void add(ParsedLine parsed, int lineNum, String sourceLine) {
+            expansion.clear();
+            ParsedLine own = translation.macros.process(parsed, lineNum, expansion);
+            if (expansion.isEmpty()) {
+                addLine(own, sourceLine);
+                return;
+            }
+            // развернутые строчки могут включать файлы, а список используется повторно
+            ArrayList<MacroTable.Expansion> lines = new ArrayList<>(expansion);
+            addLine(own, sourceLine);
+            for (MacroTable.Expansion line : lines) {
+                addLine(line.parsed, line.sourceLine);
+            }
+        }
+
+        private void addLine(ParsedLine parsed, String sourceLine) {
+            if (parsed.type == LineType.INCLUDE) {
+                include(parsed, sourceLine);
+            } else {
+                translate(parsed, sourceLine);
+            }
+        }
+
+        /**
+         * Включает файл: строчка INCLUDE, затем строчки файла. Путь задается
+         * относительно включающего файла. Если файл не прочитан или уже
+         * включается (цикл), строчка INCLUDE - ошибка.
+         *
+         * @param parsed Строчка INCLUDE
+         * @param sourceLine Строчка включаемого файла или null
+         */
+        private void include(ParsedLine parsed, String sourceLine) {
+            LexemeInfo name = parsed.body[1];
+            String fileName = name.type == LexemeType.CONST_STRING ? name.value.substring(1, name.value.length() - 1) : name.value;
+            Path dir = includeStack.get(includeStack.size() - 1).getParent();
+            IncludeCache.IncludeFile file = null;
+            try {
+                Path path = dir.resolve(fileName).toAbsolutePath().normalize();
+                if (!includeStack.contains(path)) {
+                    file = IncludeCache.get(path);
+                }
+            } catch (IOException | InvalidPathException ex) {
+                // файл не найден или путь недопустим
+            }
+            if (file == null) {
+                translate(parsed.withType(LineType.ERROR_LINE, true), sourceLine);
+                return;
+            }
+
+            translation.includes.add(file);
+            translate(parsed, sourceLine);
+            includeStack.add(file.path);
+            for (int i = 0; i < file.lines.length; i++) {
+                add(file.lines[i], i + 1, file.name + ":" + (i + 1));
+            }
+            includeStack.remove(includeStack.size() - 1);
+        }
+
+        /**
+         * Транслирует строчку и добавляет её в листинг
+         *
+         * @param parsed Разобранная строчка
+         * @param sourceLine Строчка макроса или файла, null - строчка
+         * исходного файла
+         */
+        private void translate(ParsedLine parsed, String sourceLine) {
+            ErrorList errors = translation.errors;
+            SegTable segTable = translation.segTable;
+            errors.sourceLine = sourceLine;
+            SlowLineEvent event = isTraced ? SlowLineEvent.start() : null;
+            LineInfo line = new LineInfo(parsed, translation);
+            if (event != null) {
+                event.finish(asmFilePath, SlowLineEvent.PASS_ONE, errors.currentLine, line, translation.idTable);
+            }
+            LstLine lstLine = new LstLine(errors.currentLine, sourceLine, line, segTable);
+            allLines.add(lstLine);
+            if (!line.isCorrect()) {
+                errors.AddError();
+            }
+            if (line.hasFixup()) {
+                fixups.add(lstLine);
+            }
+
+            segTable.setCurrentAddress(segTable.getCurrentAddress() + line.sizeInBytes);
+        }
+    }
+
+    /**
+     * Минимальное количество строчек со ссылками на одну задачу второго
+     * прохода
+     */
+    private static final int ENCODE_TASK_SIZE = 1024;
+
+    /**
+     * Второй проход для части строчек со ссылками. Каждая задача пишет код
+     * через свои курсоры буферов сегментов, поэтому задачи не мешают друг
+     * другу: строчки занимают разные байты, а таблицы только читаются.
+     */
+    private static class EncodeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ArrayList<LstLine> fixups;
+        private final boolean[] isFailed;
+        private final Translation translation;
+        private final String asmFilePath;
+        private final int from, to;
+
+        EncodeTask(ArrayList<LstLine> fixups, boolean[] isFailed, Translation translation, String asmFilePath, int from, int to) {
+            this.fixups = fixups;
+            this.isFailed = isFailed;
+            this.translation = translation;
+            this.asmFilePath = asmFilePath;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= ENCODE_TASK_SIZE) {
+                Statistics stats = translation.stats;
+                long start = stats == null ? 0 : Statistics.getThreadCpuTime();
+                encode(fixups, isFailed, translation, asmFilePath, from, to);
+                if (stats != null) {
+                    stats.addTaskTime(Statistics.Phase.PASS_TWO, start);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new EncodeTask(fixups, isFailed, translation, asmFilePath, from, middle),
+                    new EncodeTask(fixups, isFailed, translation, asmFilePath, middle, to));
+        }
+    }
+
+    /**
+     * Дописывает код строчек со ссылками
+     *
+     * @param fixups Строчки со ссылками
+     * @param isFailed Куда отмечать строчки с ошибками
+     * @param translation Трансляция
+     * @param asmFilePath Исходный файл (для событий JFR)
+     * @param from Первая строчка
+     * @param to Строчка после последней
+     */
+    private static void encode(ArrayList<LstLine> fixups, boolean[] isFailed, Translation translation, String asmFilePath, int from, int to) {
+        boolean isTraced = SlowLineEvent.isTraced();
+        CodeBuffer code = null;
+        CodeBuffer cursor = null;
+        for (int i = from; i < to; i++) {
+            LstLine lstLine = fixups.get(i);
+            if (lstLine.code != code) {
+                code = lstLine.code;
+                cursor = code.cursor();
             }
-            return String.format("%1$3d", lineNum) + " " + IOLib.toHex(address, 4) + "    " + info.toString();
+            SlowLineEvent event = isTraced ? SlowLineEvent.start() : null;
+            isFailed[i] = !lstLine.info.applyFixup(cursor);
+            if (event != null) {
+                event.finish(asmFilePath, SlowLineEvent.PASS_TWO, lstLine.lineNum, lstLine.info, translation.idTable);
+            }
+        }
+    }
+
+    /**
+     * Размещение кода после первого прохода. Команды со ссылкой вперёд на
+     * данные получают свой настоящий размер. Все переходы начинают короткими,
+     * переход, цель которого вне диапазона rel8, становится ближним;
+     * удлинение сдвигает следующие адреса, поэтому проход повторяется, пока
+     * переходы меняются. Затем код сегментов перемещается под новые размеры.
+     *
+     * @param fixups Строчки со ссылками для второго прохода
+     * @param segTable Таблица сегментов
+     * @return Количество удлиненных переходов
+     */
+    private static int layoutCode(ArrayList<LstLine> fixups, SegTable segTable) {
+        for (LstLine lstLine : fixups) {
+            lstLine.info.resolveForward();
+        }
+
+        int relaxedCount = 0;
+        boolean isChanged;
+        do {
+            isChanged = false;
+            for (LstLine lstLine : fixups) {
+                if (lstLine.info.relax()) {
+                    isChanged = true;
+                    relaxedCount++;
+                }
+            }
+        } while (isChanged);
+
+        segTable.applyGrowth();
+        return relaxedCount;
+    }
+
+    /**
+     * Заменяет расширение имени файла (каталоги и имя не изменяются; без
+     * расширения окончание добавляется)
+     *
+     * @param path Путь к файлу
+     * @param suffix Новое окончание имени, например ".flst" или "_code.bin"
+     * @return Путь к файлу
+     */
+    static String replaceExtension(String path, String suffix) {
+        int dot = path.lastIndexOf('.');
+        int separator = Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\'));
+        return (dot > separator ? path.substring(0, dot) : path) + suffix;
+    }
+
+    /**
+     * Путь к исходному файлу (без расширения добавляется ".asm")
+     *
+     * @param asmFilePath Путь, заданный пользователем
+     * @return Путь к исходному файлу
+     */
+    static String getAsmPath(String asmFilePath) {
+        if (!asmFilePath.toLowerCase().contains(".asm") && !asmFilePath.contains(".")) {
+            return asmFilePath + ".asm";
+        }
+        return asmFilePath;
+    }
+
+    /**
+     * Путь к файлу листинга (без расширения добавляется ".lst")
+     *
+     * @param lstFilePath Путь, заданный пользователем
+     * @return Путь к файлу листинга
+     */
+    static String getLstPath(String lstFilePath) {
+        if (!lstFilePath.toLowerCase().contains(".lst")) {
+            return lstFilePath + ".lst";
         }
+        return lstFilePath;
     }
 
     /**
@@ -46,109 +365,207 @@ class Translator {
      * @param asmFilePath Пусть к исходному файлу
      * @param lstFilePath Пусть для файла листинга
      * @param options Дополнительные опции генерации
+     * @param translation Контекст трансляции (сбрасывается перед началом)
+     * @param out Куда печатать сообщения (и листинг при опции -c)
+     * @return Количество ошибок
      * @throws IOException
      */
-    private static void makeLST(String asmFilePath, String lstFilePath, String options) throws IOException {
+    static int makeLST(String asmFilePath, String lstFilePath, String options, Translation translation, PrintStream out) throws IOException {
+
+        translation.reset();
+        SegTable segTable = translation.segTable;
+        ErrorList errors = translation.errors;
 
         boolean firstPassOut = options.contains("f");
         boolean lexicalOut = options.contains("l");
         boolean assumeOut = options.contains("a");
         boolean consoleOut = options.contains("c");
+        boolean binaryOut = options.contains("b");
+        boolean hexOut = options.contains("h");
+        boolean parallel = options.contains("p");
+        Statistics stats = options.contains("s") ? new Statistics() : null;
+        translation.stats = stats;
 
-        if (!asmFilePath.toLowerCase().contains(".asm") && !asmFilePath.contains(".")) {
-            asmFilePath += ".asm";
-        }
+        asmFilePath = getAsmPath(asmFilePath);
+        lstFilePath = getLstPath(lstFilePath);
 
-        if (!lstFilePath.toLowerCase().contains(".lst")) {
-            lstFilePath += ".lst";
-        }
+        // события JFR: этапы и медленные строчки (только во время записи)
+        boolean isTraced = SlowLineEvent.isTraced();
+        PhaseEvent phase = PhaseEvent.begin(asmFilePath, PhaseEvent.PASS_ONE);
 
         ArrayList<LstLine> allLines = new ArrayList<>();
-        String[] fileLines = IOLib.readAllLines(asmFilePath);
-        ArrayList<LstLine> jumps = new ArrayList<>();
-        for (String source_line : fileLines) {
-            LineInfo line = new LineInfo(source_line);
-            allLines.add(new LstLine(SegTable.getInstance().getCurrentAddress(), ErrorList.currentLine, line));
-            if (!line.isCorrect()) {
-                ErrorList.AddError();
+        ArrayList<LstLine> fixups = new ArrayList<>();
+        // строчки разбираются (последовательно или параллельно) в
+        // LineParser, адреса и идентификаторы назначаются здесь по порядку
+        try (SourceReader reader = new SourceReader(asmFilePath, StandardCharsets.UTF_8)) {
+            if (stats != null) {
+                stats.lap(Statistics.Phase.READ);
             }
-            if (line.type == LineType.JUMP && line.isCorrect()) {
-                jumps.add(new LstLine(SegTable.getInstance().getCurrentAddress(), ErrorList.currentLine, line));
+            LineParser parser = new LineParser(reader, parallel, translation.parseCache, stats);
+            PassOne passOne = new PassOne(translation, asmFilePath, isTraced, allLines, fixups);
+            ParsedLine parsed;
+            while ((parsed = parser.next()) != null) {
+                if (stats != null) {
+                    stats.lineCount++;
+                    stats.lexemeCount += parsed.lexemes.length;
+                }
+                passOne.add(parsed, errors.currentLine, null);
+                errors.sourceLine = null;
+                errors.currentLine++;
             }
+            if (translation.macros.getOpenDefinition() > 0) {
+                // нет ENDM
+                errors.AddError(translation.macros.getOpenDefinition());
+            }
+        }
 
-            SegTable.getInstance().setCurrentAddress(SegTable.getInstance().getCurrentAddress() + line.sizeInBytes);
-            ErrorList.currentLine++;
+        // строчка листинга, используется повторно для всех строчек
+        StringBuilder row = new StringBuilder(128);
+
+        if (stats != null) {
+            stats.lap(Statistics.Phase.PASS_ONE);
         }
+        phase.commit();
 
         if (firstPassOut) {
-            ArrayList<String> listing = new ArrayList<>();
-            String firstPass = lstFilePath.toLowerCase().replace(".lst", ".flst");
-            for (LstLine lstLine : allLines) {
-                if (lstLine.info.type == LineType.EMPTY) {
-                    listing.add("");
-                } else if (!lstLine.info.isCorrect()) {
-                    listing.add("Cинтаксична помилка! : " + lstLine.toString());
-                } else {
-                    listing.add(lstLine.toString());
+            phase = PhaseEvent.begin(asmFilePath, PhaseEvent.FIRST_PASS_LISTING);
+            String firstPass = replaceExtension(lstFilePath, ".flst");
+            translation.outputFiles.add(firstPass);
+            try (ListingWriter writer = new ListingWriter(firstPass, null, stats)) {
+                writer.println(IOLib.getListingHeader());
+                for (LstLine lstLine : allLines) {
+                    row.setLength(0);
+                    if (lstLine.info.type == LineType.EMPTY) {
+                        writer.println(row);
+                    } else if (!lstLine.info.isCorrect()) {
+                        writer.println(lstLine.appendTo(row.append("Cинтаксична помилка! : ")));
+                    } else {
+                        writer.println(lstLine.appendTo(row));
+                    }
                 }
             }
-            IOLib.writeAllLines(listing.toArray(new String[listing.size()]), new PrintStream(new File(firstPass)));
+            phase.commit();
         }
 
-        isSecondPass = true;
-        for (LstLine lstLine : jumps) {
-            LineInfo line = new LineInfo(lstLine.info);
-            allLines.set(lstLine.lineNum - 1, new LstLine(lstLine.address, lstLine.lineNum, line));
-            if (!line.isCorrect()) {
-                ErrorList.AddError(lstLine.lineNum);
-            }
+        if (stats != null) {
+            stats.lap(Statistics.Phase.WRITE);
         }
 
-        ArrayList<String> listing = new ArrayList<>();
-        for (LstLine lstLine : allLines) {
-            if (lstLine.info.type == LineType.EMPTY) {
-                listing.add("");
-            } else if (!lstLine.info.isCorrect()) {
-                listing.add("Cинтаксична помилка! : " + lstLine.toString());
-            } else {
+        phase = PhaseEvent.begin(asmFilePath, PhaseEvent.LAYOUT);
+        int relaxedCount = layoutCode(fixups, segTable);
+        if (stats != null) {
+            stats.relaxedJumps = relaxedCount;
+            stats.lap(Statistics.Phase.PASS_ONE);
+        }
+        phase.commit();
 
-                listing.add(lstLine.toString());
-                if (assumeOut && lstLine.info.type == LineType.ASSUME) {
-                    listing.add(SegTable.getInstance().assumeToString());
+        // после выравнивания таблицы только читаются, код сегментов
+        // дописывается (последовательно или параллельно по частям), ошибки
+        // добавляются в порядке строчек
+        phase = PhaseEvent.begin(asmFilePath, PhaseEvent.PASS_TWO);
+        translation.isSecondPass = true;
+        translation.idTable.freeze();
+        segTable.freeze();
+        boolean[] isFailed = new boolean[fixups.size()];
+        if (parallel) {
+            ForkJoinPool.commonPool().invoke(new EncodeTask(fixups, isFailed, translation, asmFilePath, 0, fixups.size()));
+        } else {
+            encode(fixups, isFailed, translation, asmFilePath, 0, fixups.size());
+        }
+        for (int i = 0; i < isFailed.length; i++) {
+            if (isFailed[i]) {
+                errors.AddError(fixups.get(i).lineNum, fixups.get(i).sourceLine);
+            }
+        }
+        if (stats != null) {
+            for (LstLine lstLine : fixups) {
+                if (lstLine.info.type == LineType.JUMP) {
+                    stats.reencodedJumps++;
                 }
             }
+            stats.lap(Statistics.Phase.PASS_TWO);
         }
+        phase.commit();
 
-        listing.add("\n" + SegTable.getInstance().toString());
-        listing.add(IdTable.getInstance().toString());
-        listing.add(ErrorList.getStringToPrint());
+        // листинг пишется по мере формирования строчек, копия для экрана
+        // берется из тех же байтов
+        phase = PhaseEvent.begin(asmFilePath, PhaseEvent.LISTING);
+        translation.outputFiles.add(lstFilePath);
+        try (ListingWriter writer = new ListingWriter(lstFilePath, consoleOut ? out : null, stats)) {
+            writer.println(IOLib.getListingHeader());
+            for (LstLine lstLine : allLines) {
+                row.setLength(0);
+                if (lstLine.info.type == LineType.EMPTY) {
+                    writer.println(row);
+                } else if (!lstLine.info.isCorrect()) {
+                    writer.println(lstLine.appendTo(row.append("Cинтаксична помилка! : ")));
+                } else {
+
+                    writer.println(lstLine.appendTo(row));
+                    if (assumeOut && lstLine.info.type == LineType.ASSUME) {
+                        writer.println(segTable.assumeToString());
+                    }
+                }
+            }
 
-        if (consoleOut) {
-            IOLib.writeAllLines(listing.toArray(new String[listing.size()]), System.out);
+            writer.println("\n" + segTable.toString());
+            writer.println(translation.idTable.toString());
+            writer.println(errors.getStringToPrint());
         }
-        IOLib.writeAllLines(listing.toArray(new String[listing.size()]), new PrintStream(new File(lstFilePath)));
+        phase.commit();
 
-        System.out.println("Вхідний файл: " + asmFilePath + "\nВихідний файл: " + lstFilePath);
+        out.println("Вхідний файл: " + asmFilePath + "\nВихідний файл: " + lstFilePath);
 
         if (firstPassOut) {
-            String firstPass = lstFilePath.toLowerCase().replace(".lst", ".flst");
-            System.out.println("Файл першого проходу: " + firstPass);
+            String firstPass = replaceExtension(lstFilePath, ".flst");
+            out.println("Файл першого проходу: " + firstPass);
+        }
+
+        phase = PhaseEvent.begin(asmFilePath, PhaseEvent.OUTPUTS);
+        if (binaryOut || hexOut) {
+            for (SegInfo segInfo : segTable.getSegments()) {
+                String segPath = replaceExtension(lstFilePath, "_" + segInfo.getName().toLowerCase());
+                if (binaryOut) {
+                    IOLib.writeBinary(segInfo.getCode(), segInfo.getSize(), segPath + ".bin");
+                    translation.outputFiles.add(segPath + ".bin");
+                    out.println("Двійковий образ сегмента " + segInfo.getName() + ": " + segPath + ".bin");
+                }
+                if (hexOut) {
+                    IOLib.writeIntelHex(segInfo.getCode(), segInfo.getSize(), segPath + ".hex");
+                    translation.outputFiles.add(segPath + ".hex");
+                    out.println("Образ сегмента " + segInfo.getName() + " у форматі Intel HEX: " + segPath + ".hex");
+                }
+            }
         }
 
         if (lexicalOut) {
-            String lexemes = lstFilePath.toLowerCase().replace(".lst", ".lex");
+            String lexemes = replaceExtension(lstFilePath, ".lex");
+            translation.outputFiles.add(lexemes);
             try (PrintStream writer = new PrintStream(new File(lexemes))) {
-                for (String source_line : fileLines) {
-                    if (source_line.replaceAll(";.*", "").trim().isEmpty()) {
+                for (LstLine lstLine : allLines) {
+                    ParsedLine parsed = lstLine.info.parsed;
+                    if (parsed.isBlank()) {
                         continue;
                     }
-                    writer.println("Вхідна стрічка: " + source_line);
-                    writer.println(LexicalAnalyzer.getStringToPrint(LexicalAnalyzer.getLexemeInfo(source_line)));
+                    writer.println("Вхідна стрічка: " + parsed.value);
+                    writer.println(LexicalAnalyzer.getStringToPrint(parsed.lexemes));
                 }
             }
-            System.out.println("Файл лексичного аналізу: " + lexemes);
+            out.println("Файл лексичного аналізу: " + lexemes);
         }
-        System.out.println(ErrorList.getStringToPrint());
+        phase.commit();
+
+        if (stats != null) {
+            stats.lap(Statistics.Phase.WRITE);
+            stats.finish(translation);
+            String statFile = replaceExtension(lstFilePath, ".stat.json");
+            Files.write(Paths.get(statFile), stats.toJson(asmFilePath, options).getBytes(StandardCharsets.UTF_8));
+            translation.outputFiles.add(statFile);
+            out.print(stats.getStringToPrint());
+            out.println("Файл статистики: " + statFile);
+        }
+        out.println(errors.getStringToPrint());
+        return errors.getCount();
     }
 
     /**
@@ -162,6 +579,9 @@ class Translator {
                 .getName();
 
         System.out.println("Використання: java -jar " + jarName + " [asmFile] [lstFile] [-options]");
+        System.out.println("       java -jar " + jarName + " -batch [-options] [files...]");
+        System.out.println("       java -jar " + jarName + " -watch [asmFile] [lstFile] [-options]");
+        System.out.println("       java -jar " + jarName + " -daemon [port]");
         System.out.println("Довідка: ");
         System.out.println("[asmFile] - шлях до файлу з початковим кодом мовою ассемблер");
         System.out.println("[lstFile] - шлях до вихідного файлу лістингу");
@@ -170,13 +590,107 @@ class Translator {
         System.out.println("    -l - генерація файлу лексичного аналізу за шляхом [lstFile].lex");
         System.out.println("    -a - виведення інформації(у файлі лістингу) про Assume");
         System.out.println("    -c - виведення лістингу на екран");
+        System.out.println("    -b - двійковий образ кожного сегмента [lstFile]_[сегмент].bin");
+        System.out.println("    -h - образ кожного сегмента у форматі Intel HEX [lstFile]_[сегмент].hex");
+        System.out.println("    -p - паралельний розбір рядків і кодування (для великих файлів)");
+        System.out.println("    -s - статистика: час етапів і лічильники, також у файлі [lstFile].stat.json");
+        System.out.println("-batch - пакетна трансляція: [files...] - файли, каталоги (усі *.asm)");
+        System.out.println("    або шаблони (*.asm, src/**.asm); лістинг кожного файлу - поруч з ним");
+        System.out.println("-watch - повторна трансляція [asmFile] після кожного збереження його або включених файлів");
+        System.out.println("    (заново розбираються лише змінені рядки)");
+        System.out.println("-daemon [port] - фоновий процес на 127.0.0.1; поки він працює, трансляція");
+        System.out.println("    одного файлу пересилається йому (без запуску JVM щоразу)");
+        System.out.println("-cache [dir] (перед іншими аргументами) - кеш результатів трансляції у каталозі");
+        System.out.println("    [dir]; -cachesize [MB] - розмір кешу (за замовчуванням 512)");
         System.out.println("\nПриклад: java -jar " + jarName + " source out");
         System.out.println("java -jar " + jarName + " src.asm out.lst -c");
         System.out.println("java -jar " + jarName + " test.asm test -af");
+        System.out.println("java -jar " + jarName + " prog.asm prog -bh");
+        System.out.println("java -jar " + jarName + " -batch -f tests \"lab/*.asm\"");
+        System.out.println("java -jar " + jarName + " -cache .trasm-cache -batch -bh src");
     }
 
     public static void main(String[] args) {
 
+        String cacheDir = null;
+        long cacheSize = TranslationCache.DEFAULT_MAX_SIZE;
+        int cacheArgs = 0;
+        while (cacheArgs + 1 < args.length && (args[cacheArgs].equals("-cache") || args[cacheArgs].equals("-cachesize"))) {
+            if (args[cacheArgs].equals("-cache")) {
+                cacheDir = args[cacheArgs + 1];
+            } else if (args[cacheArgs + 1].matches("^\\d{1,9}$")) {
+                cacheSize = Long.parseLong(args[cacheArgs + 1]) << 20;
+            } else {
+                System.out.println("Помилкові опціі");
+                showHelp();
+                return;
+            }
+            cacheArgs += 2;
+        }
+        args = Arrays.copyOfRange(args, cacheArgs, args.length);
+
+        TranslationCache cache = null;
+        if (cacheDir != null) {
+            try {
+                cache = new TranslationCache(cacheDir, cacheSize);
+            } catch (IOException ex) {
+                System.out.println("Помилка каталогу кешу: " + ex.getMessage());
+                return;
+            }
+        }
+
+        if (args.length >= 2 && args[0].equals("-batch")) {
+            int first = 1;
+            if (args[1].startsWith("-")) {
+                if (!args[1].matches("^-c?l?a?f?b?h?p?s?$")) {
+                    System.out.println("Помилкові опціі");
+                    showHelp();
+                    return;
+                }
+                first = 2;
+            }
+            if (first == args.length) {
+                showHelp();
+                return;
+            }
+            try {
+                Batch.run(first == 2 ? args[1] : "", Arrays.copyOfRange(args, first, args.length), cache);
+            } catch (IOException ex) {
+                System.out.println("Помилка пошуку файлів: " + ex.getMessage());
+            }
+            return;
+        }
+
+        if (args.length >= 1 && args.length <= 2 && args[0].equals("-daemon")) {
+            if (args.length == 2 && !args[1].matches("^\\d{1,5}$")) {
+                showHelp();
+                return;
+            }
+            try {
+                Daemon.run(args.length == 2 ? Integer.parseInt(args[1]) : 0);
+            } catch (IOException ex) {
+                System.out.println("Помилка фонового процесу: " + ex.getMessage());
+            }
+            return;
+        }
+
+        if (args.length >= 3 && args[0].equals("-watch")) {
+            String options = args.length == 4 ? args[3] : "";
+            if (args.length > 4 || (!options.isEmpty() && !options.matches("^-c?l?a?f?b?h?p?s?$"))) {
+                System.out.println("Помилкові опціі");
+                showHelp();
+                return;
+            }
+            try {
+                Watcher.run(args[1], args[2], options);
+            } catch (IOException ex) {
+                System.out.println("Помилка спостереження за файлом: " + ex.getMessage());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
+
         if (args.length < 2 || args.length > 3) {
             showHelp();
             return;
@@ -184,13 +698,21 @@ class Translator {
 
         try {
             if (args.length == 3) {
-                if (!args[2].matches("^-c?l?a?f?$")) {
+                if (!args[2].matches("^-c?l?a?f?b?h?p?s?$")) {
                     System.out.println("Помилкові опціі");
                     showHelp();
                     return;
                 }
             }
-            makeLST(args[0], args[1], args.length == 2 ? "" : args[2]);
+            String options = args.length == 2 ? "" : args[2];
+            if (cache == null && Daemon.forward(args[0], args[1], options)) {
+                return;
+            }
+            if (cache == null) {
+                makeLST(args[0], args[1], options, new Translation(), System.out);
+            } else {
+                cache.makeLST(args[0], args[1], options, new Translation(), System.out);
+            }
         } catch (FileNotFoundException ex) {
             System.out.println("Файл не знайдено.");
         } catch (IOException ex) {
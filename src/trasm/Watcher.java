@@ -0,0 +1,148 @@
+package trasm;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Режим наблюдения: файл транслируется заново после каждого сохранения
+ * его самого или одного из включенных (INCLUDE) файлов.
+ * Контекст трансляции и разбор строчек сохраняются между запусками, поэтому
+ * лексический анализ и классификация повторяются только для новых и
+ * измененных строчек.
+ */
+class Watcher {
+
+    /**
+     * Время ожидания следующих событий того же сохранения, мс
+     */
+    private static final long SETTLE_TIME = 50;
+
+    /**
+     * Транслирует файл и печатает, сколько строчек разобрано заново
+     *
+     * @param asmFilePath Путь к исходному файлу
+     * @param lstFilePath Путь для файла листинга
+     * @param options Опции генерации
+     * @param translation Контекст трансляции с кэшем разбора
+     */
+    private static void translate(String asmFilePath, String lstFilePath, String options, Translation translation) {
+        long start = System.nanoTime();
+        try {
+            Translator.makeLST(asmFilePath, lstFilePath, options, translation, System.out);
+        } catch (FileNotFoundException ex) {
+            System.out.println("Файл не знайдено.");
+            return;
+        } catch (IOException ex) {
+            System.out.println("Помилка виводу.");
+            return;
+        }
+        long time = (System.nanoTime() - start) / 1000000;
+        ParseCache cache = translation.parseCache;
+        System.out.println("Рядків розібрано заново: " + cache.getParsedCount() + " з " + cache.getLineCount()
+                + ", час: " + time + " мс");
+    }
+
+    /**
+     * Есть ли среди событий изменение одного из отслеживаемых файлов
+     *
+     * @param key Ключ каталога с событиями
+     * @param files Абсолютные пути отслеживаемых файлов
+     * @return Ответ
+     */
+    private static boolean isWatchedChanged(WatchKey key, Set<Path> files) {
+        Path dir = (Path) key.watchable();
+        boolean isChanged = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || files.contains(dir.resolve((Path) event.context()))) {
+                isChanged = true;
+            }
+        }
+        return isChanged;
+    }
+
+    /**
+     * Собирает отслеживаемые файлы (исходный и включенные последней
+     * трансляцией) и начинает наблюдение за их каталогами
+     *
+     * @param watchService Служба наблюдения
+     * @param dirs Каталоги, за которыми уже ведется наблюдение
+     * @param source Исходный файл
+     * @param translation Контекст последней трансляции
+     * @return Абсолютные пути отслеживаемых файлов
+     * @throws IOException
+     */
+    private static Set<Path> watch(WatchService watchService, Set<Path> dirs, Path source, Translation translation) throws IOException {
+        Set<Path> files = new HashSet<>();
+        files.add(source);
+        for (IncludeCache.IncludeFile file : translation.includes) {
+            files.add(file.path);
+        }
+        for (Path file : files) {
+            Path dir = file.getParent();
+            if (dirs.add(dir)) {
+                dir.register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Транслирует файл и затем транслирует его заново при каждом изменении
+     * (до прерывания программы)
+     *
+     * @param asmFilePath Путь к исходному файлу
+     * @param lstFilePath Путь для файла листинга
+     * @param options Опции генерации
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    static void run(String asmFilePath, String lstFilePath, String options) throws IOException, InterruptedException {
+        Path source = Paths.get(Translator.getAsmPath(asmFilePath)).toAbsolutePath().normalize();
+        Translation translation = new Translation();
+        translation.parseCache = new ParseCache();
+
+        Set<Path> dirs = new HashSet<>();
+
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            translate(source.toString(), lstFilePath, options, translation);
+            Set<Path> files = watch(watchService, dirs, source, translation);
+            System.out.println("Спостереження за " + source + " (Ctrl+C - вихід)");
+
+            while (true) {
+                // одно сохранение дает несколько событий подряд
+                WatchKey key = watchService.take();
+                boolean isChanged = false;
+                do {
+                    isChanged |= isWatchedChanged(key, files);
+                    if (!key.reset()) {
+                        Path dir = (Path) key.watchable();
+                        if (dir.equals(source.getParent())) {
+                            System.out.println("Каталог недоступний: " + dir);
+                            return;
+                        }
+                        // каталог включенного файла будет зарегистрирован заново,
+                        // если он снова понадобится
+                        dirs.remove(dir);
+                    }
+                } while ((key = watchService.poll(SETTLE_TIME, TimeUnit.MILLISECONDS)) != null);
+
+                if (isChanged) {
+                    translate(source.toString(), lstFilePath, options, translation);
+                    files = watch(watchService, dirs, source, translation);
+                }
+            }
+        }
+    }
+}
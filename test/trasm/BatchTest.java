@@ -0,0 +1,58 @@
+package trasm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Пакетная трансляция
+ */
+class BatchTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void findsSourcesInDirectoriesAndPatterns() throws IOException {
+        Path a = Programs.write(dir.resolve("a.asm"), "cli");
+        Path b = Programs.write(Files.createDirectory(dir.resolve("sub")).resolve("b.asm"), "cli");
+        Files.write(dir.resolve("notes.txt"), new byte[0]);
+
+        assertEquals(Arrays.asList(a.toString(), b.toString()),
+                Batch.findSources(new String[]{dir.toString()}));
+        assertEquals(Arrays.asList(a.toString()),
+                Batch.findSources(new String[]{dir + "/*.asm"}));
+        assertEquals(Arrays.asList(b.toString()),
+                Batch.findSources(new String[]{dir + "/**/b.asm"}));
+        // повторы отбрасываются, порядок - по первому упоминанию
+        assertEquals(Arrays.asList(b.toString(), a.toString()),
+                Batch.findSources(new String[]{b.toString(), dir.toString()}));
+    }
+
+    @Test
+    void printsMessagesInInputOrderAndSummary() throws IOException, InterruptedException {
+        Path good = Programs.write(dir.resolve("good.asm"), "cli");
+        Path bad = Programs.write(dir.resolve("bad.asm"), "inc inc");
+        Path missing = dir.resolve("missing.asm");
+
+        String messages = Programs.run("-batch", bad.toString(), missing.toString(), good.toString());
+
+        int badAt = messages.indexOf("Вхідний файл: " + bad);
+        int missingAt = messages.indexOf("Вхідний файл: " + missing);
+        int goodAt = messages.indexOf("Вхідний файл: " + good);
+        assertTrue(0 <= badAt && badAt < missingAt && missingAt < goodAt, messages);
+        assertTrue(messages.contains("Пакетна трансляція: файлів 3, без помилок 1, з помилками 1, не оброблено 1"), messages);
+        assertTrue(messages.contains("Помилок усього: 1"), messages);
+
+        assertTrue(Files.exists(dir.resolve("good.lst")));
+        assertTrue(Files.exists(dir.resolve("bad.lst")));
+        assertFalse(Files.exists(dir.resolve("missing.lst")));
+    }
+}
@@ -0,0 +1,145 @@
+package trasm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Пересылка трансляции фоновому процессу. Процесс запускается в потоке
+ * тестовой JVM со своим файлом порта.
+ */
+class DaemonTest {
+
+    /**
+     * Строчки заголовка листинга с датой генерации
+     */
+    private static final int HEADER_LINES = 2;
+
+    @TempDir
+    static Path home;
+
+    private static Path portFile;
+
+    @TempDir
+    Path dir;
+
+    @BeforeAll
+    static void startDaemon() throws InterruptedException {
+        portFile = home.resolve(".trasm").resolve("daemon.port");
+        Thread daemon = new Thread(() -> {
+            try {
+                Daemon.run(0, portFile);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+        daemon.setDaemon(true);
+        daemon.start();
+        for (int i = 0; i < 100 && !isWritten(portFile); i++) {
+            Thread.sleep(50);
+        }
+        assertTrue(isWritten(portFile), "файл порта не создан");
+    }
+
+    private static boolean isWritten(Path file) {
+        try {
+            return Files.exists(file) && Files.size(file) > 0;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Пересылает трансляцию, сообщения клиента собираются в строку
+     */
+    private static boolean forward(Path file, Path asm, Path lst, StringBuilder messages) {
+        PrintStream console = System.out;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (PrintStream out = new PrintStream(bytes, true, StandardCharsets.UTF_8)) {
+            System.setOut(out);
+            return Daemon.forward(file, asm.toString(), lst.toString(), "");
+        } finally {
+            System.setOut(console);
+            messages.append(new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void forwardedTranslationMatchesLocal() throws IOException {
+        Path asm = Programs.write(dir.resolve("prog.asm"), "cli", "inc v[bx]", "inc inc");
+        StringBuilder messages = new StringBuilder();
+        assertTrue(forward(portFile, asm, dir.resolve("daemon.lst"), messages));
+        assertTrue(messages.toString().contains("Вхідний файл: " + asm), messages.toString());
+        assertTrue(messages.toString().contains("Помилки: 1"), messages.toString());
+
+        Translator.makeLST(asm.toString(), dir.resolve("local.lst").toString(), "", new Translation(),
+                new PrintStream(OutputStream.nullOutputStream()));
+        assertEquals(body(dir.resolve("local.lst")), body(dir.resolve("daemon.lst")));
+    }
+
+    @Test
+    void missingFileIsReported() {
+        StringBuilder messages = new StringBuilder();
+        assertTrue(forward(portFile, dir.resolve("missing.asm"), dir.resolve("missing.lst"), messages));
+        assertTrue(messages.toString().contains("Файл не знайдено."), messages.toString());
+    }
+
+    @Test
+    void wrongKeyIsRejected() throws IOException {
+        String[] portAndKey = new String(Files.readAllBytes(portFile), StandardCharsets.US_ASCII).split(" ");
+        Path forged = Files.createDirectory(dir.resolve("forged")).resolve("daemon.port");
+        Files.write(forged, (portAndKey[0] + " 00000000000000000000000000000000").getBytes(StandardCharsets.US_ASCII));
+        Files.setPosixFilePermissions(forged, Files.getPosixFilePermissions(portFile));
+
+        Path asm = Programs.write(dir.resolve("a.asm"), "cli");
+        assertFalse(forward(forged, asm, dir.resolve("a.lst"), new StringBuilder()));
+        assertFalse(Files.exists(dir.resolve("a.lst")));
+    }
+
+    @Test
+    void untrustedOrMissingPortFileIsIgnored() throws IOException {
+        Path asm = Programs.write(dir.resolve("a.asm"), "cli");
+        assertFalse(forward(dir.resolve("none.port"), asm, dir.resolve("a.lst"), new StringBuilder()));
+
+        Path readable = dir.resolve("readable.port");
+        Files.copy(portFile, readable);
+        Files.setPosixFilePermissions(readable, PosixFilePermissions.fromString("rw-r--r--"));
+        assertFalse(forward(readable, asm, dir.resolve("a.lst"), new StringBuilder()));
+    }
+
+    @Test
+    void idleConnectionIsClosed() throws IOException {
+        int port = Integer.parseInt(new String(Files.readAllBytes(portFile), StandardCharsets.US_ASCII).split(" ")[0]);
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setSoTimeout(10000);
+            InputStream in = socket.getInputStream();
+            // процесс закрывает подключение без запроса, ничего не ответив
+            assertEquals(-1, in.read());
+        }
+    }
+
+    /**
+     * Листинг без заголовка
+     */
+    private static List<String> body(Path lst) throws IOException {
+        List<String> lines = Files.readAllLines(lst, StandardCharsets.UTF_8);
+        return lines.subList(HEADER_LINES, lines.size());
+    }
+}
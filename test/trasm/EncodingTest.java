@@ -0,0 +1,125 @@
+package trasm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * Кодирование команд по форматам таблицы команд (по одной команде в
+ * сегменте кода, v - DB по смещению 0, w - DW по 1, d - DD по 3)
+ */
+class EncodingTest {
+
+    /**
+     * Формат, команда, ожидаемый код
+     */
+    private static final String[][] CASES = {
+        {"FIXED", "cli", "FA"},
+        {"FIXED", "cwde", "66 98"},
+        {"FIXED", "aad", "D5 0A"},
+        {"PREFIX", "rep movsb", "F3 A4"},
+        {"RM", "inc bx", "43"},
+        {"RM", "inc v", "FE 06 00 00"},
+        {"RM", "not ax", "F7 D0"},
+        {"RM", "push ax", "50"},
+        {"RM", "sete al", "0F 94 C0"},
+        {"RM", "lock inc w", "F0 FF 06 01 00"},
+        {"RM_REG", "add v, al", "00 06 00 00"},
+        {"RM_REG", "bt ax, bx", "0F A3 D8"},
+        {"RM_REG", "lock add d, eax", "F0 66 01 06 03 00"},
+        {"REG_RM", "add ax, bx", "03 C3"},
+        {"REG_RM", "mov ax, w[bx]", "8B 87 01 00"},
+        {"REG_RM", "movzx eax, v", "66 0F B6 06 00 00"},
+        {"REG_RM", "lea ax, w", "8D 06 01 00"},
+        {"REG_RM", "lock xchg ax, w", "F0 87 06 01 00"},
+        // SIB: база ESP кодируется только через байт SIB
+        {"REG_RM", "mov eax, d[esp]", "66 67 8B 84 24 03 00 00 00"},
+        // 83 - байт, расширяемый знаком (до 7Fh), 81 - полное непосредственное
+        {"RM_IMM", "add bx, 7Fh", "83 C3 7F"},
+        {"RM_IMM", "add bx, 80h", "81 C3 80 00"},
+        {"RM_IMM", "add bl, 80h", "80 C3 80"},
+        {"RM_IMM", "add w, 7Fh", "83 06 01 00 7F"},
+        {"RM_IMM", "add d, 80h", "66 81 06 03 00 80 00 00 00"},
+        {"RM_IMM", "bt ax, 3", "0F BA E0 03"},
+        {"REG_RM_IMM", "imul ax, bx, 10", "6B C3 0A"},
+        {"REG_RM_IMM", "imul ax, bx, 80h", "69 C3 80 00"},
+        {"REG_RM_IMM", "imul eax, d, 7Fh", "66 6B 06 03 00 7F"},
+        {"REG_IMM", "mov ax, 1234h", "B8 34 12"},
+        {"SHIFT", "shl ax, 1", "D1 E0"},
+        {"SHIFT", "shl ax, 3", "C1 E0 03"},
+        {"SHIFT_CL", "shl ax, cl", "D3 E0"},
+        {"RM_REG_IMM", "shld ax, bx, 4", "0F A4 D8 04"},
+        {"RM_REG_CL", "shrd w, bx, cl", "0F AD 1E 01 00"},
+        {"SREG", "push es", "06"},
+        {"SREG", "push fs", "0F A0"},
+        {"SREG", "pop ds", "1F"},
+        {"RM_SREG", "mov ax, es", "8C C0"},
+        {"SREG_RM", "mov es, ax", "8E C0"},
+        {"IMM", "int 21h", "CD 21"},
+        {"IMM", "push 5", "6A 05"},
+        {"IMM_IMM", "enter 10h, 0", "C8 10 00 00"},
+        {"REL", "here: jmp here", "EB FE"},
+        {"REL", "here: call here", "E8 FD FF"},
+        {"REL", "here: loop here", "E2 FE"},
+        {"REL", "here: jecxz here", "67 E3 FD"},
+        {"ACC_IMM", "in al, 60h", "E4 60"},
+        {"IMM_ACC", "out 60h, al", "E6 60"},
+        {"ACC_DX", "in al, dx", "EC"},
+        {"DX_ACC", "out dx, al", "EE"}
+    };
+
+    @TempDir
+    Path dir;
+
+    static Stream<Arguments> cases() {
+        return Arrays.stream(CASES).map(row -> Arguments.of((Object[]) row));
+    }
+
+    @ParameterizedTest(name = "{0}: {1}")
+    @MethodSource("cases")
+    void encodes(String format, String line, String expected) throws IOException {
+        Programs.Result result = Programs.translate(dir, line);
+        assertEquals(0, result.errorCount, result.errors);
+        assertEquals(expected, Programs.hex(result.code, 0, result.code.length));
+    }
+
+    @Test
+    void casesCoverEveryFormat() {
+        Set<InstructionTable.Format> missing = EnumSet.allOf(InstructionTable.Format.class);
+        for (String[] row : CASES) {
+            missing.remove(InstructionTable.Format.valueOf(row[0]));
+        }
+        assertTrue(missing.isEmpty(), missing.toString());
+    }
+
+    @Test
+    void rejectsUnsupportedOperands() throws IOException {
+        Programs.Result result = Programs.translate(dir, "nop", "mov es, 5", "shl ax, bx",
+                "imul al, bl, 2", "shld ax, bx, dx", "enter 10000h, 0");
+        assertEquals(5, result.errorCount, result.errors);
+        for (int i = 1; i <= 5; i++) {
+            assertTrue(result.isError(i), result.errors);
+        }
+    }
+
+    @Test
+    void lockNeedsMemoryOperandOfLockableInstruction() throws IOException {
+        Programs.Result result = Programs.translate(dir, "lock inc w", "lock inc ax", "lock mov w, ax", "lock cli",
+                "lock rep movsb");
+        assertEquals(4, result.errorCount, result.errors);
+        for (int i = 1; i <= 4; i++) {
+            assertTrue(result.isError(i), result.errors);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package trasm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Ссылки вперед, исправляемые во втором проходе
+ */
+class FixupTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void forwardDataReferenceAssembles() throws IOException {
+        Programs.Result result = Programs.translate(dir,
+                "inc later[bx]",
+                "later db 1");
+        assertEquals(0, result.errorCount, result.errors);
+        // CS: INC byte ptr [bx+0005h]
+        assertEquals("2E FE 87 05 00", Programs.hex(result.code, 0, 5));
+    }
+
+    @Test
+    void errorsAreListedInLineOrder() throws IOException {
+        // ошибка второго прохода в строчке 0, первого - в строчке 1
+        Programs.Result result = Programs.translate(dir,
+                "inc missing[bx]",
+                "inc inc");
+        assertTrue(result.isError(0), result.errors);
+        assertTrue(result.isError(1), result.errors);
+        assertEquals("Помилки: 2 Рядки з помилками: " + Programs.FIRST_LINE + " " + (Programs.FIRST_LINE + 1),
+                result.errors.replaceAll("\\s+", " ").trim());
+    }
+}
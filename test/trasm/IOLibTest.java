@@ -0,0 +1,76 @@
+package trasm;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Двоичный образ и Intel HEX сегмента
+ */
+class IOLibTest {
+
+    @TempDir
+    Path dir;
+
+    private static CodeBuffer bytes(int count) {
+        CodeBuffer code = new CodeBuffer();
+        for (int i = 0; i < count; i++) {
+            code.putByte(i);
+        }
+        return code;
+    }
+
+    /**
+     * Сумма всех байтов записи вместе с контрольной суммой равна нулю
+     */
+    private static void assertChecksum(String record) {
+        int sum = 0;
+        for (int i = 1; i < record.length(); i += 2) {
+            sum += Integer.parseInt(record.substring(i, i + 2), 16);
+        }
+        assertEquals(0, sum & 0xFF, record);
+    }
+
+    @Test
+    void writesRecordsWithChecksums() throws IOException {
+        Path hex = dir.resolve("code.hex");
+        IOLib.writeIntelHex(bytes(17), 17, hex.toString());
+
+        List<String> records = Files.readAllLines(hex, StandardCharsets.US_ASCII);
+        assertEquals(List.of(":10000000000102030405060708090A0B0C0D0E0F78", ":0100100010DF", ":00000001FF"), records);
+        for (String record : records) {
+            assertChecksum(record);
+        }
+    }
+
+    @Test
+    void writesExtendedAddressAbove64K() throws IOException {
+        Path hex = dir.resolve("big.hex");
+        CodeBuffer code = new CodeBuffer();
+        code.seek(0x10000);
+        code.putByte(0xAA);
+        IOLib.writeIntelHex(code, 0x10001, hex.toString());
+
+        List<String> records = Files.readAllLines(hex, StandardCharsets.US_ASCII);
+        assertEquals(0x1000 + 3, records.size());
+        assertEquals(":020000040001F9", records.get(0x1000));
+        assertEquals(":01000000AA55", records.get(0x1001));
+        for (String record : records) {
+            assertChecksum(record);
+        }
+    }
+
+    @Test
+    void padsBinaryImageWithZeros() throws IOException {
+        Path bin = dir.resolve("code.bin");
+        IOLib.writeBinary(bytes(3), 6, bin.toString());
+        assertArrayEquals(new byte[]{0, 1, 2, 0, 0, 0}, Files.readAllBytes(bin));
+    }
+}
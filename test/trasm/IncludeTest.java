@@ -0,0 +1,133 @@
+package trasm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Включаемые файлы: разрешение путей, циклы, общий кэш разобранных файлов
+ * и проверка включаемых файлов в дисковом кэше трансляций
+ */
+class IncludeTest {
+
+    @TempDir
+    Path dir;
+
+    private final PrintStream out = new PrintStream(OutputStream.nullOutputStream());
+
+    /**
+     * Записывает включаемый файл
+     */
+    private static Path include(Path file, String... lines) throws IOException {
+        Files.createDirectories(file.getParent());
+        return Files.write(file, (String.join("\r\n", lines) + "\r\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void includesMacrosAndCode() throws IOException {
+        include(dir.resolve("defs.inc"),
+                "bump macro p",
+                "\tinc p[bx]",
+                "endm",
+                "\tcli");
+        Programs.Result result = Programs.translate(dir,
+                "include defs.inc",
+                "bump v");
+        assertEquals(0, result.errorCount, result.errors);
+        assertEquals("FA FE 87 00 00", Programs.hex(result.code, 0, 8));
+    }
+
+    @Test
+    void resolvesPathsAgainstIncludingFile() throws IOException {
+        include(dir.resolve("lib").resolve("outer.inc"), "include inner.inc", "\tcli");
+        include(dir.resolve("lib").resolve("inner.inc"), "\tcli", "\tcli");
+        Programs.Result result = Programs.translate(dir, "include 'lib/outer.inc'");
+        assertEquals(0, result.errorCount, result.errors);
+        assertEquals("FA FA FA", Programs.hex(result.code, 0, 8));
+    }
+
+    @Test
+    void reportsMissingFileAndErrorsInsideFile() throws IOException {
+        include(dir.resolve("bad.inc"), "\tcli", "\tinc inc");
+        Programs.Result result = Programs.translate(dir,
+                "include missing.inc",
+                "include bad.inc");
+        assertEquals(2, result.errorCount, result.errors);
+        assertTrue(result.isError(0), result.errors);
+        assertTrue(result.errors.contains((Programs.FIRST_LINE + 1) + "(bad.inc:2)"), result.errors);
+    }
+
+    @Test
+    void rejectsIncludeCycles() throws IOException {
+        include(dir.resolve("a.inc"), "\tcli", "include b.inc");
+        include(dir.resolve("b.inc"), "include a.inc", "\tcli");
+        include(dir.resolve("self.inc"), "include self.inc");
+        Programs.Result result = Programs.translate(dir,
+                "include a.inc",
+                "include self.inc");
+        assertEquals(2, result.errorCount, result.errors);
+        assertTrue(result.errors.contains(Programs.FIRST_LINE + "(b.inc:1)"), result.errors);
+        assertTrue(result.errors.contains((Programs.FIRST_LINE + 1) + "(self.inc:1)"), result.errors);
+        assertEquals("FA FA", Programs.hex(result.code, 0, 8));
+    }
+
+    @Test
+    void sharesParsedFileUntilItChanges() throws IOException {
+        Path defs = include(dir.resolve("shared.inc"), "\tcli").toAbsolutePath();
+        IncludeCache.IncludeFile first = IncludeCache.get(defs);
+        assertSame(first, IncludeCache.get(defs));
+
+        include(defs, "\tcli", "\tcli");
+        IncludeCache.IncludeFile changed = IncludeCache.get(defs);
+        assertNotSame(first, changed);
+        assertEquals(2, changed.lines.length);
+    }
+
+    @Test
+    void translationCacheChecksIncludedFiles() throws IOException {
+        TranslationCache cache = new TranslationCache(dir.resolve("cache").toString(), TranslationCache.DEFAULT_MAX_SIZE);
+        Path defs = include(dir.resolve("defs.inc"), "\tcli");
+        Path asm = Programs.write(dir.resolve("main.asm"), "include defs.inc");
+        String lst = dir.resolve("main.lst").toString();
+
+        assertTrue(translate(cache, asm, lst));
+        assertFalse(translate(cache, asm, lst));
+        include(defs, "\tcli", "\tcli");
+        assertTrue(translate(cache, asm, lst));
+    }
+
+    @Test
+    void translationCacheSeparatesDirectories() throws IOException {
+        TranslationCache cache = new TranslationCache(dir.resolve("cache").toString(), TranslationCache.DEFAULT_MAX_SIZE);
+        // одинаковые исходные файлы включают разные defs.inc
+        include(dir.resolve("a").resolve("defs.inc"), "\tcli");
+        include(dir.resolve("b").resolve("defs.inc"), "\tinc inc");
+        Path a = Programs.write(dir.resolve("a").resolve("main.asm"), "include defs.inc");
+        Path b = Programs.write(dir.resolve("b").resolve("main.asm"), "include defs.inc");
+
+        assertEquals(0, cache.makeLST(a.toString(), dir.resolve("a").resolve("main.lst").toString(), "", new Translation(), out));
+        assertEquals(1, cache.makeLST(b.toString(), dir.resolve("b").resolve("main.lst").toString(), "", new Translation(), out));
+    }
+
+    /**
+     * Транслирует через кэш
+     *
+     * @return Выполнялась ли трансляция (промах)
+     */
+    private boolean translate(TranslationCache cache, Path asm, String lst) throws IOException {
+        Translation translation = new Translation();
+        cache.makeLST(asm.toString(), lst, "", translation, out);
+        return !translation.outputFiles.isEmpty();
+    }
+}
@@ -0,0 +1,36 @@
+package trasm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Листинг src/source.asm сравнивается с эталоном test/trasm/source.lst
+ * (эталон - листинг без двух строчек заголовка с датой генерации)
+ */
+class ListingTest {
+
+    private static final int HEADER_LINES = 2;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void sourceListingMatchesGolden() throws IOException, InterruptedException {
+        Path lst = dir.resolve("source.lst");
+        String messages = Programs.run(Paths.get("src", "source.asm").toString(), lst.toString());
+        assertTrue(messages.contains("Помилки: 0"), messages);
+
+        List<String> actual = Files.readAllLines(lst, StandardCharsets.UTF_8);
+        List<String> golden = Files.readAllLines(Paths.get("test", "trasm", "source.lst"), StandardCharsets.UTF_8);
+        assertEquals(String.join("\n", golden), String.join("\n", actual.subList(HEADER_LINES, actual.size())));
+    }
+}
@@ -0,0 +1,98 @@
+package trasm;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Макросы: подстановка аргументов, вложенные вызовы и ограничение глубины
+ */
+class MacroTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * Код фрагмента без макросов
+     */
+    private byte[] plain(String... lines) throws IOException {
+        Programs.Result result = Programs.translate(dir, lines);
+        assertEquals(0, result.errorCount, result.errors);
+        return result.code;
+    }
+
+    @Test
+    void substitutesArguments() throws IOException {
+        Programs.Result result = Programs.translate(dir,
+                "bump macro var, reg",
+                "inc var[bx]",
+                "xor var[si], reg",
+                "endm",
+                "bump v, cl",
+                "bump w, dx");
+        assertEquals(0, result.errorCount, result.errors);
+        assertArrayEquals(plain("inc v[bx]", "xor v[si], cl", "inc w[bx]", "xor w[si], dx"), result.code);
+    }
+
+    @Test
+    void bodyWithoutParametersIsReused() throws IOException {
+        Programs.Result result = Programs.translate(dir,
+                "twice macro",
+                "cli",
+                "cli",
+                "endm",
+                "twice",
+                "twice");
+        assertEquals(0, result.errorCount, result.errors);
+        assertEquals("FA FA FA FA", Programs.hex(result.code, 0, 8));
+    }
+
+    @Test
+    void expandsNestedCalls() throws IOException {
+        Programs.Result result = Programs.translate(dir,
+                "inner macro p",
+                "inc p[bx]",
+                "endm",
+                "outer macro p",
+                "inner p",
+                "cli",
+                "endm",
+                "outer v");
+        assertEquals(0, result.errorCount, result.errors);
+        assertArrayEquals(plain("inc v[bx]", "cli"), result.code);
+    }
+
+    @Test
+    void reportsErrorWithMacroLine() throws IOException {
+        Programs.Result result = Programs.translate(dir,
+                "bad macro",
+                "cli",
+                "inc inc",
+                "endm",
+                "bad");
+        // строчка вызова (4) и строчка тела макроса (2)
+        assertEquals(1, result.errorCount, result.errors);
+        assertTrue(result.errors.contains((Programs.FIRST_LINE + 4) + "(bad:" + (Programs.FIRST_LINE + 2) + ")"),
+                result.errors);
+    }
+
+    @Test
+    void stopsRecursionAtDepthLimit() throws IOException {
+        Programs.Result result = Programs.translate(dir,
+                "rec macro",
+                "cli",
+                "rec",
+                "endm",
+                "rec");
+        assertEquals(1, result.errorCount, result.errors);
+        assertTrue(result.errors.contains((Programs.FIRST_LINE + 4) + "(rec:" + (Programs.FIRST_LINE + 2) + ")"),
+                result.errors);
+        // 16 уровней вложенности, на каждом - CLI
+        assertEquals(16, result.code.length);
+    }
+}
@@ -0,0 +1,79 @@
+package trasm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Параллельная трансляция (-p) дает тот же листинг и те же ошибки, что и
+ * последовательная: фрагмент со ссылками вперед повторяется так, что строчек
+ * больше, чем в блоке разбора, а исправлений больше, чем в одной задаче
+ * второго прохода.
+ */
+class ParallelTest {
+
+    /**
+     * Количество повторов фрагмента
+     */
+    private static final int COPIES = 4500;
+    /**
+     * Строчки заголовка листинга с датой генерации
+     */
+    private static final int HEADER_LINES = 2;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void parallelListingMatchesSerial() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < COPIES; i++) {
+            lines.add("b" + i + ":");
+            lines.add("cli");
+            lines.add("");
+            lines.add("jb n" + i);
+            lines.add("; копія " + i);
+            lines.add("");
+            lines.add("inc v[bx]");
+            lines.add("n" + i + ":");
+            lines.add(i % 500 == 0 ? "inc inc" : "; " + i);
+            lines.add("jmp b" + i);
+            lines.add("");
+            lines.add(i % 700 == 0 ? "inc nosuch[bx]" : "; ...");
+            lines.add("inc f" + i + "[bx]");
+            lines.add("; ...");
+            lines.add("f" + i + " db 1");
+            lines.add("");
+        }
+        Path asm = Programs.write(dir.resolve("big.asm"), lines.toArray(new String[0]));
+
+        PrintStream out = new PrintStream(OutputStream.nullOutputStream());
+        Translation serial = new Translation();
+        Translation parallel = new Translation();
+        int serialErrors = Translator.makeLST(asm.toString(), dir.resolve("serial.lst").toString(), "", serial, out);
+        int parallelErrors = Translator.makeLST(asm.toString(), dir.resolve("parallel.lst").toString(), "-p", parallel, out);
+
+        // ошибки первого прохода (inc inc) и второго (nosuch)
+        assertEquals(COPIES / 500 + COPIES / 700 + 1, serialErrors);
+        assertEquals(serialErrors, parallelErrors);
+        assertEquals(serial.errors.getStringToPrint(), parallel.errors.getStringToPrint());
+        assertEquals(body(dir.resolve("serial.lst")), body(dir.resolve("parallel.lst")));
+    }
+
+    /**
+     * Листинг без заголовка
+     */
+    private static List<String> body(Path lst) throws IOException {
+        List<String> lines = Files.readAllLines(lst, StandardCharsets.UTF_8);
+        return lines.subList(HEADER_LINES, lines.size());
+    }
+}
@@ -0,0 +1,89 @@
+package trasm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Повторное использование разбора строчек в режиме наблюдения
+ */
+class ParseCacheTest {
+
+    /**
+     * Строчки заголовка листинга с датой генерации
+     */
+    private static final int HEADER_LINES = 2;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void reusesParsedLineOfUnchangedText() {
+        ParseCache cache = new ParseCache();
+        cache.start();
+        ParsedLine cli = cache.parse("\tcli");
+        cache.keep(cli);
+        cache.finish();
+
+        cache.start();
+        assertSame(cli, cache.parse("\tcli"));
+        cache.keep(cli);
+        ParsedLine dec = cache.parse("\tdec al");
+        cache.keep(dec);
+        cache.finish();
+        assertEquals(1, cache.getParsedCount());
+        assertEquals(2, cache.getLineCount());
+
+        // разбор хранится только одну трансляцию
+        cache.start();
+        cache.keep(cache.parse("\tdec al"));
+        cache.finish();
+        cache.start();
+        assertNotSame(cli, cache.parse("\tcli"));
+    }
+
+    @Test
+    void editReparsesOnlyChangedLine() throws IOException {
+        Path asm = dir.resolve("watched.asm");
+        String lst = dir.resolve("watched.lst").toString();
+        PrintStream out = new PrintStream(OutputStream.nullOutputStream());
+        Translation translation = new Translation();
+        translation.parseCache = new ParseCache();
+
+        Programs.write(asm, "begin:", "cli", "inc v[bx]", "jb begin");
+        Translator.makeLST(asm.toString(), lst, "", translation, out);
+        int lineCount = translation.parseCache.getLineCount();
+        assertEquals(lineCount, translation.parseCache.getParsedCount());
+
+        Programs.write(asm, "begin:", "cli", "inc w[bx]", "jb begin");
+        Translator.makeLST(asm.toString(), lst, "", translation, out);
+        assertEquals(1, translation.parseCache.getParsedCount());
+        assertEquals(lineCount, translation.parseCache.getLineCount());
+
+        String fresh = dir.resolve("fresh.lst").toString();
+        Translator.makeLST(asm.toString(), fresh, "", new Translation(), out);
+        assertEquals(body(fresh), body(lst));
+
+        Translator.makeLST(asm.toString(), lst, "-p", translation, out);
+        assertEquals(0, translation.parseCache.getParsedCount());
+        assertEquals(body(fresh), body(lst));
+    }
+
+    /**
+     * Листинг без заголовка
+     */
+    private static List<String> body(String lst) throws IOException {
+        List<String> lines = Files.readAllLines(Path.of(lst), StandardCharsets.UTF_8);
+        return lines.subList(HEADER_LINES, lines.size());
+    }
+}
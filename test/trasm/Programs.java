@@ -0,0 +1,166 @@
+package trasm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Трансляция для тестов. Фрагменты кода транслируются в том же процессе в
+ * программе, в сегменте данных которой объявлены переменные v (DB), w (DW) и
+ * d (DD). Командная строка проверяется запуском транслятора в отдельной JVM.
+ */
+class Programs {
+
+    /**
+     * Номер первой строчки фрагмента в программе
+     */
+    static final int FIRST_LINE = 8;
+
+    private static final String HEADER = "Data segment\r\n"
+            + "\tv db 1\r\n"
+            + "\tw dw 1234h\r\n"
+            + "\td dd 12345678h\r\n"
+            + "Data ends\r\n"
+            + "assume ds:Data, cs:Code\r\n"
+            + "Code segment\r\n";
+    private static final String FOOTER = "Code ends\r\n"
+            + "end\r\n";
+
+    /**
+     * Результат трансляции фрагмента
+     */
+    static class Result {
+
+        final int errorCount;
+        /**
+         * Итог ошибок, как в конце листинга
+         */
+        final String errors;
+        /**
+         * Образ сегмента кода
+         */
+        final byte[] code;
+
+        Result(int errorCount, String errors, byte[] code) {
+            this.errorCount = errorCount;
+            this.errors = errors;
+            this.code = code;
+        }
+
+        /**
+         * Есть ли ошибка в строчке фрагмента
+         *
+         * @param index Номер строчки во фрагменте (с 0)
+         * @return Ответ
+         */
+        boolean isError(int index) {
+            return errors.contains(" " + (FIRST_LINE + index) + " ");
+        }
+    }
+
+    /**
+     * Транслирует фрагмент
+     *
+     * @param dir Каталог для исходного файла и листинга
+     * @param lines Строчки сегмента кода
+     * @return Результат
+     * @throws IOException
+     */
+    static Result translate(Path dir, String... lines) throws IOException {
+        Path asm = write(dir.resolve("test.asm"), lines);
+        Translation translation = new Translation();
+        int errorCount = Translator.makeLST(asm.toString(), dir.resolve("test.lst").toString(), "", translation,
+                new PrintStream(OutputStream.nullOutputStream()));
+        byte[] code = new byte[0];
+        for (SegTable.SegInfo segInfo : translation.segTable.getSegments()) {
+            if (segInfo.getName().equals("Code")) {
+                CodeBuffer buffer = segInfo.getCode();
+                code = Arrays.copyOf(buffer.getData(), Math.min(segInfo.getSize(), buffer.size()));
+            }
+        }
+        return new Result(errorCount, translation.errors.getStringToPrint(), code);
+    }
+
+    /**
+     * Записывает программу с фрагментом
+     *
+     * @param asm Путь к исходному файлу
+     * @param lines Строчки сегмента кода
+     * @return Путь к исходному файлу
+     * @throws IOException
+     */
+    static Path write(Path asm, String... lines) throws IOException {
+        StringBuilder source = new StringBuilder(HEADER);
+        for (String line : lines) {
+            source.append('\t').append(line).append("\r\n");
+        }
+        source.append(FOOTER);
+        return Files.write(asm, source.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Запускает транслятор с аргументами командной строки
+     *
+     * @param args Аргументы
+     * @return Сообщения транслятора
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    static String run(String... args) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-Dfile.encoding=UTF-8");
+        command.add("-cp");
+        command.add(getClassPath());
+        command.add("trasm.Translator");
+        command.addAll(Arrays.asList(args));
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String messages;
+        try (InputStream in = process.getInputStream()) {
+            messages = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        process.waitFor();
+        return messages;
+    }
+
+    /**
+     * Каталог или jar с классами транслятора
+     *
+     * @return Путь
+     */
+    private static String getClassPath() {
+        try {
+            return Paths.get(Translator.class.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+        } catch (URISyntaxException ex) {
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * Печатает байты шестнадцатеричными парами через пробел
+     *
+     * @param data Байты
+     * @param from Первый байт
+     * @param length Сколько байтов печатать
+     * @return Строка
+     */
+    static String hex(byte[] data, int from, int length) {
+        StringBuilder out = new StringBuilder();
+        for (int i = from; i < Math.min(from + length, data.length); i++) {
+            if (i > from) {
+                out.append(' ');
+            }
+            out.append(String.format("%02X", data[i] & 0xFF));
+        }
+        return out.toString();
+    }
+}
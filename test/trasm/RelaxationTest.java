@@ -0,0 +1,144 @@
+package trasm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Выравнивание переходов на границе rel8: смещение 127 (назад -128)
+ * остается коротким, 128 (назад -129) делает переход ближним, а LOOP и
+ * JCXZ, у которых нет ближней формы, - ошибкой.
+ */
+class RelaxationTest {
+
+    /**
+     * Однобайтовая команда-заполнитель
+     */
+    private static final String FILLER = "cli";
+
+    @TempDir
+    Path dir;
+
+    /**
+     * Переход вперед через count однобайтовых команд
+     */
+    private Programs.Result forward(String jump, int count) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(jump + " target");
+        lines.addAll(Collections.nCopies(count, FILLER));
+        lines.add("target:");
+        return Programs.translate(dir, lines.toArray(new String[0]));
+    }
+
+    /**
+     * Переход назад через count однобайтовых команд
+     */
+    private Programs.Result backward(String jump, int count) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("target:");
+        lines.addAll(Collections.nCopies(count, FILLER));
+        lines.add(jump + " target");
+        return Programs.translate(dir, lines.toArray(new String[0]));
+    }
+
+    @Test
+    void forwardJbAt127StaysShort() throws IOException {
+        Programs.Result result = forward("jb", 127);
+        assertEquals(0, result.errorCount, result.errors);
+        assertEquals("72 7F", Programs.hex(result.code, 0, 2));
+        assertEquals(2 + 127, result.code.length);
+    }
+
+    @Test
+    void forwardJbAt128BecomesNear() throws IOException {
+        Programs.Result result = forward("jb", 128);
+        assertEquals(0, result.errorCount, result.errors);
+        assertEquals("0F 82 80 00", Programs.hex(result.code, 0, 4));
+        assertEquals(4 + 128, result.code.length);
+    }
+
+    @Test
+    void forwardJmpAt128BecomesNear() throws IOException {
+        Programs.Result result = forward("jmp", 128);
+        assertEquals(0, result.errorCount, result.errors);
+        assertEquals("E9 80 00", Programs.hex(result.code, 0, 3));
+    }
+
+    @Test
+    void backwardJmpAtMinus128StaysShort() throws IOException {
+        Programs.Result result = backward("jmp", 126);
+        assertEquals(0, result.errorCount, result.errors);
+        assertEquals("EB 80", Programs.hex(result.code, 126, 2));
+        assertEquals(126 + 2, result.code.length);
+    }
+
+    @Test
+    void backwardJmpAtMinus129BecomesNear() throws IOException {
+        Programs.Result result = backward("jmp", 127);
+        assertEquals(0, result.errorCount, result.errors);
+        // -130 = FF7Eh
+        assertEquals("E9 7E FF", Programs.hex(result.code, 127, 3));
+        assertEquals(127 + 3, result.code.length);
+    }
+
+    @Test
+    void growthOfInnerJumpLengthensOuter() throws IOException {
+        // внешний переход сначала на 127, внутренний на 128
+        List<String> lines = new ArrayList<>();
+        lines.add("jb outer");
+        lines.add("jb inner");
+        lines.addAll(Collections.nCopies(125, FILLER));
+        lines.add("outer:");
+        lines.addAll(Collections.nCopies(3, FILLER));
+        lines.add("inner:");
+        Programs.Result result = Programs.translate(dir, lines.toArray(new String[0]));
+        assertEquals(0, result.errorCount, result.errors);
+        assertEquals("0F 82 81 00 0F 82 80 00", Programs.hex(result.code, 0, 8));
+    }
+
+    @Test
+    void loopAt127IsCorrect() throws IOException {
+        Programs.Result result = forward("loop", 127);
+        assertEquals(0, result.errorCount, result.errors);
+        assertEquals("E2 7F", Programs.hex(result.code, 0, 2));
+    }
+
+    @Test
+    void loopAt128IsError() throws IOException {
+        Programs.Result result = forward("loop", 128);
+        assertEquals(1, result.errorCount, result.errors);
+        assertTrue(result.isError(0), result.errors);
+    }
+
+    @Test
+    void backwardLoopAtMinus129IsError() throws IOException {
+        Programs.Result result = backward("loop", 127);
+        assertEquals(1, result.errorCount, result.errors);
+        assertTrue(result.isError(128), result.errors);
+        assertFalse(result.isError(0), result.errors);
+    }
+
+    @Test
+    void jcxzAt128IsError() throws IOException {
+        Programs.Result result = forward("jcxz", 128);
+        assertEquals(1, result.errorCount, result.errors);
+        assertTrue(result.isError(0), result.errors);
+    }
+
+    @Test
+    void jecxzCountsAddressPrefix() throws IOException {
+        // 67 E3 rel8: смещение считается от конца трёхбайтовой команды
+        Programs.Result result = forward("jecxz", 127);
+        assertEquals(0, result.errorCount, result.errors);
+        assertEquals("67 E3 7F", Programs.hex(result.code, 0, 3));
+        assertEquals(1, forward("jecxz", 128).errorCount);
+    }
+}
@@ -0,0 +1,82 @@
+package trasm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Чтение строчек: концы строк, BOM и границы окон отображения
+ */
+class SourceReaderTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * Читает все строчки файла с заданным содержимым
+     */
+    private List<String> read(byte[] content, Charset charset, long windowSize) throws IOException {
+        Path file = Files.write(dir.resolve("source.asm"), content);
+        List<String> lines = new ArrayList<>();
+        try (SourceReader reader = new SourceReader(file.toString(), charset, windowSize)) {
+            String line;
+            while ((line = reader.nextLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    private List<String> read(String content, long windowSize) throws IOException {
+        return read(content.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8, windowSize);
+    }
+
+    @Test
+    void splitsOnLfCrLfAndCr() throws IOException {
+        assertEquals(Arrays.asList("a", "b", "c", "", "d"), read("a\nb\r\nc\r\rd", 1 << 20));
+    }
+
+    @Test
+    void lastLineWithoutEndIsRead() throws IOException {
+        assertEquals(Arrays.asList("a", "b"), read("a\r\nb", 1 << 20));
+        assertEquals(Arrays.asList("a"), read("a\r\n", 1 << 20));
+        assertEquals(Arrays.asList(), read("", 1 << 20));
+    }
+
+    @Test
+    void skipsUtf8Bom() throws IOException {
+        byte[] content = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF, 'm', 'o', 'v', '\n', 'e', 'n', 'd'};
+        assertEquals(Arrays.asList("mov", "end"), read(content, StandardCharsets.UTF_8, 1 << 20));
+        // окно отображения меньше BOM
+        assertEquals(Arrays.asList("mov", "end"), read(content, StandardCharsets.UTF_8, 2));
+    }
+
+    @Test
+    void decodesWithGivenCharset() throws IOException {
+        Charset cp1251 = Charset.forName("windows-1251");
+        assertEquals(Arrays.asList("; коментар", "end"),
+                read("; коментар\r\nend".getBytes(cp1251), cp1251, 1 << 20));
+    }
+
+    @Test
+    void linesCrossWindowBoundaries() throws IOException {
+        String content = "Data segment\r\n\tv db 1\r\nData ends\r\n;життя\r\rend";
+        List<String> expected = read(content, 1 << 20);
+        assertEquals(Arrays.asList("Data segment", "\tv db 1", "Data ends", ";життя", "", "end"),
+                expected);
+        // граница окна проходит в каждом месте: внутри строчки, между \r и \n,
+        // внутри многобайтового символа
+        for (int windowSize = 1; windowSize <= 16; windowSize++) {
+            assertEquals(expected, read(content, windowSize), "окно " + windowSize);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package trasm;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Дисковый кэш трансляций. Трансляция выполнялась, если контекст получил
+ * список выходных файлов; при попадании контекст не используется.
+ */
+class TranslationCacheTest {
+
+    @TempDir
+    Path dir;
+
+    private Path cacheDir;
+    private Path asm;
+    private String lst;
+    private final PrintStream out = new PrintStream(OutputStream.nullOutputStream());
+
+    @BeforeEach
+    void writeSource() throws IOException {
+        cacheDir = dir.resolve("cache");
+        asm = Programs.write(dir.resolve("a.asm"), "cli", "inc v[bx]");
+        lst = dir.resolve("a.lst").toString();
+    }
+
+    /**
+     * Транслирует через кэш
+     *
+     * @return Выполнялась ли трансляция (промах)
+     */
+    private boolean translate(TranslationCache cache, Path source, String options) throws IOException {
+        Translation translation = new Translation();
+        cache.makeLST(source.toString(), Translator.replaceExtension(source.toString(), ".lst"), options, translation, out);
+        return !translation.outputFiles.isEmpty();
+    }
+
+    private List<Path> entries() throws IOException {
+        try (Stream<Path> paths = Files.list(cacheDir)) {
+            return paths.collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    void hitRestoresOutputsWithoutTranslation() throws IOException {
+        TranslationCache cache = new TranslationCache(cacheDir.toString(), TranslationCache.DEFAULT_MAX_SIZE);
+        assertTrue(translate(cache, asm, "-b"));
+        byte[] listing = Files.readAllBytes(Path.of(lst));
+        byte[] code = Files.readAllBytes(dir.resolve("a_code.bin"));
+        Files.delete(Path.of(lst));
+        Files.delete(dir.resolve("a_code.bin"));
+
+        assertFalse(translate(cache, asm, "-b"));
+        assertArrayEquals(listing, Files.readAllBytes(Path.of(lst)));
+        assertArrayEquals(code, Files.readAllBytes(dir.resolve("a_code.bin")));
+        assertEquals(1, entries().size());
+    }
+
+    @Test
+    void changedSourceOrOptionsMiss() throws IOException {
+        TranslationCache cache = new TranslationCache(cacheDir.toString(), TranslationCache.DEFAULT_MAX_SIZE);
+        assertTrue(translate(cache, asm, ""));
+        assertTrue(translate(cache, asm, "-b"));
+        Programs.write(asm, "cli", "inc w[bx]");
+        assertTrue(translate(cache, asm, ""));
+        assertEquals(3, entries().size());
+    }
+
+    @Test
+    void messagesArePrintedInStreamCharset() throws IOException {
+        TranslationCache cache = new TranslationCache(cacheDir.toString(), TranslationCache.DEFAULT_MAX_SIZE);
+        Charset cp1251 = Charset.forName("windows-1251");
+        for (int run = 0; run < 2; run++) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (PrintStream console = new PrintStream(bytes, false, cp1251.name())) {
+                cache.makeLST(asm.toString(), lst, "", new Translation(), console);
+            }
+            String messages = new String(bytes.toByteArray(), cp1251);
+            assertTrue(messages.contains("Вхідний файл: " + asm), messages);
+        }
+    }
+
+    @Test
+    void otherFormatVersionIsReplaced() throws IOException {
+        TranslationCache cache = new TranslationCache(cacheDir.toString(), TranslationCache.DEFAULT_MAX_SIZE);
+        translate(cache, asm, "");
+        Path entry = entries().get(0);
+        try (RandomAccessFile file = new RandomAccessFile(entry.toFile(), "rw")) {
+            file.seek(4);
+            file.writeInt(TranslationCache.FORMAT_VERSION + 1);
+        }
+
+        assertTrue(translate(cache, asm, ""));
+        assertFalse(translate(cache, asm, ""));
+    }
+
+    @Test
+    void corruptedEntryIsRebuilt() throws IOException {
+        TranslationCache cache = new TranslationCache(cacheDir.toString(), TranslationCache.DEFAULT_MAX_SIZE);
+        translate(cache, asm, "");
+        Path entry = entries().get(0);
+        // длина сообщений после MAGIC, версии, пустого списка включаемых
+        // файлов и количества ошибок
+        try (RandomAccessFile file = new RandomAccessFile(entry.toFile(), "rw")) {
+            file.seek(16);
+            file.writeInt(Integer.MAX_VALUE);
+        }
+        assertTrue(translate(cache, asm, ""));
+        assertFalse(translate(cache, asm, ""));
+
+        Files.write(entry, new byte[]{0x54, 0x52});
+        assertTrue(translate(cache, asm, ""));
+        assertFalse(translate(cache, asm, ""));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedEntries() throws IOException {
+        Path other = Programs.write(dir.resolve("b.asm"), "cli", "inc w[bx]");
+        TranslationCache unbounded = new TranslationCache(cacheDir.toString(), TranslationCache.DEFAULT_MAX_SIZE);
+        translate(unbounded, asm, "");
+        Path first = entries().get(0);
+        Files.setLastModifiedTime(first, FileTime.fromMillis(System.currentTimeMillis() - 3600000));
+
+        // места хватает на одну запись
+        TranslationCache cache = new TranslationCache(cacheDir.toString(), Files.size(first) * 3 / 2);
+        assertTrue(translate(cache, other, ""));
+        assertEquals(1, entries().size());
+        assertFalse(Files.exists(first));
+        assertFalse(translate(cache, other, ""));
+        assertTrue(translate(cache, asm, ""));
+    }
+}
@@ -0,0 +1,55 @@
+package trasm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Повторное использование контекста трансляции
+ */
+class TranslationTest {
+
+    /**
+     * Строчки заголовка листинга с датой генерации
+     */
+    private static final int HEADER_LINES = 2;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void reusedContextStartsClean() throws IOException {
+        Path bad = Programs.write(dir.resolve("bad.asm"),
+                "label:",
+                "inc missing[bx]",
+                "jmp label");
+        Path good = Programs.write(dir.resolve("good.asm"),
+                "label:",
+                "inc v[bx]",
+                "jb label");
+
+        PrintStream out = new PrintStream(OutputStream.nullOutputStream());
+        Translation translation = new Translation();
+        assertEquals(1, Translator.makeLST(bad.toString(), dir.resolve("bad.lst").toString(), "", translation, out));
+        assertEquals(0, Translator.makeLST(good.toString(), dir.resolve("reused.lst").toString(), "", translation, out));
+
+        Translator.makeLST(good.toString(), dir.resolve("fresh.lst").toString(), "", new Translation(), out);
+        assertEquals(body(dir.resolve("fresh.lst")), body(dir.resolve("reused.lst")));
+    }
+
+    /**
+     * Листинг без заголовка
+     */
+    private static List<String> body(Path lst) throws IOException {
+        List<String> lines = Files.readAllLines(lst, StandardCharsets.UTF_8);
+        return lines.subList(HEADER_LINES, lines.size());
+    }
+}
@@ -0,0 +1,37 @@
+package trasm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Пути выходных файлов
+ */
+class TranslatorTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replacesOnlyExtension() {
+        assertEquals("Lab/Prog.flst", Translator.replaceExtension("Lab/Prog.lst", ".flst"));
+        assertEquals("Lab.v2/prog_code.bin", Translator.replaceExtension("Lab.v2/prog", "_code.bin"));
+        assertEquals("C:\\Lab.v2\\prog.lex", Translator.replaceExtension("C:\\Lab.v2\\prog.LST", ".lex"));
+    }
+
+    @Test
+    void writesSegmentImagesNextToListing() throws IOException, InterruptedException {
+        Path lab = Files.createDirectories(dir.resolve("Lab"));
+        Path asm = lab.resolve("Prog.asm");
+        Files.write(asm, "Code segment\r\n\tcli\r\nCode ends\r\nend\r\n".getBytes("UTF-8"));
+        Programs.run(asm.toString(), lab.resolve("Prog.lst").toString(), "-bh");
+
+        assertTrue(Files.exists(lab.resolve("Prog_code.bin")));
+        assertTrue(Files.exists(lab.resolve("Prog_code.hex")));
+    }
+}